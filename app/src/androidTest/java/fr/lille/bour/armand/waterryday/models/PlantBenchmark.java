@@ -0,0 +1,67 @@
+package fr.lille.bour.armand.waterryday.models;
+
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmark of the hot methods of {@link Plant}. The results are written to the log under the
+ * {@value #TAG} tag.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class PlantBenchmark {
+
+    private static final String TAG = "PlantBenchmark";
+    private static final int CALLS = 1000000;
+
+    @Test
+    public void getWateringStateDoesNotAllocate() {
+        final Plant plant = new Plant(1, "", "", "", 3, Plant.getCurrentEpochDay() - 2);
+        // Warm up, so that class loading and compilation are not counted
+        for (int i = 0; i < CALLS; i++) {
+            plant.getWateringState();
+        }
+
+        int okay = 0;
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        final long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            if (plant.getWateringState() == Plant.WateringState.OKAY) {
+                okay++;
+            }
+            plant.getNextWateringDay();
+        }
+        final long elapsedNs = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        final int allocations = Debug.getThreadAllocCount();
+
+        Log.i(TAG, String.format("getWateringState: %d calls in %d ms (%d ns/call), %d allocations",
+                CALLS, elapsedNs / 1000000, elapsedNs / CALLS, allocations));
+        assertEquals(CALLS, okay);
+        assertEquals(0, allocations);
+    }
+
+    @Test
+    public void waterDoesNotAllocate() {
+        final Plant plant = new Plant(1, "", "", "", 3, Plant.getCurrentEpochDay() - 2);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < CALLS; i++) {
+            plant.setLastWateredDay(Plant.getCurrentEpochDay() - 1);
+            plant.water();
+        }
+        Debug.stopAllocCounting();
+
+        assertEquals(0, Debug.getThreadAllocCount());
+    }
+}
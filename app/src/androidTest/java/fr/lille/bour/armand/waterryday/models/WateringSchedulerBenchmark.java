@@ -0,0 +1,100 @@
+package fr.lille.bour.armand.waterryday.models;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmark of the {@link WateringScheduler} against a full scan of the plants, at 100k and 1M
+ * plants. The results are written to the log under the {@value #TAG} tag.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class WateringSchedulerBenchmark {
+
+    private static final String TAG = "SchedulerBenchmark";
+    private static final int OPERATIONS = 100000;
+    private static final int URGENT_COUNT = 20;
+
+    private static void report(final String name, final int plants, final int operations, final long elapsedNs) {
+        Log.i(TAG, String.format("%s, %d plants: %d operations in %d ms (%d ns/op)", name, plants,
+                operations, elapsedNs / 1000000, elapsedNs / operations));
+    }
+
+    private static void run(final int count) {
+        final Random random = new Random(count);
+        final int today = Plant.getCurrentEpochDay();
+        final int[] frequencies = new int[count];
+        final int[] lastWateredDays = new int[count];
+        final WateringScheduler scheduler = new WateringScheduler();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            frequencies[i] = 1 + random.nextInt(14);
+            lastWateredDays[i] = today - random.nextInt(frequencies[i] + 2);
+            scheduler.add(i, frequencies[i], lastWateredDays[i] + frequencies[i]);
+        }
+        report("add", count, count, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            final int id = random.nextInt(count);
+            if (i % 2 == 0) {
+                scheduler.water(id, today);
+            } else {
+                scheduler.setWateringFrequency(id, 1 + random.nextInt(14));
+            }
+        }
+        report("water / setWateringFrequency", count, OPERATIONS, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < 1000; i++) {
+            found += scheduler.getMostUrgent(URGENT_COUNT).length;
+        }
+        report("getMostUrgent(" + URGENT_COUNT + ")", count, 1000, System.nanoTime() - start);
+        assertEquals(1000 * URGENT_COUNT, found);
+
+        start = System.nanoTime();
+        final List<Long> due = new ArrayList<>();
+        scheduler.getDueBy(today, due);
+        report("getDueBy", count, 1, System.nanoTime() - start);
+
+        // What every refresh used to do: compute the state of each plant
+        start = System.nanoTime();
+        int thirsty = 0;
+        for (int i = 0; i < count; i++) {
+            if (Plant.getWateringState(lastWateredDays[i], frequencies[i], today) == Plant.WateringState.THIRSTY) {
+                thirsty++;
+            }
+        }
+        report("full scan", count, 1, System.nanoTime() - start);
+        Log.i(TAG, String.format("%d plants: %d due, %d thirsty before watering", count, due.size(), thirsty));
+
+        start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            scheduler.remove(random.nextInt(count));
+        }
+        report("remove", count, OPERATIONS, System.nanoTime() - start);
+    }
+
+    @Test
+    public void hundredThousandPlants() {
+        run(100000);
+    }
+
+    @Test
+    public void oneMillionPlants() {
+        run(1000000);
+    }
+}
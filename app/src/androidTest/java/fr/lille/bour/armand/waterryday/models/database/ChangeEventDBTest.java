@@ -0,0 +1,143 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the committed changes are published once per transaction, and the rolled back
+ * ones never.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class ChangeEventDBTest {
+
+    @Rule
+    public final TestDatabase mDatabase = new TestDatabase("changes.db");
+
+    private DatabaseHelper mHelper;
+    private PlantDB mPlantDB;
+    private int mToday;
+    private final List<ChangeEvent> mEvents = new ArrayList<>();
+    private final ChangeEvent.Listener mListener = new ChangeEvent.Listener() {
+        @Override
+        public void onChanged(final ChangeEvent event) {
+            mEvents.add(event);
+        }
+    };
+
+    @Before
+    public void openDatabase() {
+        mHelper = mDatabase.getHelper();
+        mPlantDB = PlantDB.getInstance();
+        mToday = Plant.getCurrentEpochDay();
+        mPlantDB.addChangeListener(mListener);
+    }
+
+    @After
+    public void removeListener() {
+        mPlantDB.removeChangeListener(mListener);
+    }
+
+    private Plant newPlant(final String name) {
+        return new Plant(-1, name, "Specie", "Salon", 2, mToday - 10);
+    }
+
+    @Test
+    public void eachWriteIsPublished() {
+        final Plant plant = newPlant("Germaine");
+        mPlantDB.insert(mHelper, plant);
+        plant.setName("Raymonde");
+        mPlantDB.update(mHelper, plant);
+        mPlantDB.delete(mHelper, plant.getId());
+
+        assertEquals(3, mEvents.size());
+        assertArrayEquals(new long[] { plant.getId() }, mEvents.get(0).getInsertedIds());
+        assertArrayEquals(new long[] { plant.getId() }, mEvents.get(1).getUpdatedIds());
+        assertArrayEquals(new long[] { plant.getId() }, mEvents.get(2).getDeletedIds());
+    }
+
+    @Test
+    public void transactionIsCoalesced() {
+        final Plant kept = newPlant("Germaine");
+        final Plant removed = newPlant("Robert");
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            mPlantDB.insertAll(mHelper, Arrays.asList(kept, removed));
+            kept.setName("Ursula");
+            mPlantDB.update(mHelper, kept);
+            mPlantDB.delete(mHelper, removed.getId());
+            // Nothing is published before the commit
+            assertTrue(mEvents.isEmpty());
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            AbstractDB.endTransaction(db, successful);
+        }
+
+        assertEquals(1, mEvents.size());
+        final ChangeEvent event = mEvents.get(0);
+        assertArrayEquals(new long[] { kept.getId() }, event.getInsertedIds());
+        assertArrayEquals(new long[0], event.getUpdatedIds());
+        assertArrayEquals(new long[0], event.getDeletedIds());
+    }
+
+    @Test
+    public void rollbackIsNotPublished() {
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            mPlantDB.insert(mHelper, newPlant("Germaine"));
+        } finally {
+            AbstractDB.endTransaction(db, false);
+        }
+        assertTrue(mEvents.isEmpty());
+
+        // The next transaction does not publish the changes rolled back either
+        final Plant plant = newPlant("Robert");
+        mPlantDB.insert(mHelper, plant);
+        assertEquals(1, mEvents.size());
+        assertArrayEquals(new long[] { plant.getId() }, mEvents.get(0).getInsertedIds());
+    }
+
+    @Test
+    public void wateringListsTheWateredPlants() {
+        final Plant due = newPlant("Germaine");
+        final Plant watered = new Plant(-1, "Robert", "Specie", "Salon", 2, mToday);
+        mPlantDB.insertAll(mHelper, Arrays.asList(due, watered));
+        mEvents.clear();
+
+        assertEquals(1, mPlantDB.waterAllDue(mHelper, mToday));
+        assertEquals(1, mEvents.size());
+        assertArrayEquals(new long[] { due.getId() }, mEvents.get(0).getUpdatedIds());
+    }
+
+    @Test
+    public void cleanTableIsBulk() {
+        mPlantDB.insert(mHelper, newPlant("Germaine"));
+        mEvents.clear();
+
+        mPlantDB.cleanTable(mHelper);
+        assertEquals(1, mEvents.size());
+        assertTrue(mEvents.get(0).isBulk());
+    }
+}
@@ -0,0 +1,426 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.provider.BaseColumns;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import fr.lille.bour.armand.waterryday.models.EpochDay;
+import fr.lille.bour.armand.waterryday.models.Plant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmarks of the database layer, run on a device against a dedicated database.
+ * Results are written to logcat under the {@link #TAG} tag.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseBenchmark {
+
+    private static final String TAG = "DatabaseBenchmark";
+
+    @Rule
+    public final TestDatabase mDatabase = new TestDatabase("benchmark.db");
+
+    private Context mContext;
+    private DatabaseHelper mHelper;
+
+    @Before
+    public void openDatabase() {
+        mContext = mDatabase.getContext();
+        mHelper = mDatabase.getHelper();
+    }
+
+    /**
+     * Generates the specified number of plants.
+     */
+    private static List<Plant> generatePlants(final int count) {
+        final LocalDate today = LocalDate.now();
+        final List<Plant> plants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            plants.add(new Plant(-1, "Plant " + i, "Specie " + (i % 50), "Location " + (i % 20),
+                    1 + i % 7, today.minusDays(i % 10)));
+        }
+        return plants;
+    }
+
+    private static void report(final String name, final int rows, final long elapsedMs) {
+        final long rowsPerSecond = elapsedMs == 0 ? rows * 1000L : rows * 1000L / elapsedMs;
+        Log.i(TAG, String.format("%s: %d rows in %d ms (%d rows/s)", name, rows, elapsedMs, rowsPerSecond));
+    }
+
+    @Test
+    public void insertOneByOne() {
+        final PlantDB plantDB = PlantDB.getInstance();
+        for (final int count : new int[] { 1000, 10000 }) {
+            plantDB.cleanTable(mHelper);
+            final List<Plant> plants = generatePlants(count);
+
+            final long start = SystemClock.elapsedRealtime();
+            for (final Plant plant : plants) {
+                plantDB.insert(mHelper, plant);
+            }
+            report("insert", count, SystemClock.elapsedRealtime() - start);
+        }
+    }
+
+    @Test
+    public void insertAll() {
+        final PlantDB plantDB = PlantDB.getInstance();
+        for (final int count : new int[] { 1000, 10000, 100000 }) {
+            plantDB.cleanTable(mHelper);
+            final List<Plant> plants = generatePlants(count);
+
+            final long start = SystemClock.elapsedRealtime();
+            final int inserted = plantDB.insertAll(mHelper, plants);
+            report("insertAll", count, SystemClock.elapsedRealtime() - start);
+
+            assertEquals(count, inserted);
+            assertTrue(plants.get(count - 1).getId() > 0);
+        }
+    }
+
+    @Test
+    public void updateAllAndDeleteAll() {
+        final PlantDB plantDB = PlantDB.getInstance();
+        for (final int count : new int[] { 1000, 10000, 100000 }) {
+            plantDB.cleanTable(mHelper);
+            final List<Plant> plants = generatePlants(count);
+            plantDB.insertAll(mHelper, plants);
+
+            final List<Long> ids = new ArrayList<>(count);
+            for (final Plant plant : plants) {
+                plant.water();
+                ids.add(plant.getId());
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            assertEquals(count, plantDB.updateAll(mHelper, plants));
+            report("updateAll", count, SystemClock.elapsedRealtime() - start);
+
+            start = SystemClock.elapsedRealtime();
+            assertEquals(count, plantDB.deleteAll(mHelper, ids));
+            report("deleteAll", count, SystemClock.elapsedRealtime() - start);
+        }
+    }
+
+    /**
+     * Converts a row stored with the version 1 schema, where the date was a "yyyy/MM/dd" string.
+     */
+    private static Plant convertLegacyRow(final MatrixCursor cursor) {
+        final String[] fields = cursor.getString(5).split("/");
+        final LocalDate lastWateredDate = new LocalDate(Integer.parseInt(fields[0]),
+                Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+        return new Plant(cursor.getInt(0), cursor.getString(1), cursor.getString(2), cursor.getString(3),
+                cursor.getInt(4), lastWateredDate);
+    }
+
+    @Test
+    public void convertCursorToObject() {
+        final int count = 100000;
+        final LocalDate today = LocalDate.now();
+        final MatrixCursor legacy = new MatrixCursor(PlantDB.PlantFields.ALL, count);
+        final MatrixCursor current = new MatrixCursor(PlantDB.PlantFields.ALL, count);
+        for (int i = 0; i < count; i++) {
+            final LocalDate date = today.minusDays(i % 365);
+            legacy.addRow(new Object[] { i, "Plant " + i, "Specie", "Location", 3,
+                    String.format("%04d/%02d/%02d", date.getYear(), date.getMonthOfYear(), date.getDayOfMonth()) });
+            current.addRow(new Object[] { i, "Plant " + i, "Specie", "Location", 3, EpochDay.of(date) });
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        while (legacy.moveToNext()) {
+            convertLegacyRow(legacy);
+        }
+        report("convertCursorToObject (yyyy/MM/dd)", count, SystemClock.elapsedRealtime() - start);
+
+        final PlantDB plantDB = PlantDB.getInstance();
+        start = SystemClock.elapsedRealtime();
+        while (current.moveToNext()) {
+            plantDB.convertCursorToObject(current);
+        }
+        report("convertCursorToObject (epoch day)", count, SystemClock.elapsedRealtime() - start);
+    }
+
+    /**
+     * Iterates over the whole table and returns the highest heap usage sampled after a collection.
+     */
+    private long iteratePeakHeap(final int pageSize) {
+        final Runtime runtime = Runtime.getRuntime();
+        long peak = 0;
+        int rows = 0;
+        final PageIterator<Plant> iterator = PlantDB.getInstance().iterate(mHelper, pageSize);
+        try {
+            while (iterator.hasNext()) {
+                iterator.next();
+                if (++rows % 10000 == 0) {
+                    runtime.gc();
+                    peak = Math.max(peak, runtime.totalMemory() - runtime.freeMemory());
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+        return peak;
+    }
+
+    @Test
+    public void iterateKeepsHeapFlat() {
+        final PlantDB plantDB = PlantDB.getInstance();
+        final int pageSize = 500;
+        long smallPeak = 0;
+        int rows = 0;
+        for (final int count : new int[] { 1000, 10000, 100000, 500000 }) {
+            plantDB.insertAll(mHelper, generatePlants(count - rows));
+            rows = count;
+
+            final long start = SystemClock.elapsedRealtime();
+            final long peak = iteratePeakHeap(pageSize);
+            report("iterate", count, SystemClock.elapsedRealtime() - start);
+            Log.i(TAG, String.format("iterate: %d rows, peak heap %d KiB", count, peak / 1024));
+
+            if (count == 10000) {
+                smallPeak = peak;
+            } else if (count > 10000) {
+                // The heap may not grow by more than a few pages worth of objects
+                assertTrue(peak - smallPeak < 4 * 1024 * 1024);
+            }
+        }
+    }
+
+    /**
+     * Counts the objects allocated by the current thread while running the specified task.
+     */
+    private static int countAllocations(final Runnable task) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            task.run();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return Debug.getThreadAllocCount();
+    }
+
+    @Test
+    public void bindAllocations() {
+        final PlantDB plantDB = PlantDB.getInstance();
+        final int count = 5000;
+        plantDB.insertAll(mHelper, generatePlants(count));
+        final PlantRowBuffer rows = new PlantRowBuffer();
+        assertEquals(count, plantDB.appendPage(mHelper, -1, count, rows));
+        final Cursor cursor = mHelper.getReadableDatabase().query(plantDB.getTableName(),
+                PlantDB.PlantFields.ALL, null, null, null, null, null);
+
+        try {
+            // Binding the same row count as a scroll through the whole list
+            final int[] sink = new int[1];
+            final int flyweight = countAllocations(new Runnable() {
+                @Override
+                public void run() {
+                    final PlantRowBuffer.Row row = rows.newRow();
+                    for (int i = 0; i < rows.size(); i++) {
+                        row.moveTo(i);
+                        sink[0] += row.getName().length() + row.getSpecie().length()
+                                + row.getWateringState().ordinal();
+                    }
+                }
+            });
+            final int objects = countAllocations(new Runnable() {
+                @Override
+                public void run() {
+                    cursor.moveToPosition(-1);
+                    while (cursor.moveToNext()) {
+                        final Plant plant = plantDB.convertCursorToObject(cursor);
+                        sink[0] += plant.getName().length() + plant.getSpecie().length()
+                                + plant.getWateringState().ordinal();
+                    }
+                }
+            });
+            Log.i(TAG, String.format("bind %d rows: %d allocations with Row, %d with Plant",
+                    count, flyweight, objects));
+            // Only the flyweight itself may be allocated
+            assertTrue(flyweight <= 1);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void singleRowOperations() {
+        final PlantDB plantDB = PlantDB.getInstance();
+        final int count = 5000;
+        final List<Plant> plants = generatePlants(count);
+        plantDB.insertAll(mHelper, plants);
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        final String whereClause = String.format(AbstractDB.WHERE_CLAUSE, BaseColumns._ID);
+
+        // Generic path, building the query and arguments on every call
+        long start = SystemClock.elapsedRealtime();
+        for (final Plant plant : plants) {
+            final Cursor cursor = db.query(PlantDB.TABLE_NAME, PlantDB.PlantFields.ALL, whereClause,
+                    new String[] { String.valueOf(plant.getId()) }, null, null, null);
+            cursor.moveToFirst();
+            plantDB.convertCursorToObject(cursor);
+            cursor.close();
+        }
+        report("get (query)", count, SystemClock.elapsedRealtime() - start);
+
+        start = SystemClock.elapsedRealtime();
+        for (final Plant plant : plants) {
+            final ContentValues values = plantDB.convertObjectToContentValues(plant);
+            db.update(PlantDB.TABLE_NAME, values, whereClause, new String[] { String.valueOf(plant.getId()) });
+        }
+        report("update (ContentValues)", count, SystemClock.elapsedRealtime() - start);
+
+        // Precomputed queries and cached compiled statements
+        start = SystemClock.elapsedRealtime();
+        for (final Plant plant : plants) {
+            plantDB.get(mHelper, plant.getId());
+        }
+        report("get", count, SystemClock.elapsedRealtime() - start);
+
+        start = SystemClock.elapsedRealtime();
+        for (final Plant plant : plants) {
+            plantDB.update(mHelper, plant);
+        }
+        report("update", count, SystemClock.elapsedRealtime() - start);
+
+        start = SystemClock.elapsedRealtime();
+        for (final Plant plant : plants) {
+            plantDB.delete(mHelper, plant.getId());
+        }
+        report("delete", count, SystemClock.elapsedRealtime() - start);
+    }
+
+    /**
+     * Latencies recorded by one thread, in microseconds.
+     */
+    private static class Latencies {
+        private long[] mValues = new long[1024];
+        private int mCount;
+
+        private void add(final long micros) {
+            if (mCount == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mCount * 2);
+            }
+            mValues[mCount++] = micros;
+        }
+
+        private static String summarize(final List<Latencies> all, final long elapsedMs) {
+            int count = 0;
+            for (final Latencies latencies : all) {
+                count += latencies.mCount;
+            }
+            final long[] values = new long[count];
+            int offset = 0;
+            for (final Latencies latencies : all) {
+                System.arraycopy(latencies.mValues, 0, values, offset, latencies.mCount);
+                offset += latencies.mCount;
+            }
+            Arrays.sort(values);
+            if (count == 0) {
+                return "no operation";
+            }
+            return String.format("%d ops/s, p50 %d us, p99 %d us, max %d us",
+                    count * 1000L / Math.max(1, elapsedMs), values[count / 2],
+                    values[(int) (count * 0.99)], values[count - 1]);
+        }
+    }
+
+    /**
+     * Runs reader threads doing <code>getAll</code> against one writer thread doing <code>update</code>
+     * for the specified duration, on a database opened with the specified journal mode.
+     */
+    private void runReadersAgainstWriter(final DatabaseHelper.JournalMode mode, final int readerCount,
+                                         final long durationMs) throws InterruptedException {
+        final String name = "concurrency-" + mode + ".db";
+        mContext.deleteDatabase(name);
+        final DatabaseHelper helper = new DatabaseHelper(mContext, name, mode);
+        final PlantDB plantDB = PlantDB.getInstance();
+        final List<Plant> plants = generatePlants(2000);
+        plantDB.insertAll(helper, plants);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final CountDownLatch done = new CountDownLatch(readerCount + 1);
+        final List<Latencies> readLatencies = new ArrayList<>();
+        final Latencies writeLatencies = new Latencies();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readerCount; i++) {
+            final Latencies latencies = new Latencies();
+            readLatencies.add(latencies);
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (running.get()) {
+                        final long start = System.nanoTime();
+                        plantDB.getAll(helper);
+                        latencies.add((System.nanoTime() - start) / 1000);
+                    }
+                    done.countDown();
+                }
+            }));
+        }
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int i = 0;
+                while (running.get()) {
+                    final Plant plant = plants.get(i++ % plants.size());
+                    plant.water();
+                    final long start = System.nanoTime();
+                    plantDB.update(helper, plant);
+                    writeLatencies.add((System.nanoTime() - start) / 1000);
+                }
+                done.countDown();
+            }
+        }));
+
+        final long start = SystemClock.elapsedRealtime();
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(durationMs);
+        running.set(false);
+        done.await();
+        final long elapsedMs = SystemClock.elapsedRealtime() - start;
+
+        Log.i(TAG, String.format("%s, %d readers: getAll %s", mode, readerCount,
+                Latencies.summarize(readLatencies, elapsedMs)));
+        Log.i(TAG, String.format("%s, %d readers: update %s", mode, readerCount,
+                Latencies.summarize(Arrays.asList(writeLatencies), elapsedMs)));
+
+        helper.close();
+        mContext.deleteDatabase(name);
+    }
+
+    @Test
+    public void readersAgainstWriter() throws InterruptedException {
+        for (final int readerCount : new int[] { 1, 2, 4 }) {
+            for (final DatabaseHelper.JournalMode mode : DatabaseHelper.JournalMode.values()) {
+                runReadersAgainstWriter(mode, readerCount, 5000);
+            }
+        }
+    }
+}
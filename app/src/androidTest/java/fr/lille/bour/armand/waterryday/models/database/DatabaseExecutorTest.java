@@ -0,0 +1,232 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the batching, failure and cancellation semantics of {@link DatabaseExecutor}.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class DatabaseExecutorTest {
+
+    @Rule
+    public final TestDatabase mDatabase = new TestDatabase("executor.db");
+
+    private DatabaseHelper mHelper;
+    private DatabaseExecutor mExecutor;
+    private final Object mOwner = new Object();
+
+    @Before
+    public void openDatabase() {
+        mHelper = mDatabase.getHelper();
+        mExecutor = new DatabaseExecutor(mHelper);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        mExecutor.shutdown();
+    }
+
+    private static DatabaseExecutor.Operation<Long> insert(final Plant plant) {
+        return new DatabaseExecutor.Operation<Long>() {
+            @Override
+            public Long execute(final SQLiteOpenHelper helper) {
+                return PlantDB.getInstance().insert(helper, plant);
+            }
+        };
+    }
+
+    private static Plant newPlant(final int i) {
+        return new Plant(-1, "Plant " + i, "Specie", "Location", 3, Plant.getCurrentEpochDay());
+    }
+
+    @Test
+    public void queuedWritesShareTransactions() throws Exception {
+        // Holds the writer thread so that the next writes pile up behind it
+        final CountDownLatch release = new CountDownLatch(1);
+        mExecutor.write(mOwner, new DatabaseExecutor.Operation<Void>() {
+            @Override
+            public Void execute(final SQLiteOpenHelper helper) {
+                try {
+                    release.await();
+                } catch (final InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        }, null);
+        final List<DatabaseExecutor.Task<Long>> tasks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            tasks.add(mExecutor.write(mOwner, insert(newPlant(i)), null));
+        }
+        release.countDown();
+        for (final DatabaseExecutor.Task<Long> task : tasks) {
+            assertTrue(task.get(5, TimeUnit.SECONDS) != -1);
+        }
+
+        // The batches are counted before their tasks complete
+        assertTrue(mExecutor.getMetrics().batches <= 2);
+        assertEquals(50, PlantDB.getInstance().getAll(mHelper).size());
+    }
+
+    @Test
+    public void failedWriteOnlyFailsItself() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        mExecutor.write(mOwner, new DatabaseExecutor.Operation<Void>() {
+            @Override
+            public Void execute(final SQLiteOpenHelper helper) {
+                try {
+                    release.await();
+                } catch (final InterruptedException exc) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        }, null);
+        final DatabaseExecutor.Task<Long> inserted = mExecutor.write(mOwner, insert(newPlant(0)), null);
+        final DatabaseExecutor.Task<Void> failing = mExecutor.write(mOwner, new DatabaseExecutor.Operation<Void>() {
+            @Override
+            public Void execute(final SQLiteOpenHelper helper) {
+                throw new IllegalStateException("Failing write");
+            }
+        }, null);
+        release.countDown();
+
+        try {
+            failing.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException exc) {
+            assertTrue(exc.getCause() instanceof IllegalStateException);
+        }
+        // The insertion is rolled back with the batch, then run again on its own
+        assertTrue(inserted.get(5, TimeUnit.SECONDS) != -1);
+        assertEquals(1, PlantDB.getInstance().getAll(mHelper).size());
+
+        // The next writes are not affected
+        assertTrue(mExecutor.write(mOwner, insert(newPlant(1)), null).get(5, TimeUnit.SECONDS) != -1);
+    }
+
+    @Test
+    public void caughtNestedFailureFailsTheWrite() throws Exception {
+        final Plant plant = newPlant(0);
+        final DatabaseExecutor.Task<Long> write = mExecutor.write(mOwner, new DatabaseExecutor.Operation<Long>() {
+            @Override
+            public Long execute(final SQLiteOpenHelper helper) {
+                final long id = PlantDB.getInstance().insert(helper, plant);
+                // A nested write fails, and its failure is caught
+                final SQLiteDatabase db = helper.getWritableDatabase();
+                db.beginTransaction();
+                AbstractDB.endTransaction(db, false);
+                return id;
+            }
+        }, null);
+        try {
+            write.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException exc) {
+            assertTrue(exc.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(-1, plant.getId());
+        assertEquals(0, PlantDB.getInstance().getAll(mHelper).size());
+    }
+
+    @Test
+    public void errorDoesNotStopTheWriter() throws Exception {
+        final DatabaseExecutor.Task<Void> failing = mExecutor.write(mOwner, new DatabaseExecutor.Operation<Void>() {
+            @Override
+            public Void execute(final SQLiteOpenHelper helper) {
+                throw new AssertionError("Failing write");
+            }
+        }, null);
+        try {
+            failing.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException exc) {
+            assertTrue(exc.getCause() instanceof AssertionError);
+        }
+        assertTrue(mExecutor.write(mOwner, insert(newPlant(0)), null).get(5, TimeUnit.SECONDS) != -1);
+    }
+
+    @Test
+    public void interruptedWriterKeepsRunningWrites() throws Exception {
+        final Thread writer = mExecutor.write(mOwner, new DatabaseExecutor.Operation<Thread>() {
+            @Override
+            public Thread execute(final SQLiteOpenHelper helper) {
+                return Thread.currentThread();
+            }
+        }, null).get(5, TimeUnit.SECONDS);
+        writer.interrupt();
+
+        assertTrue(mExecutor.write(mOwner, insert(newPlant(0)), null).get(5, TimeUnit.SECONDS) != -1);
+        assertTrue(writer.isAlive());
+    }
+
+    @Test
+    public void shutdownRunsTheQueuedWrites() throws Exception {
+        final DatabaseExecutor.Task<Long> write = mExecutor.write(mOwner, insert(newPlant(0)), null);
+        mExecutor.shutdown();
+        assertTrue(write.isDone());
+        assertTrue(write.get() != -1);
+        try {
+            mExecutor.write(mOwner, insert(newPlant(1)), null);
+            fail();
+        } catch (final IllegalStateException exc) {
+            // Expected, the executor is shut down
+        }
+    }
+
+    @Test
+    public void cancelledOwnerKeepsItsWrites() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        // Holds both reader threads
+        for (int i = 0; i < 2; i++) {
+            mExecutor.read(mOwner, new DatabaseExecutor.Operation<Void>() {
+                @Override
+                public Void execute(final SQLiteOpenHelper helper) {
+                    try {
+                        release.await();
+                    } catch (final InterruptedException exc) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                }
+            }, null);
+        }
+        final DatabaseExecutor.Task<Integer> read = mExecutor.read(mOwner, new DatabaseExecutor.Operation<Integer>() {
+            @Override
+            public Integer execute(final SQLiteOpenHelper helper) {
+                return PlantDB.getInstance().getAll(helper).size();
+            }
+        }, null);
+        final DatabaseExecutor.Task<Long> write = mExecutor.write(mOwner, insert(newPlant(0)), null);
+
+        mExecutor.cancelAll(mOwner);
+        release.countDown();
+
+        assertTrue(read.isCancelled());
+        assertTrue(write.get(5, TimeUnit.SECONDS) != -1);
+        assertEquals(1, PlantDB.getInstance().getAll(mHelper).size());
+    }
+}
@@ -0,0 +1,56 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the sample plants are inserted once per database, whichever process created it,
+ * and never next to plants written before.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class DatabaseSeedTest {
+
+    private static final String DATABASE_NAME = "seed.db";
+
+    @Rule
+    public final TestDatabase mDatabase = new TestDatabase(DATABASE_NAME);
+
+    @Test
+    public void seedSurvivesANewProcess() {
+        // The database is created, then the process dies before seeding it
+        mDatabase.getHelper().getWritableDatabase();
+        mDatabase.getHelper().close();
+
+        final DatabaseHelper helper = new DatabaseHelper(mDatabase.getContext(), DATABASE_NAME,
+                DatabaseHelper.JournalMode.WAL);
+        try {
+            final int seeded = helper.seedIfCreated();
+            assertTrue(seeded > 0);
+            assertEquals(0, helper.seedIfCreated());
+            assertEquals(seeded, PlantDB.getInstance().getAll(helper).size());
+        } finally {
+            helper.close();
+        }
+    }
+
+    @Test
+    public void plantsWrittenFirstAreNotSeeded() {
+        final DatabaseHelper helper = mDatabase.getHelper();
+        PlantDB.getInstance().insert(helper, new Plant(-1, "Germaine", "Specie", "Salon", 2,
+                Plant.getCurrentEpochDay()));
+
+        assertEquals(0, helper.seedIfCreated());
+        assertEquals(1, PlantDB.getInstance().getAll(helper).size());
+    }
+}
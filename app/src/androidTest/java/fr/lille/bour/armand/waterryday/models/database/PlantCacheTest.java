@@ -0,0 +1,97 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that the cache of {@link PlantDB} is an identity map for all the reads, and that a read
+ * racing with a write never caches the older row.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class PlantCacheTest {
+
+    @Rule
+    public final TestDatabase mDatabase = new TestDatabase("cache.db");
+
+    private DatabaseHelper mHelper;
+    private PlantDB mPlantDB;
+    private Plant mPlant;
+
+    @Before
+    public void openDatabase() {
+        mHelper = mDatabase.getHelper();
+        mPlantDB = PlantDB.getInstance();
+        mPlantDB.enableCache(10);
+        mPlant = new Plant(-1, "Germaine", "Specie", "Salon", 2, Plant.getCurrentEpochDay());
+        mPlantDB.insert(mHelper, mPlant);
+        mPlantDB.evictCache();
+    }
+
+    @After
+    public void disableCache() {
+        mPlantDB.disableCache();
+    }
+
+    @Test
+    public void allReadsShareTheCachedInstance() {
+        final Plant plant = mPlantDB.get(mHelper, mPlant.getId());
+        assertSame(plant, mPlantDB.get(mHelper, mPlant.getId()));
+        assertSame(plant, mPlantDB.getByIds(mHelper, Collections.singletonList(mPlant.getId())).get(0));
+        assertSame(plant, mPlantDB.getAll(mHelper).get(0));
+        assertSame(plant, mPlantDB.getPage(mHelper, -1, 10).get(0));
+        assertSame(plant, mPlantDB.iterate(mHelper, 10).next());
+    }
+
+    @Test
+    public void scansDoNotFillTheCache() {
+        final Plant scanned = mPlantDB.iterate(mHelper, 10).next();
+        assertNotSame(scanned, mPlantDB.get(mHelper, mPlant.getId()));
+    }
+
+    @Test
+    public void readRacingWithWriteIsNotCached() {
+        final long version = mPlantDB.beginRead(mHelper.getReadableDatabase());
+        final Plant stale = new Plant(mPlant.getId(), "Germaine", "Specie", "Salon", 2,
+                Plant.getCurrentEpochDay());
+        stale.clearDirtyFields();
+        // A write invalidates the plant while the row is read
+        mPlantDB.cacheRemove(mPlant.getId());
+        assertSame(stale, mPlantDB.share(stale, version, true));
+        assertNotSame(stale, mPlantDB.get(mHelper, mPlant.getId()));
+
+        // Once the written plant is cached, the readers get it instead of their older row
+        final Plant written = mPlantDB.get(mHelper, mPlant.getId());
+        assertSame(written, mPlantDB.share(stale, version, true));
+        assertEquals(mPlant.getName(), written.getName());
+    }
+
+    @Test
+    public void readsInTransactionBypassTheCache() {
+        final Plant cached = mPlantDB.get(mHelper, mPlant.getId());
+        mHelper.getWritableDatabase().beginTransaction();
+        try {
+            final List<Plant> plants = mPlantDB.getByIds(mHelper, Arrays.asList(mPlant.getId()));
+            assertNotSame(cached, plants.get(0));
+        } finally {
+            AbstractDB.endTransaction(mHelper.getWritableDatabase(), false);
+        }
+    }
+}
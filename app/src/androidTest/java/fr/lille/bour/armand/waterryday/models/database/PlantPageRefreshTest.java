@@ -0,0 +1,144 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.database.sqlite.SQLiteOpenHelper;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the loaded plants read again while the next page is being loaded, as the list does
+ * after a process restart, can be merged with that page in any order without duplicates.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class PlantPageRefreshTest {
+
+    private static final int LOADED = 100;
+    private static final int PAGE_SIZE = 50;
+    private static final int REFRESH_PAGE_SIZE = 30;
+
+    @Rule
+    public final TestDatabase mDatabase = new TestDatabase("refresh.db");
+
+    private DatabaseHelper mHelper;
+    private DatabaseExecutor mExecutor;
+    private final Object mOwner = new Object();
+    private final PlantRowBuffer mRows = new PlantRowBuffer();
+
+    @Before
+    public void openDatabase() {
+        mHelper = mDatabase.getHelper();
+        mExecutor = new DatabaseExecutor(mHelper);
+        final List<Plant> plants = new ArrayList<>();
+        for (int i = 0; i < LOADED + PAGE_SIZE * 2; i++) {
+            plants.add(new Plant(-1, "Plant " + i, "Specie", "Location", 3, Plant.getCurrentEpochDay()));
+        }
+        PlantDB.getInstance().insertAll(mHelper, plants);
+        PlantDB.getInstance().appendPage(mHelper, -1, LOADED, mRows);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        mExecutor.shutdown();
+    }
+
+    @Test
+    public void refreshFinishingFirst() throws Exception {
+        final PlantRowBuffer[] results = readConcurrently();
+        mRows.clear();
+        mRows.addAll(results[1]);
+        mRows.addAll(results[0]);
+        assertRowsUnique();
+    }
+
+    @Test
+    public void pageFinishingFirst() throws Exception {
+        final PlantRowBuffer[] results = readConcurrently();
+        mRows.addAll(results[0]);
+        // The rows changed since the refresh started: the list drops it and reads them again
+        final PlantRowBuffer rows = refresh(mRows.getId(mRows.size() - 1));
+        mRows.clear();
+        mRows.addAll(rows);
+        assertRowsUnique();
+    }
+
+    /**
+     * Loads the next page and reads the loaded plants again, on the two reader threads at once.
+     * @return The page, then the plants read again.
+     */
+    private PlantRowBuffer[] readConcurrently() throws Exception {
+        final long lastId = mRows.getId(mRows.size() - 1);
+        final CountDownLatch started = new CountDownLatch(2);
+        final DatabaseExecutor.Task<PlantRowBuffer> page = mExecutor.read(mOwner, new DatabaseExecutor.Operation<PlantRowBuffer>() {
+            @Override
+            public PlantRowBuffer execute(final SQLiteOpenHelper helper) {
+                await(started);
+                final PlantRowBuffer rows = new PlantRowBuffer();
+                PlantDB.getInstance().appendPage(helper, lastId, PAGE_SIZE, rows);
+                return rows;
+            }
+        }, null);
+        final DatabaseExecutor.Task<PlantRowBuffer> refresh = mExecutor.read(mOwner, new DatabaseExecutor.Operation<PlantRowBuffer>() {
+            @Override
+            public PlantRowBuffer execute(final SQLiteOpenHelper helper) {
+                await(started);
+                return refresh(lastId);
+            }
+        }, null);
+        return new PlantRowBuffer[] { page.get(5, TimeUnit.SECONDS), refresh.get(5, TimeUnit.SECONDS) };
+    }
+
+    /**
+     * Reads the plants up to the specified id again, the way the list refreshes its rows.
+     */
+    private PlantRowBuffer refresh(final long lastId) {
+        final PlantRowBuffer rows = new PlantRowBuffer();
+        long afterId = -1;
+        int read;
+        do {
+            read = PlantDB.getInstance().appendPage(mHelper, afterId, lastId, REFRESH_PAGE_SIZE, rows);
+            if (read > 0) {
+                afterId = rows.getId(rows.size() - 1);
+            }
+        } while (read == REFRESH_PAGE_SIZE);
+        return rows;
+    }
+
+    /**
+     * Lets both reads run at the same time.
+     */
+    private static void await(final CountDownLatch started) {
+        started.countDown();
+        try {
+            started.await(5, TimeUnit.SECONDS);
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void assertRowsUnique() {
+        assertEquals(LOADED + PAGE_SIZE, mRows.size());
+        for (int i = 0; i < mRows.size(); i++) {
+            if (i > 0) {
+                assertTrue(mRows.getId(i - 1) < mRows.getId(i));
+            }
+            assertEquals(i, mRows.indexOfId(mRows.getId(i)));
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.WateringForecast;
+import fr.lille.bour.armand.waterryday.models.WateringScheduler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the index, the schedule and the forecast of a {@link PlantRepository} stay
+ * consistent with the table after random sequences of operations, whether they go through the
+ * repository or not.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class PlantRepositoryTest {
+
+    private static final String[] LOCATIONS = { "Cuisine", "Salon", "Vestibule", null };
+    private static final String[] SPECIES = { "Basilic", "Droséra", "Sarracenia", "" };
+
+    @Rule
+    public final TestDatabase mDatabase = new TestDatabase("repository.db");
+
+    private DatabaseHelper mHelper;
+    private PlantRepository mRepository;
+
+    @Before
+    public void openDatabase() {
+        mHelper = mDatabase.getHelper();
+        mRepository = new PlantRepository(mHelper);
+    }
+
+    @After
+    public void closeRepository() {
+        mRepository.close();
+    }
+
+    private static Set<Long> idsOf(final List<Plant> plants) {
+        final Set<Long> ids = new HashSet<>();
+        for (final Plant plant : plants) {
+            ids.add(plant.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Checks every index against a scan of the table.
+     */
+    private void assertConsistentWithTable() {
+        final List<Plant> all = PlantDB.getInstance().getAll(mHelper);
+        for (final String location : LOCATIONS) {
+            final List<Plant> expected = new ArrayList<>();
+            for (final Plant plant : all) {
+                if (location == null ? plant.getLocation() == null : location.equals(plant.getLocation())) {
+                    expected.add(plant);
+                }
+            }
+            assertEquals(idsOf(expected), new HashSet<>(mRepository.getIdsByLocation(location)));
+        }
+        for (final String specie : SPECIES) {
+            final List<Plant> expected = new ArrayList<>();
+            for (final Plant plant : all) {
+                if (specie.equals(plant.getSpecie())) {
+                    expected.add(plant);
+                }
+            }
+            assertEquals(idsOf(expected), idsOf(mRepository.getBySpecie(specie)));
+        }
+        for (final Plant.WateringState state : Plant.WateringState.values()) {
+            final List<Plant> expected = new ArrayList<>();
+            for (final Plant plant : all) {
+                if (plant.getWateringState() == state) {
+                    expected.add(plant);
+                }
+            }
+            assertEquals(idsOf(expected), new HashSet<>(mRepository.getIdsByState(state)));
+            assertEquals(expected.size(), mRepository.countByState(state));
+        }
+        final int today = Plant.getCurrentEpochDay();
+        int due = 0;
+        int nextDueDay = WateringScheduler.NONE;
+        for (final Plant plant : all) {
+            if (plant.getNextWateringDay() <= today) {
+                due++;
+            }
+            nextDueDay = Math.min(nextDueDay, plant.getNextWateringDay());
+        }
+        assertEquals(due, mRepository.countDueToday());
+        assertEquals(nextDueDay, mRepository.getNextDueDay());
+
+        final WateringForecast expected = PlantDB.getInstance().getForecast(mHelper, today,
+                PlantRepository.FORECAST_DAYS);
+        final Map<String, int[]> forecast = mRepository.getForecast();
+        assertEquals(expected.getLocations(), forecast.keySet());
+        for (final String location : forecast.keySet()) {
+            assertArrayEquals(expected.getDueCounts(location), forecast.get(location));
+        }
+    }
+
+    @Test
+    public void consistentAfterRandomOperations() {
+        final Random random = new Random(42);
+        final int today = Plant.getCurrentEpochDay();
+        final List<Plant> plants = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final int operation = plants.isEmpty() ? 0 : random.nextInt(7);
+            final Plant plant = plants.isEmpty() ? null : plants.get(random.nextInt(plants.size()));
+            switch (operation) {
+                case 0:
+                    final Plant inserted = new Plant(-1, "Plant " + i, SPECIES[random.nextInt(SPECIES.length)],
+                            LOCATIONS[random.nextInt(LOCATIONS.length)], 1 + random.nextInt(7),
+                            today - random.nextInt(10));
+                    mRepository.insert(inserted);
+                    plants.add(inserted);
+                    break;
+                case 1:
+                    plant.setLocation(LOCATIONS[random.nextInt(LOCATIONS.length)]);
+                    plant.setWateringFrequency(1 + random.nextInt(7));
+                    mRepository.update(plant);
+                    break;
+                case 2:
+                    mRepository.delete(plant.getId());
+                    plants.remove(plant);
+                    break;
+                case 3:
+                    mRepository.water(plant);
+                    break;
+                case 4:
+                    mRepository.waterByLocation(plant.getLocation(), today);
+                    break;
+                case 5:
+                    mRepository.waterBySpecie(plant.getSpecie(), today);
+                    break;
+                default:
+                    mRepository.waterAllDue(today);
+                    break;
+            }
+            // The bulk waterings change plants in the table only: reload them
+            if (operation >= 4) {
+                plants.clear();
+                plants.addAll(PlantDB.getInstance().getAll(mHelper));
+            }
+            if (i % 250 == 0) {
+                assertConsistentWithTable();
+            }
+        }
+        assertConsistentWithTable();
+
+        // Loading from scratch gives the same index
+        mRepository.close();
+        mRepository = new PlantRepository(mHelper);
+        mRepository.load();
+        assertConsistentWithTable();
+    }
+
+    @Test
+    public void followsWritesMadeWithoutIt() {
+        final PlantDB plantDB = PlantDB.getInstance();
+        final int today = Plant.getCurrentEpochDay();
+        final Plant plant = new Plant(-1, "Germaine", "Basilic", "Cuisine", 2, today - 5);
+        plantDB.insert(mHelper, plant);
+        assertConsistentWithTable();
+
+        plant.setLocation("Salon");
+        plantDB.update(mHelper, plant);
+        plantDB.insert(mHelper, new Plant(-1, "Raymonde", "Droséra", "Vestibule", 3, today - 1));
+        assertConsistentWithTable();
+
+        plantDB.waterAllDue(mHelper, today);
+        assertConsistentWithTable();
+
+        plantDB.delete(mHelper, plant.getId());
+        assertConsistentWithTable();
+
+        // The index is loaded again after a bulk change
+        plantDB.cleanTable(mHelper);
+        plantDB.insert(mHelper, new Plant(-1, "Robert", "Sarracenia", "Cuisine", 4, today));
+        assertConsistentWithTable();
+    }
+}
@@ -0,0 +1,117 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the full-text search of {@link PlantDB} and the maintenance of its table on writes.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class PlantSearchTest {
+
+    private static final int LIMIT = 20;
+
+    @Rule
+    public final TestDatabase mDatabase = new TestDatabase("search.db");
+
+    private DatabaseHelper mHelper;
+    private PlantDB mPlantDB;
+
+    @Before
+    public void openDatabase() {
+        mHelper = mDatabase.getHelper();
+        mPlantDB = PlantDB.getInstance();
+    }
+
+    private Plant insert(final String name, final String specie, final String location) {
+        final Plant plant = new Plant(-1, name, specie, location, 3, Plant.getCurrentEpochDay());
+        mPlantDB.insert(mHelper, plant);
+        return plant;
+    }
+
+    private List<String> searchNames(final String query) {
+        final List<String> names = new ArrayList<>();
+        for (final Plant plant : mPlantDB.search(mHelper, query, LIMIT)) {
+            names.add(plant.getName());
+        }
+        return names;
+    }
+
+    private static List<String> names(final String... names) {
+        final List<String> list = new ArrayList<>();
+        for (final String name : names) {
+            list.add(name);
+        }
+        return list;
+    }
+
+    @Test
+    public void searchIgnoresCaseAndAccents() {
+        insert("Géranium lierre", "Pelargonium", "Balcon");
+        insert("Attrape-mouche", "Droséra", "Cuisine");
+
+        assertEquals(names("Géranium lierre"), searchNames("geran"));
+        assertEquals(names("Géranium lierre"), searchNames("GÉR lie"));
+        assertEquals(names("Attrape-mouche"), searchNames("dros"));
+        assertEquals(names("Attrape-mouche"), searchNames("cuis"));
+        assertTrue(searchNames("rose").isEmpty());
+        assertTrue(searchNames(" ,").isEmpty());
+    }
+
+    @Test
+    public void searchRanksNamesFirst() {
+        insert("Vieux cactus", "Cactaceae", "Salon");
+        insert("Misère", "Cactus", "Salon");
+        insert("Cactus de Noël", "Schlumbergera", "Salon");
+
+        assertEquals(names("Cactus de Noël", "Vieux cactus", "Misère"), searchNames("cact"));
+    }
+
+    @Test
+    public void searchFollowsWrites() {
+        final Plant plant = insert("Basilic", "Ocimum", "Cuisine");
+        final Plant other = insert("Menthe", "Mentha", "Cuisine");
+
+        plant.setName("Persil");
+        mPlantDB.update(mHelper, plant);
+        assertTrue(searchNames("basil").isEmpty());
+        assertEquals(names("Persil"), searchNames("pers"));
+
+        // Writing other columns keeps the texts
+        plant.setWateringFrequency(5);
+        mPlantDB.update(mHelper, plant);
+        assertEquals(names("Persil"), searchNames("pers"));
+
+        mPlantDB.delete(mHelper, other.getId());
+        assertEquals(names("Persil"), searchNames("cuisine"));
+
+        mPlantDB.cleanTable(mHelper);
+        assertTrue(searchNames("cuisine").isEmpty());
+    }
+
+    @Test
+    public void rebuildMatchesWrites() {
+        insert("Géranium", "Pelargonium", "Balcon");
+        insert("Droséra", "Drosera capensis", "Véranda");
+        assertEquals(names("Droséra"), searchNames("veranda"));
+
+        mPlantDB.rebuildSearchIndex(mHelper.getWritableDatabase());
+        assertEquals(names("Droséra"), searchNames("veranda"));
+        assertEquals(names("Géranium"), searchNames("pelarg"));
+    }
+}
@@ -0,0 +1,56 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+
+import org.junit.rules.ExternalResource;
+
+/**
+ * A database of its own for each test, in WAL mode: created empty before the test, then closed
+ * and deleted after it, once the <code>@After</code> methods of the test have run.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class TestDatabase extends ExternalResource {
+
+    private final String mName;
+    private Context mContext;
+    private DatabaseHelper mHelper;
+
+    /**
+     * @param name The name of the database file.
+     */
+    public TestDatabase(final String name) {
+        mName = name;
+    }
+
+    @Override
+    protected void before() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(mName);
+        mHelper = new DatabaseHelper(mContext, mName, DatabaseHelper.JournalMode.WAL);
+    }
+
+    @Override
+    protected void after() {
+        mHelper.close();
+        mContext.deleteDatabase(mName);
+    }
+
+    /**
+     * Gets the context the database is created in.
+     * @return The target context.
+     */
+    public Context getContext() {
+        return mContext;
+    }
+
+    /**
+     * Gets the helper of the database.
+     * @return The helper, open until the end of the test.
+     */
+    public DatabaseHelper getHelper() {
+        return mHelper;
+    }
+}
@@ -0,0 +1,112 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the objects written in a transaction that is rolled back get their state back, so
+ * that writing them again is not skipped, and that the cache only holds committed objects.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class TransactionRollbackTest {
+
+    @Rule
+    public final TestDatabase mDatabase = new TestDatabase("rollback.db");
+
+    private DatabaseHelper mHelper;
+    private PlantDB mPlantDB;
+    private Plant mPlant;
+
+    @Before
+    public void openDatabase() {
+        mHelper = mDatabase.getHelper();
+        mPlantDB = PlantDB.getInstance();
+        mPlantDB.enableCache(10);
+        mPlant = new Plant(-1, "Germaine", "Specie", "Salon", 2, Plant.getCurrentEpochDay());
+        mPlantDB.insert(mHelper, mPlant);
+    }
+
+    @After
+    public void disableCache() {
+        mPlantDB.disableCache();
+    }
+
+    @Test
+    public void updateIsRetriedAfterRollback() {
+        mPlant.setName("Raymonde");
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            assertTrue(mPlantDB.update(mHelper, mPlant));
+        } finally {
+            AbstractDB.endTransaction(db, false);
+        }
+        assertEquals(Plant.FIELD_NAME, mPlant.getDirtyFields());
+        final Plant committed = mPlantDB.get(mHelper, mPlant.getId());
+        assertNotSame(mPlant, committed);
+        assertEquals("Germaine", committed.getName());
+
+        assertTrue(mPlantDB.update(mHelper, mPlant));
+        assertEquals(0, mPlant.getDirtyFields());
+        assertEquals("Raymonde", mPlantDB.get(mHelper, mPlant.getId()).getName());
+    }
+
+    @Test
+    public void insertIsRetriedAfterRollback() {
+        final Plant plant = new Plant(-1, "Robert", "Specie", "Salon", 2, Plant.getCurrentEpochDay());
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            assertNotEquals(-1, mPlantDB.insert(mHelper, plant));
+        } finally {
+            AbstractDB.endTransaction(db, false);
+        }
+        assertEquals(-1, plant.getId());
+        assertEquals(Plant.FIELD_ALL, plant.getDirtyFields());
+        assertEquals(1, mPlantDB.getAll(mHelper).size());
+
+        assertNotEquals(-1, mPlantDB.insert(mHelper, plant));
+        assertEquals(2, mPlantDB.getAll(mHelper).size());
+    }
+
+    @Test
+    public void caughtNestedFailureRollsBack() {
+        mPlant.setName("Raymonde");
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            assertTrue(mPlantDB.update(mHelper, mPlant));
+            // A nested write fails, and its failure is caught
+            db.beginTransaction();
+            AbstractDB.endTransaction(db, false);
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            assertFalse(AbstractDB.endTransaction(db, successful));
+        }
+        assertEquals(Plant.FIELD_NAME, mPlant.getDirtyFields());
+        assertEquals("Germaine", mPlantDB.get(mHelper, mPlant.getId()).getName());
+
+        // The failure does not outlive the transaction
+        assertTrue(mPlantDB.update(mHelper, mPlant));
+        assertEquals("Raymonde", mPlantDB.get(mHelper, mPlant.getId()).getName());
+    }
+}
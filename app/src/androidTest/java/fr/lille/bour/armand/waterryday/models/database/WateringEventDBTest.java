@@ -0,0 +1,149 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.WateringEvent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the waterings are appended to the history and counted in the rollup table.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class WateringEventDBTest {
+
+    @Rule
+    public final TestDatabase mDatabase = new TestDatabase("events.db");
+
+    private DatabaseHelper mHelper;
+    private PlantDB mPlantDB;
+    private WateringEventDB mEventDB;
+    private int mToday;
+
+    @Before
+    public void openDatabase() {
+        mHelper = mDatabase.getHelper();
+        mPlantDB = PlantDB.getInstance();
+        mEventDB = WateringEventDB.getInstance();
+        mToday = Plant.getCurrentEpochDay();
+    }
+
+    private Plant insert(final String name, final String location) {
+        final Plant plant = new Plant(-1, name, "Specie", location, 2, mToday - 10);
+        mPlantDB.insert(mHelper, plant);
+        return plant;
+    }
+
+    /**
+     * Checks the rollup table against a count of the raw events.
+     */
+    private void assertRollupsMatchEvents(final int fromDay, final int toDay) {
+        final Map<String, int[]> expected = new HashMap<>();
+        for (final WateringEvent event : mEventDB.getBetween(mHelper, fromDay, toDay)) {
+            final String location = event.getLocation() == null || event.getLocation().isEmpty()
+                    ? null : event.getLocation();
+            int[] days = expected.get(location);
+            if (days == null) {
+                days = new int[toDay - fromDay + 1];
+                expected.put(location, days);
+            }
+            days[event.getDay() - fromDay]++;
+        }
+        final Map<String, int[]> counts = mEventDB.getDailyCounts(mHelper, fromDay, toDay);
+        assertEquals(expected.keySet(), counts.keySet());
+        for (final Map.Entry<String, int[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getValue(), counts.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void wateringAPlantAppendsAnEvent() {
+        final Plant plant = insert("Basilic", "Cuisine");
+        assertEquals(0, mEventDB.getByPlant(mHelper, plant.getId()).size());
+
+        assertTrue(mPlantDB.water(mHelper, plant));
+        // Watering it again the same day does not append anything
+        assertTrue(mPlantDB.water(mHelper, plant));
+        // Nor do other fields
+        plant.setName("Basilic pourpre");
+        mPlantDB.update(mHelper, plant);
+
+        final List<WateringEvent> events = mEventDB.getByPlant(mHelper, plant.getId());
+        assertEquals(1, events.size());
+        assertEquals(mToday, events.get(0).getDay());
+        assertEquals("Cuisine", events.get(0).getLocation());
+        assertRollupsMatchEvents(mToday - 30, mToday);
+    }
+
+    @Test
+    public void bulkWateringsAppendEvents() {
+        final Plant watered = insert("Menthe", "Cuisine");
+        insert("Persil", "Cuisine");
+        insert("Ficus", null);
+        insert("Cactus", null);
+        mPlantDB.water(mHelper, watered);
+
+        // The plant already watered today is not counted twice
+        assertEquals(1, mPlantDB.waterByLocation(mHelper, "Cuisine", mToday));
+        assertEquals(2, mPlantDB.waterAllDue(mHelper, mToday));
+        assertEquals(4, mEventDB.countBetween(mHelper, mToday, mToday));
+        assertEquals(2, mEventDB.getDailyCounts(mHelper, mToday, mToday).get(null)[0]);
+        assertRollupsMatchEvents(mToday - 30, mToday);
+    }
+
+    @Test
+    public void wateringByIdsAppendsOneEventPerPlant() {
+        final Plant first = insert("Menthe", "Cuisine");
+        final Plant second = insert("Persil", "Cuisine");
+        final Plant third = insert("Ficus", "Salon");
+        final Plant other = insert("Cactus", "Salon");
+
+        // The three ids are bound as four, the last one twice
+        assertEquals(3, mPlantDB.waterByIds(mHelper, Arrays.asList(first.getId(), second.getId(), third.getId()), mToday));
+        assertEquals(3, mEventDB.countBetween(mHelper, mToday, mToday));
+        assertEquals(1, mEventDB.getByPlant(mHelper, third.getId()).size());
+        assertEquals(0, mEventDB.getByPlant(mHelper, other.getId()).size());
+
+        // The statements compiled by the first call are reused
+        assertEquals(1, mPlantDB.waterByIds(mHelper, Arrays.asList(second.getId(), other.getId(), third.getId()), mToday));
+        assertEquals(4, mEventDB.countBetween(mHelper, mToday, mToday));
+    }
+
+    @Test
+    public void correctingTheLastWateredDayAppendsNothing() {
+        final Plant plant = insert("Ficus", "Salon");
+        plant.setLastWateredDay(mToday - 1);
+        assertTrue(mPlantDB.update(mHelper, plant));
+        assertEquals(0, mEventDB.getByPlant(mHelper, plant.getId()).size());
+    }
+
+    @Test
+    public void pruningKeepsRollups() {
+        final Plant plant = insert("Ficus", "Salon");
+        for (int day = mToday - 20; day <= mToday; day += 2) {
+            mPlantDB.waterByIds(mHelper, Collections.singletonList(plant.getId()), day);
+        }
+        assertEquals(11, mEventDB.countBetween(mHelper, mToday - 20, mToday));
+
+        assertEquals(5, mEventDB.pruneBefore(mHelper, mToday - 10));
+        assertEquals(6, mEventDB.getByPlant(mHelper, plant.getId()).size());
+        assertEquals(11, mEventDB.countBetween(mHelper, mToday - 20, mToday));
+    }
+}
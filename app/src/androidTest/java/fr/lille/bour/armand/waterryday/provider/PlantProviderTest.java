@@ -0,0 +1,195 @@
+package fr.lille.bour.armand.waterryday.provider;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.database.DatabaseHelper;
+import fr.lille.bour.armand.waterryday.models.database.TestDatabase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the plant provider on a database of its own: paging, batched writes in one transaction,
+ * and notifications.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class PlantProviderTest {
+
+    private static final int PLANTS = 120;
+
+    @Rule
+    public final TestDatabase mDatabase = new TestDatabase("provider.db");
+
+    private Context mContext;
+    private DatabaseHelper mHelper;
+    private PlantProvider mProvider;
+    private int mToday;
+
+    @Before
+    public void createProvider() {
+        mContext = mDatabase.getContext();
+        mHelper = mDatabase.getHelper();
+        mProvider = new PlantProvider(mHelper);
+        mProvider.attachInfo(mContext, null);
+        mToday = Plant.getCurrentEpochDay();
+    }
+
+    @After
+    public void closeProvider() {
+        mProvider.shutdown();
+    }
+
+    private ContentValues newPlant(final String name) {
+        final ContentValues values = new ContentValues();
+        values.put(PlantContract.Plants.NAME, name);
+        values.put(PlantContract.Plants.SPECIE, "Specie");
+        values.put(PlantContract.Plants.WATERING_FREQUENCY, 2);
+        values.put(PlantContract.Plants.LAST_WATERED_DAY, mToday - 10);
+        return values;
+    }
+
+    private int bulkInsertPlants() {
+        final ContentValues[] values = new ContentValues[PLANTS];
+        for (int i = 0; i < PLANTS; i++) {
+            values[i] = newPlant("Plant " + i);
+        }
+        return mProvider.bulkInsert(PlantContract.Plants.CONTENT_URI, values);
+    }
+
+    private int count(final Uri uri) {
+        final Cursor cursor = mProvider.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void pagesCoverAllThePlants() {
+        assertEquals(PLANTS, bulkInsertPlants());
+
+        long afterId = -1;
+        int read = 0;
+        while (true) {
+            final Cursor cursor = mProvider.query(PlantContract.Plants.buildPageUri(afterId, 50),
+                    new String[] { PlantContract.Plants._ID, PlantContract.Plants.NEXT_WATERING_DAY },
+                    null, null, null);
+            try {
+                if (!cursor.moveToFirst()) {
+                    break;
+                }
+                do {
+                    assertTrue(cursor.getLong(0) > afterId);
+                    assertEquals(mToday - 8, cursor.getInt(1));
+                    afterId = cursor.getLong(0);
+                    read++;
+                } while (cursor.moveToNext());
+            } finally {
+                cursor.close();
+            }
+        }
+        assertEquals(PLANTS, read);
+    }
+
+    @Test
+    public void itemUriIsRestrictedToThePlant() {
+        final Uri uri = mProvider.insert(PlantContract.Plants.CONTENT_URI, newPlant("Germaine"));
+        mProvider.insert(PlantContract.Plants.CONTENT_URI, newPlant("Robert"));
+
+        final ContentValues values = new ContentValues();
+        values.put(PlantContract.Plants.NAME, "Raymonde");
+        assertEquals(1, mProvider.update(uri, values, null, null));
+        final Cursor cursor = mProvider.query(uri, new String[] { PlantContract.Plants.NAME }, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Raymonde", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals(1, mProvider.delete(uri, null, null));
+        assertEquals(1, count(PlantContract.Plants.CONTENT_URI));
+    }
+
+    @Test
+    public void failedBatchWritesNothing() throws Exception {
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(PlantContract.Plants.CONTENT_URI)
+                .withValues(newPlant("Germaine")).build());
+        final ContentValues invalid = newPlant("Robert");
+        invalid.remove(PlantContract.Plants.WATERING_FREQUENCY);
+        operations.add(ContentProviderOperation.newInsert(PlantContract.Plants.CONTENT_URI)
+                .withValues(invalid).build());
+
+        try {
+            mProvider.applyBatch(operations);
+            fail();
+        } catch (final IllegalArgumentException exc) {
+            // Expected, the first insertion is rolled back
+        }
+        assertEquals(0, count(PlantContract.Plants.CONTENT_URI));
+
+        operations.remove(1);
+        assertEquals(1, mProvider.applyBatch(operations).length);
+        assertEquals(1, count(PlantContract.Plants.CONTENT_URI));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void derivedColumnIsReadOnly() {
+        final ContentValues values = newPlant("Germaine");
+        values.put(PlantContract.Plants.NEXT_WATERING_DAY, mToday);
+        mProvider.insert(PlantContract.Plants.CONTENT_URI, values);
+    }
+
+    @Test
+    public void changesAreNotifiedAfterCommit() throws Exception {
+        final Uri uri = mProvider.insert(PlantContract.Plants.CONTENT_URI, newPlant("Germaine"));
+        final CountDownLatch itemChanged = new CountDownLatch(1);
+        final CountDownLatch tableChanged = new CountDownLatch(1);
+        final ContentObserver observer = new ContentObserver(null) {
+            @Override
+            public void onChange(final boolean selfChange, final Uri changed) {
+                if (PlantContract.Plants.CONTENT_URI.equals(changed)) {
+                    tableChanged.countDown();
+                } else if (uri.equals(changed)) {
+                    itemChanged.countDown();
+                }
+            }
+        };
+        mContext.getContentResolver().registerContentObserver(PlantContract.Plants.CONTENT_URI, true, observer);
+        try {
+            final ContentValues values = new ContentValues();
+            values.put(PlantContract.Plants.LAST_WATERED_DAY, mToday);
+            mProvider.update(uri, values, null, null);
+            assertTrue(itemChanged.await(5, TimeUnit.SECONDS));
+
+            // Too many plants for one notification each
+            bulkInsertPlants();
+            assertTrue(tableChanged.await(5, TimeUnit.SECONDS));
+        } finally {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package fr.lille.bour.armand.waterryday;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+import fr.lille.bour.armand.waterryday.activity.PlantListActivity;
+import fr.lille.bour.armand.waterryday.metrics.StartupMetrics;
+
+/**
+ * The application, recording the start of its process in the {@link StartupMetrics}.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class WaterRydayApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        StartupMetrics.getInstance().mark(StartupMetrics.MARK_PROCESS_START, getProcessStartTime());
+        registerActivityLifecycleCallbacks(new LaunchDetector());
+    }
+
+    /**
+     * Gets the time the process was started at, on the {@link SystemClock#elapsedRealtime()} clock.
+     * Before Nougat, the creation of the application is the earliest time available.
+     * @return The time the process was started at, in milliseconds.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private static long getProcessStartTime() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Process.getStartElapsedRealtime();
+        }
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Discards the start of the process unless it was started to launch the list. When it is, the
+     * launch of the activity is queued on the main thread before the application is created, so
+     * the activity is created before any message posted from {@link #onCreate()} is handled. A
+     * process started for the provider, a broadcast or a job handles that message first.
+     */
+    private class LaunchDetector implements ActivityLifecycleCallbacks, Runnable {
+
+        /** Whether the main thread handled a message before the first activity was created. */
+        private boolean mIdleBeforeActivity;
+
+        LaunchDetector() {
+            new Handler(Looper.getMainLooper()).post(this);
+        }
+
+        @Override
+        public void run() {
+            mIdleBeforeActivity = true;
+        }
+
+        @Override
+        public void onActivityCreated(final Activity activity, final Bundle savedInstanceState) {
+            if (mIdleBeforeActivity || !(activity instanceof PlantListActivity)) {
+                StartupMetrics.getInstance().discard();
+            }
+            unregisterActivityLifecycleCallbacks(this);
+        }
+
+        @Override
+        public void onActivityStarted(final Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(final Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(final Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(final Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(final Activity activity, final Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(final Activity activity) {
+        }
+    }
+}
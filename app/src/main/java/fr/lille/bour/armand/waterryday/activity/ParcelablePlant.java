@@ -0,0 +1,69 @@
+package fr.lille.bour.armand.waterryday.activity;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+
+/**
+ * Wraps a {@link Plant} to save it in a {@link android.os.Bundle}, writing its fields one by one.
+ * {@link Plant} itself does not depend on Android, so that it can be benchmarked on a plain JVM.
+ * The dirty fields are only kept as all or nothing: a plant partially modified is restored
+ * with all its fields dirty.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class ParcelablePlant implements Parcelable {
+
+    public static final Creator<ParcelablePlant> CREATOR = new Creator<ParcelablePlant>() {
+        @Override
+        public ParcelablePlant createFromParcel(final Parcel source) {
+            final Plant plant = new Plant(source.readLong(), source.readString(), source.readString(),
+                    source.readString(), source.readInt(), source.readInt());
+            if (source.readInt() == 0) {
+                plant.clearDirtyFields();
+            }
+            return new ParcelablePlant(plant);
+        }
+
+        @Override
+        public ParcelablePlant[] newArray(final int size) {
+            return new ParcelablePlant[size];
+        }
+    };
+
+    private final Plant mPlant;
+
+    /**
+     * Wraps the specified plant.
+     * @param plant The plant to save.
+     */
+    public ParcelablePlant(final Plant plant) {
+        mPlant = plant;
+    }
+
+    /**
+     * Gets the wrapped plant.
+     * @return The plant.
+     */
+    public Plant getPlant() {
+        return mPlant;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(final Parcel dest, final int flags) {
+        dest.writeLong(mPlant.getId());
+        dest.writeString(mPlant.getName());
+        dest.writeString(mPlant.getSpecie());
+        dest.writeString(mPlant.getLocation());
+        dest.writeInt(mPlant.getWateringFrequency());
+        dest.writeInt(mPlant.getLastWateredDay());
+        dest.writeInt(mPlant.getDirtyFields());
+    }
+}
@@ -0,0 +1,55 @@
+package fr.lille.bour.armand.waterryday.activity;
+
+import android.support.v7.util.DiffUtil;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.database.PlantRowBuffer;
+
+/**
+ * Compares two snapshots of the plant list, matching the rows by id.
+ * The payload of a changed row is the mask of its changed fields (see {@link Plant#FIELD_NAME}),
+ * so that only the views of these fields are bound again.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class PlantDiffCallback extends DiffUtil.Callback {
+
+    private final PlantRowBuffer mOldRows;
+    private final PlantRowBuffer mNewRows;
+
+    /**
+     * Creates a callback comparing two snapshots, neither of which may change during the comparison.
+     * @param oldRows The rows currently displayed.
+     * @param newRows The rows to display.
+     */
+    public PlantDiffCallback(final PlantRowBuffer oldRows, final PlantRowBuffer newRows) {
+        mOldRows = oldRows;
+        mNewRows = newRows;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldRows.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewRows.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(final int oldItemPosition, final int newItemPosition) {
+        return mOldRows.getId(oldItemPosition) == mNewRows.getId(newItemPosition);
+    }
+
+    @Override
+    public boolean areContentsTheSame(final int oldItemPosition, final int newItemPosition) {
+        return mOldRows.getChangedFields(oldItemPosition, mNewRows, newItemPosition) == 0;
+    }
+
+    @Override
+    public Object getChangePayload(final int oldItemPosition, final int newItemPosition) {
+        return mOldRows.getChangedFields(oldItemPosition, mNewRows, newItemPosition);
+    }
+}
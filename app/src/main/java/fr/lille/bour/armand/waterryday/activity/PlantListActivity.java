@@ -1,28 +1,42 @@
 package fr.lille.bour.armand.waterryday.activity;
 
+import android.content.DialogInterface;
 import android.content.Intent;
-import android.database.sqlite.SQLiteOpenHelper;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.design.widget.FloatingActionButton;
 import android.support.design.widget.Snackbar;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.view.MenuItemCompat;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.support.v7.widget.Toolbar;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import fr.lille.bour.armand.waterryday.R;
 import fr.lille.bour.armand.waterryday.activity.fragment.AddPlantFragment;
+import fr.lille.bour.armand.waterryday.activity.fragment.PlantListHolderFragment;
+import fr.lille.bour.armand.waterryday.metrics.MetricsLog;
+import fr.lille.bour.armand.waterryday.metrics.StartupMetrics;
+import fr.lille.bour.armand.waterryday.models.EpochDay;
 import fr.lille.bour.armand.waterryday.models.Plant;
-import fr.lille.bour.armand.waterryday.models.database.DatabaseHelper;
+import fr.lille.bour.armand.waterryday.models.WateringScheduler;
 import fr.lille.bour.armand.waterryday.models.database.PlantDB;
+import fr.lille.bour.armand.waterryday.models.database.PlantRepository;
+import fr.lille.bour.armand.waterryday.models.database.PlantRowBuffer;
 
 /**
  * An activity representing a list of Plants. This activity
@@ -32,9 +46,15 @@ import fr.lille.bour.armand.waterryday.models.database.PlantDB;
  * item details. On tablets, the activity presents the list of items and
  * item details side-by-side using two vertical panes.
  */
-public class PlantListActivity extends AppCompatActivity {
+public class PlantListActivity extends AppCompatActivity implements PlantListHolderFragment.Listener {
 
     private static final int REQUEST_ADDPLANT = 1;
+    /** The number of plants left below the screen under which the next page is loaded. */
+    private static final int PREFETCH_DISTANCE = 25;
+    /** The number of plants kept in the {@link PlantDB} cache. */
+    private static final int CACHE_SIZE = 200;
+    /** The pattern of the days of the forecast after tomorrow. */
+    private static final String DAY_PATTERN = "EEEE d MMMM";
 
     /**
      * Whether or not the activity is in two-pane mode, i.e. running on a tablet
@@ -42,23 +62,37 @@ public class PlantListActivity extends AppCompatActivity {
      */
     private boolean mTwoPane;
 
-    private final List<Plant> mPlants = new ArrayList<>();
+    /** The holder of the loaded plants and of the work in progress, retained across configuration changes. */
+    private PlantListHolderFragment mHolder;
+    /** The loaded plants, bound to the list through {@link PlantRowBuffer.Row} views. */
+    private PlantRowBuffer mRows;
+    /** The labels of the watering states, indexed by ordinal. */
+    private String[] mStateLabels;
 
-    private SQLiteOpenHelper mHelper;
     private RecyclerView mRecyclerView;
     private SimpleItemRecyclerViewAdapter mAdapter;
+    /** The adapter of the plants matching the filter, set on the list while it is filtered. */
+    private SimpleItemRecyclerViewAdapter mResultsAdapter;
+    /** The menu item of the search, or <code>null</code> until the menu is created. */
+    private MenuItem mSearchItem;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        mHelper = new DatabaseHelper(this);
-        PlantDB.getInstance().cleanTable(mHelper);
-        PlantDB.getInstance().fillWithValues(mHelper);
-
-        // Load plants from database
-        new GetAllPlantsTask().execute();
+        PlantDB.getInstance().enableCache(CACHE_SIZE);
+
+        // Restored with the activity after a configuration change: the plants are not loaded again
+        final FragmentManager fragmentManager = getSupportFragmentManager();
+        mHolder = (PlantListHolderFragment) fragmentManager.findFragmentByTag(PlantListHolderFragment.TAG);
+        if (mHolder == null) {
+            mHolder = new PlantListHolderFragment();
+            fragmentManager.beginTransaction().add(mHolder, PlantListHolderFragment.TAG).commitNow();
+        }
+        mRows = mHolder.getRows();
 
         setContentView(R.layout.activity_plant_list);
+        markOnNextFrame(getWindow().getDecorView(), StartupMetrics.MARK_FIRST_FRAME);
+        mStateLabels = getResources().getStringArray(R.array.wateringStates);
 
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -68,14 +102,29 @@ public class PlantListActivity extends AppCompatActivity {
         fab.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                Snackbar.make(view, "Replace with your own action", Snackbar.LENGTH_LONG)
-                        .setAction("Action", null).show();
+                mHolder.waterAllDue();
             }
         });
 
         mRecyclerView = (RecyclerView) findViewById(R.id.plant_list);
-        mAdapter = new SimpleItemRecyclerViewAdapter(mPlants);
-        mRecyclerView.setAdapter(mAdapter);
+        mAdapter = new SimpleItemRecyclerViewAdapter(mRows);
+        mResultsAdapter = new SimpleItemRecyclerViewAdapter(mHolder.getResults());
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(final RecyclerView recyclerView, final int dx, final int dy) {
+                // The results are read whole: only the loaded plants have a next page
+                if (recyclerView.getAdapter() != mAdapter) {
+                    return;
+                }
+                final LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager.findLastVisibleItemPosition() >= mRows.size() - PREFETCH_DISTANCE) {
+                    mHolder.loadNextPage();
+                }
+            }
+        });
+        mHolder.attach(mAdapter, mResultsAdapter, this);
+        showFilter();
+        showSchedule();
 
         if (findViewById(R.id.plant_detail_container) != null) {
             // The detail container view will be present only in the
@@ -87,6 +136,165 @@ public class PlantListActivity extends AppCompatActivity {
 
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // The work in progress goes on in the holder, without this activity
+        mHolder.detach();
+    }
+
+    @Override
+    public void onTrimMemory(final int level) {
+        super.onTrimMemory(level);
+        PlantDB.getInstance().trimCache(level);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(final Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_plant_list, menu);
+        mSearchItem = menu.findItem(R.id.action_search);
+        final SearchView searchView = (SearchView) MenuItemCompat.getActionView(mSearchItem);
+        // Restores the search of the holder after a configuration change, before listening to the view
+        final String restoredQuery = mHolder.getSearchQuery();
+        if (restoredQuery != null) {
+            MenuItemCompat.expandActionView(mSearchItem);
+            searchView.setQuery(restoredQuery, false);
+            searchView.clearFocus();
+        }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(final String query) {
+                // The results are already searched while typing
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(final String query) {
+                mHolder.search(query);
+                showFilter();
+                return true;
+            }
+        });
+        MenuItemCompat.setOnActionExpandListener(mSearchItem, new MenuItemCompat.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(final MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(final MenuItem item) {
+                if (mHolder.getSearchQuery() != null) {
+                    mHolder.clearFilter();
+                    showFilter();
+                }
+                return true;
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(final MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_resetPlants:
+                mHolder.resetPlants();
+                return true;
+
+            case R.id.action_filterLocation:
+                mHolder.loadLocations();
+                return true;
+
+            case R.id.action_forecast:
+                mHolder.loadForecast();
+                return true;
+
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    /**
+     * Sets the adapter and the title of the list according to the filter of the holder.
+     */
+    private void showFilter() {
+        final SimpleItemRecyclerViewAdapter adapter = mHolder.isFiltered() ? mResultsAdapter : mAdapter;
+        if (mRecyclerView.getAdapter() != adapter) {
+            mRecyclerView.setAdapter(adapter);
+        }
+        if (mHolder.isFilteredByLocation()) {
+            setTitle(getLocationLabel(mHolder.getLocationFilter()));
+        } else {
+            setTitle(R.string.app_name);
+        }
+    }
+
+    /**
+     * Displays the number of plants due today as subtitle, or the days left before the next
+     * watering if none is.
+     */
+    private void showSchedule() {
+        final int due = mHolder.getDueToday();
+        final int nextDueDay = mHolder.getNextDueDay();
+        String subtitle = null;
+        if (due > 0) {
+            subtitle = getResources().getQuantityString(R.plurals.subtitle_dueToday, due, due);
+        } else if (nextDueDay != WateringScheduler.NONE) {
+            final int days = nextDueDay - Plant.getCurrentEpochDay();
+            subtitle = getResources().getQuantityString(R.plurals.subtitle_nextWatering, days, days);
+        }
+        getSupportActionBar().setSubtitle(subtitle);
+    }
+
+    /**
+     * Gets the label of a day of the forecast.
+     * @param day The day, as an epoch day.
+     * @param today The first day of the forecast.
+     */
+    private String getDayLabel(final int day, final int today) {
+        if (day == today) {
+            return getString(R.string.forecast_today);
+        } else if (day == today + 1) {
+            return getString(R.string.forecast_tomorrow);
+        }
+        return EpochDay.toLocalDate(day).toString(DAY_PATTERN);
+    }
+
+    /**
+     * Gets the label of a location, the plants without location having one too.
+     */
+    private String getLocationLabel(final String location) {
+        return location == null || location.isEmpty() ? getString(R.string.filter_noLocation) : location;
+    }
+
+    /**
+     * Records a startup mark when the next frame of the specified view is drawn, and logs the
+     * startup once all its marks are recorded.
+     */
+    private void markOnNextFrame(final View view, final int mark) {
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                recordStartupMark(mark);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Records a startup mark now, and logs the startup once all its marks are recorded.
+     */
+    private void recordStartupMark(final int mark) {
+        final StartupMetrics metrics = StartupMetrics.getInstance();
+        if (metrics.mark(mark, SystemClock.elapsedRealtime())) {
+            final String report = metrics.takeReport(System.currentTimeMillis());
+            if (report != null) {
+                new MetricsLog(this).append(report);
+            }
+        }
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         switch (requestCode) {
@@ -101,7 +309,7 @@ public class PlantListActivity extends AppCompatActivity {
                         Toast.makeText(this, R.string.toast_genericFailure, Toast.LENGTH_SHORT).show();
                     } else {
                         final Plant plant = new Plant(name, specie, location, waterFreq);
-                        new InsertPlantTask().execute(plant);
+                        mHolder.insertPlant(plant);
                     }
                 }
                 break;
@@ -114,23 +322,34 @@ public class PlantListActivity extends AppCompatActivity {
     public class SimpleItemRecyclerViewAdapter
             extends RecyclerView.Adapter<SimpleItemRecyclerViewAdapter.ViewHolder> {
 
-        public SimpleItemRecyclerViewAdapter(List<Plant> items) {
-            // Nothing to do here
+        /** The plants displayed, the loaded ones or the ones matching the filter. */
+        private final PlantRowBuffer mItems;
+
+        public SimpleItemRecyclerViewAdapter(final PlantRowBuffer items) {
+            mItems = items;
+            // The plant ids let the list keep its views across changes
+            setHasStableIds(true);
+        }
+
+        @Override
+        public long getItemId(final int position) {
+            return mItems.getId(position);
         }
 
         @Override
         public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
             View view = LayoutInflater.from(parent.getContext())
                     .inflate(R.layout.plant_list_content, parent, false);
-            return new ViewHolder(view);
+            return new ViewHolder(view, mItems.newRow());
         }
 
         @Override
         public void onBindViewHolder(final ViewHolder holder, int position) {
-            holder.mItem = mPlants.get(position);
-            holder.mIdView.setText(mPlants.get(position).getName());
-            holder.mContentView.setText(mPlants.get(position).getSpecie());
-
+            // Only moves the flyweight and hands out references: nothing is allocated per bind
+            final PlantRowBuffer.Row row = holder.mItem.moveTo(position);
+            holder.mIdView.setText(row.getName());
+            holder.mContentView.setText(row.getSpecie());
+            holder.mStateView.setText(mStateLabels[row.getWateringState().ordinal()]);
 //            holder.mView.setOnClickListener(new View.OnClickListener() {
 //                @Override
 //                public void onClick(View v) {
@@ -153,22 +372,51 @@ public class PlantListActivity extends AppCompatActivity {
 //            });
         }
 
+        /**
+         * Binds only the views of the changed fields when the payloads are masks of
+         * {@link Plant#FIELD_NAME} and the like, see {@link PlantDiffCallback}.
+         */
+        @Override
+        public void onBindViewHolder(final ViewHolder holder, final int position, final List<Object> payloads) {
+            if (payloads.isEmpty()) {
+                onBindViewHolder(holder, position);
+                return;
+            }
+            int fields = 0;
+            for (final Object payload : payloads) {
+                fields |= (Integer) payload;
+            }
+            final PlantRowBuffer.Row row = holder.mItem.moveTo(position);
+            if ((fields & Plant.FIELD_NAME) != 0) {
+                holder.mIdView.setText(row.getName());
+            }
+            if ((fields & Plant.FIELD_SPECIE) != 0) {
+                holder.mContentView.setText(row.getSpecie());
+            }
+            if ((fields & (Plant.FIELD_WATERINGFREQUENCY | Plant.FIELD_LASTWATEREDDATE)) != 0) {
+                holder.mStateView.setText(mStateLabels[row.getWateringState().ordinal()]);
+            }
+        }
+
         @Override
         public int getItemCount() {
-            return mPlants.size();
+            return mItems.size();
         }
 
         public class ViewHolder extends RecyclerView.ViewHolder {
             public final View mView;
             public final TextView mIdView;
             public final TextView mContentView;
-            public Plant mItem;
+            public final TextView mStateView;
+            public final PlantRowBuffer.Row mItem;
 
-            public ViewHolder(View view) {
+            public ViewHolder(View view, PlantRowBuffer.Row item) {
                 super(view);
                 mView = view;
                 mIdView = (TextView) view.findViewById(R.id.id);
                 mContentView = (TextView) view.findViewById(R.id.content);
+                mStateView = (TextView) view.findViewById(R.id.state);
+                mItem = item;
             }
 
             @Override
@@ -178,113 +426,85 @@ public class PlantListActivity extends AppCompatActivity {
         }
     }
 
-    /**
-     * Fetches all the plants in database.
-     */
-    public class GetAllPlantsTask extends AsyncTask<Void, Void, List<Plant>> {
-
-        @Override
-        protected List<Plant> doInBackground(Void... voids) {
-            final List<Plant> plants = PlantDB.getInstance().getAll(mHelper);
-            return plants;
-        }
-
-        @Override
-        protected void onPostExecute(List<Plant> plants) {
-            super.onPostExecute(plants);
-            if (!plants.isEmpty()) {
-                for (final Plant plant : plants) {
-                    mPlants.add(plant);
-                }
-                mAdapter.notifyItemInserted(mPlants.size() - 1);
-            } else {
-                Toast.makeText(PlantListActivity.this, R.string.toast_fetch_failed, Toast.LENGTH_LONG).show();
-            }
+    @Override
+    public void onFirstPageLoaded(final boolean empty) {
+        if (empty) {
+            recordStartupMark(StartupMetrics.MARK_LIST_POPULATED);
+        } else {
+            markOnNextFrame(mRecyclerView, StartupMetrics.MARK_LIST_POPULATED);
         }
     }
 
-    /**
-     * Deletes all the object with the specified id, and returns the number of rows deleted.
-     */
-    public class DeletePlantTask extends AsyncTask<Plant, Void, Plant> {
-
-        private boolean success;
-
-        @Override
-        protected Plant doInBackground(Plant... plants) {
-            success = PlantDB.getInstance().delete(mHelper, plants[0].getId());
-            return plants[0];
-        }
-
-        @Override
-        protected void onPostExecute(final Plant plant) {
-            super.onPostExecute(plant);
-            if (success) {
-                final int position = mPlants.indexOf(plant);
-                mPlants.remove(plant);
-                mAdapter.notifyItemRemoved(position);
-            } else {
-                Toast.makeText(PlantListActivity.this, R.string.toast_delete_failed, Toast.LENGTH_LONG).show();
-            }
-        }
+    @Override
+    public void onWatered(final int watered) {
+        Snackbar.make(mRecyclerView, getResources().getQuantityString(R.plurals.snackbar_watered, watered, watered),
+                Snackbar.LENGTH_LONG).show();
     }
 
-    /**
-     * Updates all specified {@link Plant} objects, and returns the number of rows updated.
-     */
-    public class UpdatePlantTask extends AsyncTask<Plant, Void, Plant> {
-
-        private boolean success;
-
-        @Override
-        protected Plant doInBackground(final Plant... plants) {
-            success = PlantDB.getInstance().update(mHelper, plants[0]);
-            return plants[0];
-        }
+    @Override
+    public void onScheduleChanged() {
+        showSchedule();
+    }
 
-        @Override
-        protected void onPostExecute(final Plant plant) {
-            super.onPostExecute(plant);
-            if (success) {
-                for (final Plant mPlant : mPlants) {
-                    if (mPlant.getId() == plant.getId()) {
-                        mPlant.setName(plant.getName());
-                        mPlant.setSpecie(plant.getSpecie());
-                        mPlant.setLocation(plant.getLocation());
-                        mPlant.setWateringFrequency(plant.getWateringFrequency());
-                        mPlant.setLastWateredDate(plant.getLastWateredDate());
-                        break;
-                    }
+    @Override
+    public void onForecastLoaded(final Map<String, int[]> forecast) {
+        // One line per day with its total, followed by the locations having plants due
+        final int today = Plant.getCurrentEpochDay();
+        final StringBuilder message = new StringBuilder();
+        for (int i = 0; i < PlantRepository.FORECAST_DAYS; i++) {
+            final StringBuilder locations = new StringBuilder();
+            int total = 0;
+            for (final Map.Entry<String, int[]> entry : forecast.entrySet()) {
+                final int due = entry.getValue()[i];
+                if (due > 0) {
+                    total += due;
+                    locations.append(getString(R.string.forecast_location, getLocationLabel(entry.getKey()), due));
                 }
-            } else {
-                Toast.makeText(PlantListActivity.this, R.string.toast_update_failed, Toast.LENGTH_LONG).show();
             }
-
+            if (i > 0) {
+                message.append('\n');
+            }
+            message.append(getResources().getQuantityString(R.plurals.forecast_day, total,
+                    getDayLabel(today + i, today), total));
+            message.append(locations);
         }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.dialog_forecast)
+                .setMessage(message)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
     }
 
-    /**
-     * Inserts all specified {@link Plant} objects, and returns the number of rows inserted.
-     */
-    public class InsertPlantTask extends AsyncTask<Plant, Void, Plant> {
-
-        private boolean success;
-
-        @Override
-        protected Plant doInBackground(Plant... plants) {
-            success = PlantDB.getInstance().insert(mHelper, plants[0]) != -1;
-            return plants[0];
+    @Override
+    public void onLocationsLoaded(final List<String> locations) {
+        // The first choice shows all the plants again
+        final String[] labels = new String[locations.size() + 1];
+        labels[0] = getString(R.string.filter_allLocations);
+        for (int i = 0; i < locations.size(); i++) {
+            labels[i + 1] = getLocationLabel(locations.get(i));
         }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.dialog_filterLocation)
+                .setItems(labels, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(final DialogInterface dialog, final int which) {
+                        // The location replaces the search
+                        if (mSearchItem != null) {
+                            MenuItemCompat.collapseActionView(mSearchItem);
+                        }
+                        if (which == 0) {
+                            mHolder.clearFilter();
+                        } else {
+                            mHolder.filterByLocation(locations.get(which - 1));
+                        }
+                        showFilter();
+                    }
+                })
+                .show();
+    }
 
-        @Override
-        protected void onPostExecute(Plant plant) {
-            super.onPostExecute(plant);
-            if (success) {
-                mPlants.add(plant);
-                mAdapter.notifyItemInserted(mPlants.size() - 1);
-            } else {
-                Toast.makeText(PlantListActivity.this, R.string.toast_insert_failed, Toast.LENGTH_LONG).show();
-            }
-        }
+    @Override
+    public void onFailure(final int message) {
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
     }
 }
@@ -0,0 +1,929 @@
+package fr.lille.bour.armand.waterryday.activity.fragment;
+
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v4.app.Fragment;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import fr.lille.bour.armand.waterryday.R;
+import fr.lille.bour.armand.waterryday.activity.ParcelablePlant;
+import fr.lille.bour.armand.waterryday.activity.PlantDiffCallback;
+import fr.lille.bour.armand.waterryday.activity.PlantListActivity;
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.WateringScheduler;
+import fr.lille.bour.armand.waterryday.models.database.ChangeEvent;
+import fr.lille.bour.armand.waterryday.models.database.DatabaseExecutor;
+import fr.lille.bour.armand.waterryday.models.database.DatabaseHelper;
+import fr.lille.bour.armand.waterryday.models.database.LiveQuery;
+import fr.lille.bour.armand.waterryday.models.database.PlantDB;
+import fr.lille.bour.armand.waterryday.models.database.PlantRepository;
+import fr.lille.bour.armand.waterryday.models.database.PlantRowBuffer;
+
+/**
+ * A fragment without view holding the plants loaded by {@link PlantListActivity} and the
+ * database work in progress for them.
+ * It is retained across configuration changes: the recreated activity binds the rows already in
+ * memory, and the results of the work started before reach its list.
+ * The rows follow the changes of the plants table through a {@link LiveQuery}, whichever screen
+ * made them: only the changed plants are read again.
+ * The list can be filtered by location or searched: the matching plants are then held apart, as
+ * results read again on each change of the table.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class PlantListHolderFragment extends Fragment {
+
+    /** The tag of the fragment in its activity. */
+    public static final String TAG = "PlantListHolderFragment";
+
+    /** The number of plants loaded from the database at once. */
+    private static final int PAGE_SIZE = 50;
+    /** The number of plants loaded first, enough to fill the screen of a tablet. */
+    private static final int FIRST_PAGE_SIZE = 20;
+    /** The number of plants read at once when refreshing the loaded plants. */
+    private static final int REFRESH_PAGE_SIZE = 500;
+    /** The number of plants saved with the state, displayed before anything is read after a process restart. */
+    private static final int SAVED_ROWS = 100;
+    /** The delay after the last keystroke before searching, so that typing does not queue reads. */
+    private static final long SEARCH_DELAY_MS = 150;
+    /** The number of plants shown for a search, the best matching first. */
+    private static final int SEARCH_LIMIT = 50;
+
+    private static final String KEY_ROWS = "rows";
+
+    /** Whether the sample plants were inserted if needed, see {@link DatabaseHelper#seedIfCreated()}. */
+    private static boolean sSeedChecked;
+
+    /**
+     * The activity displaying the plants, notified of the results of the work of the holder.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the first page of plants was added to the rows.
+         * @param empty Whether there is no plant at all.
+         */
+        void onFirstPageLoaded(boolean empty);
+
+        /**
+         * Called when the plants due were watered.
+         * @param watered The number of plants watered.
+         */
+        void onWatered(int watered);
+
+        /**
+         * Called when the locations to filter the list by were read.
+         * @param locations The locations having at least one plant, <code>null</code> included.
+         */
+        void onLocationsLoaded(List<String> locations);
+
+        /**
+         * Called when the number of plants due today or the next watering day changed, see
+         * {@link #getDueToday()}.
+         */
+        void onScheduleChanged();
+
+        /**
+         * Called when the watering forecast was read, see {@link PlantRepository#getForecast()}.
+         * @param forecast The number of plants due at each location on each day, from today.
+         */
+        void onForecastLoaded(Map<String, int[]> forecast);
+
+        /**
+         * Called when an operation failed.
+         * @param message The resource id of the message to display.
+         */
+        void onFailure(int message);
+    }
+
+    /** The loaded plants, ordered by id. */
+    private final PlantRowBuffer mRows = new PlantRowBuffer();
+    /** The plants matching the filter of the list, see {@link #isFiltered()}. */
+    private final PlantRowBuffer mResults = new PlantRowBuffer();
+
+    private DatabaseHelper mHelper;
+    private DatabaseExecutor mExecutor;
+    /** The index of the plants by location, specie and state, read by the filters. */
+    private PlantRepository mRepository;
+    /** Reads the plants matching the filter of the list, or <code>null</code> if it is not filtered. */
+    private ResultsQuery mResultsQuery;
+    /** Reads the results of {@link #mResultsQuery}, posted once the user stops typing a search. */
+    private final Runnable mRefreshResults = new Runnable() {
+        @Override
+        public void run() {
+            mResultsQuery.refresh();
+        }
+    };
+    private final Handler mHandler = new Handler();
+    /** Reads the number of plants due and the next watering day from the repository. */
+    private ScheduleQuery mSchedule;
+    /** The number of plants due today. */
+    private int mDueToday;
+    /** The next watering day, as an epoch day, or {@link WateringScheduler#NONE} if there is no plant. */
+    private int mNextDueDay = WateringScheduler.NONE;
+    /** Reads the plants changed in the database, to patch the rows with. */
+    private PlantChangesQuery mChanges;
+    /** The adapter displaying {@link #mRows}, or <code>null</code> while the activity is recreated. */
+    private RecyclerView.Adapter<?> mAdapter;
+    /** The adapter displaying {@link #mResults}, or <code>null</code> while the activity is recreated. */
+    private RecyclerView.Adapter<?> mResultsAdapter;
+    /** The activity, or <code>null</code> while it is recreated. */
+    private Listener mListener;
+
+    /** Whether a page of plants is being loaded. */
+    private boolean mLoadingPage;
+    /** Whether all the plants have been loaded from the database. */
+    private boolean mAllLoaded;
+    /** Incremented each time the list is reloaded, to drop the pages loaded before. */
+    private int mListGeneration;
+    /** Whether the rows were restored after the process was killed and must be read again, see {@link #onStart()}. */
+    private boolean mStale;
+    /** Whether the page being loaded may miss changes, see {@link #applyChanges(PlantChanges)}. */
+    private boolean mPageOutdated;
+
+    /**
+     * Mandatory empty constructor for the fragment manager to instantiate the
+     * fragment (e.g. after the process was killed).
+     */
+    public PlantListHolderFragment() {
+    }
+
+    @Override
+    public void onCreate(final Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setRetainInstance(true);
+        mHelper = DatabaseHelper.getInstance(getActivity());
+        mExecutor = DatabaseExecutor.getInstance(getActivity());
+        // Created first, so that its index is up to date when the queries below read it
+        mRepository = new PlantRepository(mHelper);
+        mChanges = new PlantChangesQuery();
+        mChanges.observe(new DatabaseExecutor.Callback<PlantChanges>() {
+            @Override
+            public void onResult(final PlantChanges changes) {
+                applyChanges(changes);
+            }
+        });
+        mSchedule = new ScheduleQuery();
+        mSchedule.observe(new DatabaseExecutor.Callback<int[]>() {
+            @Override
+            public void onResult(final int[] schedule) {
+                mDueToday = schedule[0];
+                mNextDueDay = schedule[1];
+                if (mListener != null) {
+                    mListener.onScheduleChanged();
+                }
+            }
+        });
+
+        if (savedInstanceState != null) {
+            final ArrayList<ParcelablePlant> rows = savedInstanceState.getParcelableArrayList(KEY_ROWS);
+            if (rows != null) {
+                for (final ParcelablePlant row : rows) {
+                    mRows.add(row.getPlant());
+                }
+            }
+            // The process was killed, the plants may have changed since they were saved
+            mStale = true;
+        }
+
+        // Load the first page of plants from database, once the sample plants are inserted on first launch
+        if (sSeedChecked) {
+            loadNextPage();
+        } else {
+            seedThenLoad();
+        }
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        // The day may have changed while the list was not visible
+        mSchedule.refresh();
+        if (mStale) {
+            mStale = false;
+            refresh();
+        }
+    }
+
+    @Override
+    public void onSaveInstanceState(final Bundle outState) {
+        super.onSaveInstanceState(outState);
+        // Only used if the process is killed: the first rows are enough to show the list at once
+        final int count = Math.min(mRows.size(), SAVED_ROWS);
+        final ArrayList<ParcelablePlant> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(new ParcelablePlant(mRows.toPlant(i)));
+        }
+        outState.putParcelableArrayList(KEY_ROWS, rows);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        // The activity is finishing: the pending loads are dropped, the writes still complete
+        mChanges.stop();
+        mSchedule.stop();
+        mHandler.removeCallbacks(mRefreshResults);
+        if (mResultsQuery != null) {
+            mResultsQuery.stop();
+        }
+        mExecutor.cancelAll(this);
+        mRepository.close();
+    }
+
+    /**
+     * Binds the holder to the adapters and the listener of a newly created activity.
+     * @param adapter The adapter displaying {@link #getRows()}.
+     * @param resultsAdapter The adapter displaying {@link #getResults()}.
+     * @param listener The listener of the activity.
+     */
+    public void attach(final RecyclerView.Adapter<?> adapter, final RecyclerView.Adapter<?> resultsAdapter,
+                       final Listener listener) {
+        mAdapter = adapter;
+        mResultsAdapter = resultsAdapter;
+        mListener = listener;
+    }
+
+    /**
+     * Unbinds the holder from the activity being destroyed. The work in progress goes on,
+     * its results are applied to the rows only.
+     */
+    public void detach() {
+        mAdapter = null;
+        mResultsAdapter = null;
+        mListener = null;
+    }
+
+    /**
+     * Gets the loaded plants. The buffer is the same for the whole life of the holder.
+     * @return The loaded plants.
+     */
+    public PlantRowBuffer getRows() {
+        return mRows;
+    }
+
+    /**
+     * Gets the number of plants due today, as last read from the repository.
+     * @return The number of due plants.
+     */
+    public int getDueToday() {
+        return mDueToday;
+    }
+
+    /**
+     * Gets the next watering day of the plants, as last read from the repository.
+     * @return The day as an epoch day, or {@link WateringScheduler#NONE} if there is no plant.
+     */
+    public int getNextDueDay() {
+        return mNextDueDay;
+    }
+
+    /**
+     * Gets the plants matching the filter of the list. The buffer is the same for the whole life
+     * of the holder, and empty while the list is not filtered.
+     * @return The matching plants.
+     */
+    public PlantRowBuffer getResults() {
+        return mResults;
+    }
+
+    /**
+     * Tells whether the list is filtered, i.e. displays {@link #getResults()}.
+     * @return <code>true</code> if the list is filtered.
+     */
+    public boolean isFiltered() {
+        return mResultsQuery != null;
+    }
+
+    /**
+     * Tells whether the list is filtered by location, see {@link #filterByLocation(String)}.
+     * @return <code>true</code> if the list is filtered by location.
+     */
+    public boolean isFilteredByLocation() {
+        return mResultsQuery instanceof LocationQuery;
+    }
+
+    /**
+     * Gets the location the list is filtered by.
+     * @return The location, or <code>null</code> if the list is not filtered by location.
+     */
+    public String getLocationFilter() {
+        return isFilteredByLocation() ? ((LocationQuery) mResultsQuery).mLocation : null;
+    }
+
+    /**
+     * Gets the query the list is searched with, see {@link #search(String)}.
+     * @return The query, or <code>null</code> if the list is not searched.
+     */
+    public String getSearchQuery() {
+        return mResultsQuery instanceof SearchQuery ? ((SearchQuery) mResultsQuery).mQuery : null;
+    }
+
+    /**
+     * Reads the locations having at least one plant, then gives them to the listener.
+     */
+    public void loadLocations() {
+        mExecutor.read(this, new DatabaseExecutor.Operation<List<String>>() {
+            @Override
+            public List<String> execute(final SQLiteOpenHelper helper) {
+                return new ArrayList<>(mRepository.getLocations());
+            }
+        }, new DatabaseExecutor.Callback<List<String>>() {
+            @Override
+            public void onResult(final List<String> locations) {
+                if (mListener != null) {
+                    mListener.onLocationsLoaded(locations);
+                }
+            }
+
+            @Override
+            public void onError(final Throwable error) {
+                super.onError(error);
+                if (mListener != null) {
+                    mListener.onFailure(R.string.toast_fetch_failed);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the watering forecast of the next days, then gives it to the listener.
+     */
+    public void loadForecast() {
+        mExecutor.read(this, new DatabaseExecutor.Operation<Map<String, int[]>>() {
+            @Override
+            public Map<String, int[]> execute(final SQLiteOpenHelper helper) {
+                return mRepository.getForecast();
+            }
+        }, new DatabaseExecutor.Callback<Map<String, int[]>>() {
+            @Override
+            public void onResult(final Map<String, int[]> forecast) {
+                if (mListener != null) {
+                    mListener.onForecastLoaded(forecast);
+                }
+            }
+
+            @Override
+            public void onError(final Throwable error) {
+                super.onError(error);
+                if (mListener != null) {
+                    mListener.onFailure(R.string.toast_fetch_failed);
+                }
+            }
+        });
+    }
+
+    /**
+     * Filters the list to the plants at the specified location, through the index of the
+     * repository. The results follow the changes of the table.
+     * @param location The location, <code>null</code> for the plants without location.
+     */
+    public void filterByLocation(final String location) {
+        setResultsQuery(new LocationQuery(location), false);
+    }
+
+    /**
+     * Filters the list to the plants matching a query, through the full-text table of
+     * {@link PlantDB}. Called on each keystroke: the first query is read at once, the next ones
+     * once the user stops typing, the results of the previous query being displayed until then.
+     * @param query The query as typed, the search being stopped if it is blank.
+     */
+    public void search(final String query) {
+        if (query.trim().isEmpty()) {
+            if (mResultsQuery instanceof SearchQuery) {
+                clearFilter();
+            }
+        } else if (!query.equals(getSearchQuery())) {
+            setResultsQuery(new SearchQuery(query), mResultsQuery instanceof SearchQuery);
+        }
+    }
+
+    /**
+     * Displays all the loaded plants again.
+     */
+    public void clearFilter() {
+        setResultsQuery(null, false);
+    }
+
+    /**
+     * Replaces the query of the results, dropping the results still being read for the previous one.
+     * @param query The new query, or <code>null</code> to stop filtering.
+     * @param debounce Whether to read the results once no other query replaced this one for
+     *                 {@link #SEARCH_DELAY_MS}, keeping the current results until then.
+     */
+    private void setResultsQuery(final ResultsQuery query, final boolean debounce) {
+        mHandler.removeCallbacks(mRefreshResults);
+        if (mResultsQuery != null) {
+            mResultsQuery.stop();
+        }
+        mResultsQuery = query;
+        if (!debounce) {
+            mResults.clear();
+            if (mResultsAdapter != null) {
+                mResultsAdapter.notifyDataSetChanged();
+            }
+        }
+        if (query != null) {
+            query.observe(new DatabaseExecutor.Callback<PlantRowBuffer>() {
+                @Override
+                public void onResult(final PlantRowBuffer results) {
+                    mResults.clear();
+                    mResults.addAll(results);
+                    if (mResultsAdapter != null) {
+                        mResultsAdapter.notifyDataSetChanged();
+                    }
+                }
+
+                @Override
+                public void onError(final Throwable error) {
+                    super.onError(error);
+                    if (mListener != null) {
+                        mListener.onFailure(R.string.toast_fetch_failed);
+                    }
+                }
+            });
+            if (debounce) {
+                mHandler.postDelayed(mRefreshResults, SEARCH_DELAY_MS);
+            } else {
+                query.refresh();
+            }
+        }
+    }
+
+    /**
+     * Inserts the sample plants if the database was just created, then loads the first page.
+     */
+    private void seedThenLoad() {
+        mExecutor.write(this, new DatabaseExecutor.Operation<Integer>() {
+            @Override
+            public Integer execute(final SQLiteOpenHelper helper) {
+                return mHelper.seedIfCreated();
+            }
+        }, new DatabaseExecutor.Callback<Integer>() {
+            @Override
+            public void onResult(final Integer inserted) {
+                sSeedChecked = true;
+                loadNextPage();
+            }
+
+            @Override
+            public void onError(final Throwable error) {
+                super.onError(error);
+                // Shows the plants there are anyway
+                loadNextPage();
+            }
+        });
+    }
+
+    /**
+     * Replaces all the plants with the sample plants, then loads the list again.
+     */
+    public void resetPlants() {
+        mExecutor.write(this, new DatabaseExecutor.Operation<Integer>() {
+            @Override
+            public Integer execute(final SQLiteOpenHelper helper) {
+                return mHelper.resetSampleData();
+            }
+        }, new DatabaseExecutor.Callback<Integer>() {
+            @Override
+            public void onResult(final Integer inserted) {
+                sSeedChecked = true;
+                // The pages being loaded belong to the previous plants
+                mListGeneration++;
+                mLoadingPage = false;
+                mAllLoaded = false;
+                mPageOutdated = false;
+                mRows.clear();
+                if (mAdapter != null) {
+                    mAdapter.notifyDataSetChanged();
+                }
+                loadNextPage();
+            }
+
+            @Override
+            public void onError(final Throwable error) {
+                super.onError(error);
+                if (mListener != null) {
+                    mListener.onFailure(R.string.toast_reset_failed);
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts loading the next page of plants, unless a page is already being loaded
+     * or all the plants have been loaded.
+     * The first page only holds a screenful of plants, so that it is displayed as soon as possible.
+     */
+    public void loadNextPage() {
+        if (mLoadingPage || mAllLoaded) {
+            return;
+        }
+        mLoadingPage = true;
+        final long lastId = mRows.isEmpty() ? -1 : mRows.getId(mRows.size() - 1);
+        final int pageSize = mRows.isEmpty() ? FIRST_PAGE_SIZE : PAGE_SIZE;
+        mExecutor.read(this, new DatabaseExecutor.Operation<PlantRowBuffer>() {
+            @Override
+            public PlantRowBuffer execute(final SQLiteOpenHelper helper) {
+                final PlantRowBuffer page = new PlantRowBuffer();
+                PlantDB.getInstance().appendPage(helper, lastId, pageSize, page);
+                return page;
+            }
+        }, new PageLoaded(pageSize, mListGeneration));
+    }
+
+    /**
+     * Reads the loaded plants again and compares them with the displayed ones on a background
+     * thread, then notifies the adapter of the changed rows only.
+     */
+    public void refresh() {
+        if (mRows.isEmpty()) {
+            return;
+        }
+        final PlantRowBuffer oldRows = new PlantRowBuffer(mRows);
+        final int modCount = mRows.getModCount();
+        final long lastId = mRows.getId(mRows.size() - 1);
+        mExecutor.read(this, new DatabaseExecutor.Operation<RefreshResult>() {
+            @Override
+            public RefreshResult execute(final SQLiteOpenHelper helper) {
+                // The rows after the last one are left to the page being loaded, if any
+                final PlantRowBuffer newRows = new PlantRowBuffer();
+                long afterId = -1;
+                int read;
+                do {
+                    read = PlantDB.getInstance().appendPage(helper, afterId, lastId, REFRESH_PAGE_SIZE, newRows);
+                    if (read > 0) {
+                        afterId = newRows.getId(newRows.size() - 1);
+                    }
+                } while (read == REFRESH_PAGE_SIZE);
+                // The rows are ordered by id, they never move
+                final DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new PlantDiffCallback(oldRows, newRows), false);
+                return new RefreshResult(newRows, diff);
+            }
+        }, new DatabaseExecutor.Callback<RefreshResult>() {
+            @Override
+            public void onResult(final RefreshResult result) {
+                if (mRows.getModCount() != modCount) {
+                    // The diff does not apply to the rows modified meanwhile
+                    refresh();
+                    return;
+                }
+                mRows.clear();
+                mRows.addAll(result.rows);
+                if (mAdapter != null) {
+                    result.diff.dispatchUpdatesTo(mAdapter);
+                }
+            }
+        });
+    }
+
+    /**
+     * The plants read by {@link #refresh()} and their differences with the displayed ones.
+     */
+    private static class RefreshResult {
+        final PlantRowBuffer rows;
+        final DiffUtil.DiffResult diff;
+
+        RefreshResult(final PlantRowBuffer rows, final DiffUtil.DiffResult diff) {
+            this.rows = rows;
+            this.diff = diff;
+        }
+    }
+
+    /**
+     * Appends the page of plants fetched by {@link #loadNextPage()} to the loaded plants.
+     */
+    private class PageLoaded extends DatabaseExecutor.Callback<PlantRowBuffer> {
+
+        /** The number of plants requested. */
+        private final int mPageSize;
+        /** The {@link #mListGeneration} the page was requested for. */
+        private final int mGeneration;
+
+        PageLoaded(final int pageSize, final int generation) {
+            mPageSize = pageSize;
+            mGeneration = generation;
+        }
+
+        @Override
+        public void onResult(final PlantRowBuffer page) {
+            if (mGeneration != mListGeneration) {
+                return;
+            }
+            mLoadingPage = false;
+            mAllLoaded = page.size() < mPageSize;
+            final int start = mRows.size();
+            if (!page.isEmpty()) {
+                mRows.addAll(page);
+                if (mAdapter != null) {
+                    mAdapter.notifyItemRangeInserted(start, page.size());
+                }
+            }
+            if (mPageOutdated) {
+                // The page may have been read before changes that could not be applied to it
+                mPageOutdated = false;
+                refresh();
+            }
+            if (start == 0) {
+                if (mListener != null) {
+                    mListener.onFirstPageLoaded(page.isEmpty());
+                }
+                // The screen is filled, the next page is loaded ahead of the scrolling
+                loadNextPage();
+            }
+        }
+
+        @Override
+        public void onError(final Throwable error) {
+            super.onError(error);
+            if (mGeneration != mListGeneration) {
+                return;
+            }
+            mLoadingPage = false;
+            if (mListener != null) {
+                mListener.onFailure(R.string.toast_fetch_failed);
+            }
+        }
+    }
+
+    /**
+     * Applies the changes of the plants table to the rows, notifying the adapter of each changed row.
+     * @param changes The changes, and the plants they inserted or updated.
+     */
+    private void applyChanges(final PlantChanges changes) {
+        if (changes.event == null) {
+            // Any plant may have changed
+            refresh();
+            return;
+        }
+        for (final long id : changes.event.getDeletedIds()) {
+            final int position = mRows.indexOfId(id);
+            if (position != -1) {
+                mRows.remove(position);
+                if (mAdapter != null) {
+                    mAdapter.notifyItemRemoved(position);
+                }
+            }
+        }
+        final long lastId = mRows.isEmpty() ? -1 : mRows.getId(mRows.size() - 1);
+        boolean outdated = false;
+        for (final Plant plant : changes.plants) {
+            final int position = mRows.indexOfId(plant.getId());
+            if (position != -1) {
+                final int changed = mRows.set(position, plant);
+                if (changed != 0 && mAdapter != null) {
+                    mAdapter.notifyItemChanged(position, changed);
+                }
+            } else if (plant.getId() > lastId) {
+                // The plants come ordered by id: they can be appended once all the others are loaded,
+                // otherwise they will come with their page
+                if (mAllLoaded) {
+                    mRows.add(plant);
+                    if (mAdapter != null) {
+                        mAdapter.notifyItemInserted(mRows.size() - 1);
+                    }
+                } else if (mLoadingPage) {
+                    mPageOutdated = true;
+                }
+            } else {
+                // Inserted among the loaded plants with an id used before
+                outdated = true;
+            }
+        }
+        if (outdated) {
+            refresh();
+        }
+    }
+
+    /**
+     * The changes of the plants table read by {@link PlantChangesQuery}.
+     */
+    private static class PlantChanges {
+        /** The changes, or <code>null</code> if any plant may have changed. */
+        final ChangeEvent event;
+        /** The inserted and updated plants, ordered by id. */
+        final List<Plant> plants;
+
+        PlantChanges(final ChangeEvent event, final List<Plant> plants) {
+            this.event = event;
+            this.plants = plants;
+        }
+    }
+
+    /**
+     * Reads the plants inserted or updated by each change of the plants table.
+     */
+    private class PlantChangesQuery extends LiveQuery<PlantChanges> {
+
+        PlantChangesQuery() {
+            super(mExecutor, PlantDB.getInstance());
+        }
+
+        @Override
+        protected PlantChanges evaluate(final SQLiteOpenHelper helper, final ChangeEvent changes) {
+            if (changes == null || changes.isBulk()) {
+                return new PlantChanges(null, Collections.<Plant>emptyList());
+            }
+            final List<Long> ids = new ArrayList<>(changes.getInsertedIds().length + changes.getUpdatedIds().length);
+            for (final long id : changes.getInsertedIds()) {
+                ids.add(id);
+            }
+            for (final long id : changes.getUpdatedIds()) {
+                ids.add(id);
+            }
+            final List<Plant> plants = ids.isEmpty() ? Collections.<Plant>emptyList()
+                    : PlantDB.getInstance().getByIds(helper, ids);
+            return new PlantChanges(changes, plants);
+        }
+    }
+
+    /**
+     * Reads the plants matching a filter of the list, again on each change of the plants table as
+     * any plant may start or stop matching. Each filter has its own query, so that stopping it
+     * drops the results still being read.
+     */
+    private abstract class ResultsQuery extends LiveQuery<PlantRowBuffer> {
+
+        ResultsQuery() {
+            super(mExecutor, PlantDB.getInstance());
+        }
+
+        /**
+         * Reads the matching plants.
+         * @param helper The database helper to use.
+         * @return The plants, in the order to display them.
+         */
+        protected abstract List<Plant> read(SQLiteOpenHelper helper);
+
+        @Override
+        protected PlantRowBuffer evaluate(final SQLiteOpenHelper helper, final ChangeEvent changes) {
+            final PlantRowBuffer results = new PlantRowBuffer();
+            for (final Plant plant : read(helper)) {
+                results.add(plant);
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Reads the number of plants due today and the next watering day, in this order, from the
+     * {@link WateringScheduler} of the repository.
+     */
+    private class ScheduleQuery extends LiveQuery<int[]> {
+
+        ScheduleQuery() {
+            super(mExecutor, PlantDB.getInstance());
+        }
+
+        @Override
+        protected int[] evaluate(final SQLiteOpenHelper helper, final ChangeEvent changes) {
+            return new int[] { mRepository.countDueToday(), mRepository.getNextDueDay() };
+        }
+    }
+
+    /**
+     * Reads the plants at a location.
+     */
+    private class LocationQuery extends ResultsQuery {
+
+        private final String mLocation;
+
+        LocationQuery(final String location) {
+            mLocation = location;
+        }
+
+        @Override
+        protected List<Plant> read(final SQLiteOpenHelper helper) {
+            return mRepository.getByLocation(mLocation);
+        }
+    }
+
+    /**
+     * Reads the plants matching a search, the best matching first.
+     */
+    private class SearchQuery extends ResultsQuery {
+
+        private final String mQuery;
+
+        SearchQuery(final String query) {
+            mQuery = query;
+        }
+
+        @Override
+        protected List<Plant> read(final SQLiteOpenHelper helper) {
+            return PlantDB.getInstance().search(helper, mQuery, SEARCH_LIMIT);
+        }
+    }
+
+    /**
+     * Waters all the plants due today with a single statement. The watered plants are then
+     * read again through {@link #mChanges}.
+     */
+    public void waterAllDue() {
+        // Read once, so that the database and the list agree even across midnight
+        final int today = Plant.getCurrentEpochDay();
+        mExecutor.write(this, new DatabaseExecutor.Operation<Integer>() {
+            @Override
+            public Integer execute(final SQLiteOpenHelper helper) {
+                return PlantDB.getInstance().waterAllDue(helper, today);
+            }
+        }, new DatabaseExecutor.Callback<Integer>() {
+            @Override
+            public void onResult(final Integer watered) {
+                if (mListener != null) {
+                    mListener.onWatered(watered);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes the specified plant. It is then removed from the rows through {@link #mChanges}.
+     * @param plant The plant to delete.
+     */
+    public void deletePlant(final Plant plant) {
+        mExecutor.write(this, new DatabaseExecutor.Operation<Boolean>() {
+            @Override
+            public Boolean execute(final SQLiteOpenHelper helper) {
+                return PlantDB.getInstance().delete(helper, plant.getId());
+            }
+        }, new DatabaseExecutor.Callback<Boolean>() {
+            @Override
+            public void onResult(final Boolean success) {
+                if (!success) {
+                    onError(null);
+                }
+            }
+
+            @Override
+            public void onError(final Throwable error) {
+                if (mListener != null) {
+                    mListener.onFailure(R.string.toast_delete_failed);
+                }
+            }
+        });
+    }
+
+    /**
+     * Saves the specified plant. It is then refreshed in the rows through {@link #mChanges}.
+     * @param plant The plant to save.
+     */
+    public void updatePlant(final Plant plant) {
+        mExecutor.write(this, new DatabaseExecutor.Operation<Boolean>() {
+            @Override
+            public Boolean execute(final SQLiteOpenHelper helper) {
+                return PlantDB.getInstance().update(helper, plant);
+            }
+        }, new DatabaseExecutor.Callback<Boolean>() {
+            @Override
+            public void onResult(final Boolean success) {
+                if (!success) {
+                    onError(null);
+                }
+            }
+
+            @Override
+            public void onError(final Throwable error) {
+                if (mListener != null) {
+                    mListener.onFailure(R.string.toast_update_failed);
+                }
+            }
+        });
+    }
+
+    /**
+     * Inserts the specified plant. It is then added to the rows through {@link #mChanges} if all
+     * the plants are loaded, otherwise it comes with the last page.
+     * @param plant The plant to insert.
+     */
+    public void insertPlant(final Plant plant) {
+        mExecutor.write(this, new DatabaseExecutor.Operation<Boolean>() {
+            @Override
+            public Boolean execute(final SQLiteOpenHelper helper) {
+                return PlantDB.getInstance().insert(helper, plant) != -1;
+            }
+        }, new DatabaseExecutor.Callback<Boolean>() {
+            @Override
+            public void onResult(final Boolean success) {
+                if (!success) {
+                    onError(null);
+                }
+            }
+
+            @Override
+            public void onError(final Throwable error) {
+                if (mListener != null) {
+                    mListener.onFailure(R.string.toast_insert_failed);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package fr.lille.bour.armand.waterryday.metrics;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@link MetricsLog} class keeps the last lines of metrics of the application, e.g. the
+ * durations of the cold starts, across launches.
+ * The lines are stored in the shared preferences, which are written to disk in the background.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class MetricsLog {
+
+    private static final String TAG = "MetricsLog";
+    private static final String PREFS_NAME = "metrics";
+    private static final String KEY_LINES = "lines";
+    /** The number of lines kept, the oldest ones are dropped first. */
+    public static final int MAX_LINES = 100;
+
+    private final SharedPreferences mPrefs;
+
+    /**
+     * Opens the metrics log of the application.
+     * @param context A context of the application.
+     */
+    public MetricsLog(final Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Adds a line at the end of the log, and to the system log.
+     * @param line The line to add, without line break.
+     */
+    public synchronized void append(final String line) {
+        Log.i(TAG, line);
+        final String lines = append(mPrefs.getString(KEY_LINES, null), line, MAX_LINES);
+        mPrefs.edit().putString(KEY_LINES, lines).apply();
+    }
+
+    /**
+     * Gets the lines of the log, the oldest first.
+     * @return The lines of the log.
+     */
+    public synchronized List<String> getLines() {
+        final String lines = mPrefs.getString(KEY_LINES, null);
+        if (lines == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(lines.split("\n"));
+    }
+
+    /**
+     * Adds a line at the end of the lines of a log, dropping the oldest ones beyond a maximum.
+     * @param lines The lines of the log separated by line breaks, or <code>null</code> if it is empty.
+     * @param line The line to add, without line break.
+     * @param maxLines The maximum number of lines of the log.
+     * @return The lines of the log with the added line.
+     */
+    public static String append(final String lines, final String line, final int maxLines) {
+        if (lines == null || maxLines == 1) {
+            return line;
+        }
+        final String[] previous = lines.split("\n");
+        final StringBuilder result = new StringBuilder();
+        for (int i = Math.max(0, previous.length - maxLines + 1); i < previous.length; i++) {
+            result.append(previous[i]).append('\n');
+        }
+        return result.append(line).toString();
+    }
+}
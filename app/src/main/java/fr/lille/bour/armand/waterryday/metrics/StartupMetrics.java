@@ -0,0 +1,127 @@
+package fr.lille.bour.armand.waterryday.metrics;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The {@link StartupMetrics} class records the timing marks of the cold start of the application,
+ * from the start of the process to the first list of plants displayed.
+ * Each mark is only recorded once per process, so that recreating the activity, e.g. on rotation,
+ * does not count as a start. The start of a process that was not started to display the list,
+ * e.g. for the provider or a broadcast, is discarded, see {@link #discard()}.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class StartupMetrics {
+
+    /** The process was started. */
+    public static final int MARK_PROCESS_START = 0;
+    /** The first frame of the list activity was drawn. */
+    public static final int MARK_FIRST_FRAME = 1;
+    /** The first page of plants was displayed. */
+    public static final int MARK_LIST_POPULATED = 2;
+
+    private static final String[] MARK_NAMES = { "processStart", "firstFrame", "listPopulated" };
+    private static final String EXC_CAUSE_MARK = "Unknown startup mark: %d";
+
+    private static final StartupMetrics sInstance = new StartupMetrics();
+
+    /** The time of each mark in milliseconds, or <code>-1</code> if it was not reached yet. */
+    private final long[] mMarks = new long[MARK_NAMES.length];
+    /** Whether the start was already reported, see {@link #takeReport(long)}. */
+    private boolean mReported;
+    /** Whether the start is not a cold start of the list, see {@link #discard()}. */
+    private boolean mDiscarded;
+
+    /**
+     * Creates metrics without any mark.
+     */
+    public StartupMetrics() {
+        Arrays.fill(mMarks, -1);
+    }
+
+    /**
+     * Gets the metrics of the current process.
+     * @return The metrics of the current process.
+     */
+    public static StartupMetrics getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Records the time of a mark, unless it was already recorded.
+     * @param mark The mark, e.g. {@link #MARK_FIRST_FRAME}.
+     * @param time The time of the mark in milliseconds, on the same clock for all the marks.
+     * @return <code>true</code> if the mark was recorded, <code>false</code> if it was already.
+     * @throws IllegalArgumentException If the mark is unknown.
+     */
+    public synchronized boolean mark(final int mark, final long time) {
+        checkMark(mark);
+        if (mMarks[mark] != -1) {
+            return false;
+        }
+        mMarks[mark] = time;
+        return true;
+    }
+
+    /**
+     * Gets the time elapsed between the start of the process and a mark.
+     * @param mark The mark, e.g. {@link #MARK_FIRST_FRAME}.
+     * @return The elapsed time in milliseconds, or <code>-1</code> if either mark was not reached.
+     * @throws IllegalArgumentException If the mark is unknown.
+     */
+    public synchronized long getElapsed(final int mark) {
+        checkMark(mark);
+        if (mMarks[mark] == -1 || mMarks[MARK_PROCESS_START] == -1) {
+            return -1;
+        }
+        return mMarks[mark] - mMarks[MARK_PROCESS_START];
+    }
+
+    /**
+     * Checks whether all the marks were reached.
+     * @return <code>true</code> if all the marks were reached, <code>false</code> otherwise.
+     */
+    public synchronized boolean isComplete() {
+        for (final long time : mMarks) {
+            if (time == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks the start as not being a cold start of the list, e.g. when the process was started
+     * for another component, or for another activity: it will never be reported, even if the
+     * list is displayed later in the same process.
+     */
+    public synchronized void discard() {
+        mDiscarded = true;
+    }
+
+    /**
+     * Formats the start as a line of the metrics log, the first time all the marks are reached.
+     * @param wallTime The current time in milliseconds since the epoch, dating the line.
+     * @return The line, e.g. <code>2016-11-20 18:04:12 firstFrame=420ms listPopulated=610ms</code>,
+     * or <code>null</code> if the start is not complete, was already reported or was discarded.
+     */
+    public synchronized String takeReport(final long wallTime) {
+        if (mReported || mDiscarded || !isComplete()) {
+            return null;
+        }
+        mReported = true;
+        final StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%tF %<tT", wallTime));
+        for (int mark = MARK_PROCESS_START + 1; mark < mMarks.length; mark++) {
+            line.append(' ').append(MARK_NAMES[mark]).append('=').append(getElapsed(mark)).append("ms");
+        }
+        return line.toString();
+    }
+
+    private static void checkMark(final int mark) {
+        if (mark < 0 || mark >= MARK_NAMES.length) {
+            throw new IllegalArgumentException(String.format(EXC_CAUSE_MARK, mark));
+        }
+    }
+}
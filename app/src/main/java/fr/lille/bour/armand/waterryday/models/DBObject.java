@@ -19,4 +19,22 @@ public interface DBObject {
      * @param id The new id of the object.
      */
     void setId(final long id);
+
+    /**
+     * Gets the fields modified since the object was last loaded from or saved to the database.
+     * @return A bit mask of the modified fields, defined by the implementing class;
+     *         <code>0</code> if nothing was modified.
+     */
+    int getDirtyFields();
+
+    /**
+     * Marks all the fields as saved, once the object has been loaded from or saved to the database.
+     */
+    void clearDirtyFields();
+
+    /**
+     * Marks fields as modified again, once the transaction that saved them has been rolled back.
+     * @param dirtyFields A bit mask of the fields, as returned by {@link #getDirtyFields()}.
+     */
+    void restoreDirtyFields(final int dirtyFields);
 }
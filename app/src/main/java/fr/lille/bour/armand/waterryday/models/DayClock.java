@@ -0,0 +1,106 @@
+package fr.lille.bour.armand.waterryday.models;
+
+import org.joda.time.LocalDate;
+
+/**
+ * Source of the current day, as an epoch day (see {@link EpochDay}).
+ * Implementations are thread-safe and reading the day does not allocate, so that the current day
+ * can be read once and shared by all the threads evaluating watering states.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public abstract class DayClock {
+
+    /**
+     * Gets the current day.
+     * @return The current day, as an epoch day.
+     */
+    public abstract int today();
+
+    /**
+     * Creates a clock following the system time in the default time zone. The current day is
+     * cached and only computed again when the time goes past the next midnight, or back before the
+     * last one.
+     * @return A new clock.
+     */
+    public static DayClock system() {
+        return new SystemDayClock();
+    }
+
+    /**
+     * Creates a clock always returning the same day, for tests and debugging.
+     * @param day The day, as an epoch day.
+     * @return A new clock.
+     */
+    public static DayClock fixed(final int day) {
+        return new FixedDayClock(day);
+    }
+
+    /**
+     * Creates a clock always returning the same day, for tests and debugging.
+     * @param date The date.
+     * @return A new clock.
+     */
+    public static DayClock fixed(final LocalDate date) {
+        return new FixedDayClock(EpochDay.of(date));
+    }
+
+    /**
+     * Clock following the system time.
+     */
+    private static class SystemDayClock extends DayClock {
+
+        /** The current day, replaced as a whole so that it is always read consistently. */
+        private volatile Day mDay;
+
+        SystemDayClock() {
+            mDay = new Day(System.currentTimeMillis());
+        }
+
+        @Override
+        public int today() {
+            final long now = System.currentTimeMillis();
+            Day day = mDay;
+            if (now < day.startMillis || now >= day.endMillis) {
+                // Several threads may compute the new day at once, they all get the same value
+                day = new Day(now);
+                mDay = day;
+            }
+            return day.epochDay;
+        }
+    }
+
+    /**
+     * Day of the system clock, with its bounds in milliseconds.
+     */
+    private static class Day {
+        final int epochDay;
+        final long startMillis;
+        final long endMillis;
+
+        Day(final long millis) {
+            final LocalDate date = new LocalDate(millis);
+            epochDay = EpochDay.of(date);
+            startMillis = date.toDateTimeAtStartOfDay().getMillis();
+            endMillis = date.plusDays(1).toDateTimeAtStartOfDay().getMillis();
+        }
+    }
+
+    /**
+     * Clock returning the same day.
+     */
+    private static class FixedDayClock extends DayClock {
+
+        private final int mDay;
+
+        FixedDayClock(final int day) {
+            mDay = day;
+        }
+
+        @Override
+        public int today() {
+            return mDay;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package fr.lille.bour.armand.waterryday.models;
+
+import org.joda.time.LocalDate;
+
+/**
+ * Conversions between dates and epoch days, i.e. the number of days since 1970-01-01 in the
+ * ISO calendar. Epoch days are plain integers: they are cheap to store, compare and subtract.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public final class EpochDay {
+
+    /** Number of days between 0000-03-01 and 1970-01-01. */
+    private static final int DAYS_0000_TO_1970 = 719468;
+    /** Number of days in a 400-year era. */
+    private static final int DAYS_PER_ERA = 146097;
+
+    private EpochDay() {
+        // Utility class
+    }
+
+    /**
+     * Converts the specified date to an epoch day without allocating.
+     * @param year The year.
+     * @param month The month, ranging from 1 to 12.
+     * @param day The day of the month.
+     * @return The number of days since 1970-01-01.
+     */
+    public static int of(final int year, final int month, final int day) {
+        // Years start in March so that the leap day is the last day of the year
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Converts the specified date to an epoch day.
+     * @param date The date to convert.
+     * @return The number of days since 1970-01-01.
+     */
+    public static int of(final LocalDate date) {
+        return of(date.getYear(), date.getMonthOfYear(), date.getDayOfMonth());
+    }
+
+    /**
+     * Converts the specified epoch day to a date.
+     * @param epochDay The number of days since 1970-01-01.
+     * @return The corresponding date.
+     */
+    public static LocalDate toLocalDate(final int epochDay) {
+        final int z = epochDay + DAYS_0000_TO_1970;
+        final int era = (z >= 0 ? z : z - DAYS_PER_ERA + 1) / DAYS_PER_ERA;
+        final int dayOfEra = z - era * DAYS_PER_ERA;
+        final int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        final int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        final int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        final int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return new LocalDate(year, month, day);
+    }
+}
@@ -1,6 +1,5 @@
 package fr.lille.bour.armand.waterryday.models;
 
-import org.joda.time.Days;
 import org.joda.time.LocalDate;
 
 import java.util.ArrayList;
@@ -12,15 +11,43 @@ import java.util.List;
  * @author Armand (Tydax) BOUR
  */
 
-public class Plant implements DBObject {
+public class Plant implements DBObject, PlantView {
 
     protected static final String EXC_CAUSE_NEGATIVE_NULL_WATERINGFREQUENCY = "Cannot specify a negative or null number.";
 
-    /** The current date can be changed for debug purposes. */
-    protected static LocalDate CURRENT_DATE;
+    /** Flag of the {@link #name} field in {@link #getDirtyFields()}. */
+    public static final int FIELD_NAME = 1;
+    /** Flag of the {@link #specie} field in {@link #getDirtyFields()}. */
+    public static final int FIELD_SPECIE = 1 << 1;
+    /** Flag of the {@link #location} field in {@link #getDirtyFields()}. */
+    public static final int FIELD_LOCATION = 1 << 2;
+    /** Flag of the {@link #wateringFrequency} field in {@link #getDirtyFields()}. */
+    public static final int FIELD_WATERINGFREQUENCY = 1 << 3;
+    /** Flag of the {@link #lastWateredDay} field in {@link #getDirtyFields()}. */
+    public static final int FIELD_LASTWATEREDDATE = 1 << 4;
+    /** Flags of all the fields. */
+    public static final int FIELD_ALL = (1 << 5) - 1;
 
-    static {
-        CURRENT_DATE = new LocalDate();
+    /**
+     * The clock giving the current date, can be changed for tests or debug purposes.
+     * It is volatile so that a new clock is seen by all the threads at once.
+     */
+    protected static volatile DayClock CLOCK = DayClock.system();
+
+    /**
+     * Gets the clock giving the current date.
+     * @return The clock.
+     */
+    public static DayClock getClock() {
+        return CLOCK;
+    }
+
+    /**
+     * Sets the clock giving the current date.
+     * @param clock The new clock.
+     */
+    public static void setClock(final DayClock clock) {
+        CLOCK = clock;
     }
 
     /**
@@ -28,7 +55,7 @@ public class Plant implements DBObject {
      * @return The day of the date.
      */
     public static int getCurrentDay() {
-        return CURRENT_DATE.getDayOfMonth();
+        return getCurrentDate().getDayOfMonth();
     }
 
     /**
@@ -36,7 +63,7 @@ public class Plant implements DBObject {
      * @return The month of the date, ranging from 1 to 12.
      */
     public static int getCurrentMonth() {
-        return CURRENT_DATE.getMonthOfYear();
+        return getCurrentDate().getMonthOfYear();
     }
 
     /**
@@ -44,15 +71,40 @@ public class Plant implements DBObject {
      * @return The year of the date.
      */
     public static int getCurrentYear() {
-        return CURRENT_DATE.getYear();
+        return getCurrentDate().getYear();
+    }
+
+    /**
+     * Gets the currently set date.
+     * @return A new date object holding the current date.
+     */
+    public static LocalDate getCurrentDate() {
+        return EpochDay.toLocalDate(CLOCK.today());
+    }
+
+    /**
+     * Gets the currently set date as an epoch day. Callers evaluating many plants should read it
+     * once and pass it along, so that they all see the same day.
+     * @return The number of days since 1970-01-01 (see {@link EpochDay}).
+     */
+    public static int getCurrentEpochDay() {
+        return CLOCK.today();
     }
 
     /**
-     * Sets the current date.
+     * Sets the current date, replacing the clock with a fixed one.
      * @param date The new current date to use for comparison.
      */
     public static void setCurrentDate(final LocalDate date) {
-        CURRENT_DATE = new LocalDate(date);
+        CLOCK = DayClock.fixed(date);
+    }
+
+    /**
+     * Sets the current date as an epoch day, replacing the clock with a fixed one.
+     * @param day The new current date to use for comparison, as an epoch day.
+     */
+    public static void setCurrentEpochDay(final int day) {
+        CLOCK = DayClock.fixed(day);
     }
 
     /** The plant's id in the database. */
@@ -69,8 +121,11 @@ public class Plant implements DBObject {
      * The plant needs to be watered every <em>n</em> days.
      */
     protected int wateringFrequency;
-    /** The date when the plant was watered for the last time. */
-    protected LocalDate lastWateredDate;
+    /** The day when the plant was watered for the last time, as an epoch day (see {@link EpochDay}). */
+    protected int lastWateredDay;
+
+    /** The fields modified since the plant was last loaded or saved, see {@link #getDirtyFields()}. */
+    protected int dirtyFields;
 
     public Plant(final String name, final String specie, final String location,
                  final int wateringFrequency) {
@@ -91,18 +146,45 @@ public class Plant implements DBObject {
     public Plant(int id, final String name, final String specie, final String location,
                  final int wateringFrequency, final LocalDate lastWateredDate)
                  throws IllegalArgumentException {
+        this(id, name, specie, location, wateringFrequency, EpochDay.of(lastWateredDate));
+    }
+
+    /**
+     * Creates a new plant with the specified parameters, its last watering date given as an
+     * epoch day.
+     *
+     * @param id
+     * @param name
+     * @param specie
+     * @param location
+     * @param wateringFrequency
+     * @param lastWateredDay The day when the plant was watered for the last time, as an epoch day.
+     * @throws IllegalArgumentException When wateringFrequency is negative or equal to zero.
+     */
+    public Plant(long id, final String name, final String specie, final String location,
+                 final int wateringFrequency, final int lastWateredDay)
+                 throws IllegalArgumentException {
         this.id = id;
         this.name = name;
         this.specie = specie;
         this.location = location;
         setWateringFrequency(wateringFrequency);
-        this.lastWateredDate = new LocalDate(lastWateredDate);
+        this.lastWateredDay = lastWateredDay;
+        this.dirtyFields = FIELD_ALL;
+    }
+
+    /**
+     * Tells whether two values of a field are equal, either of them being possibly <code>null</code>.
+     */
+    private static boolean areEqual(final Object value1, final Object value2) {
+        return value1 == null ? value2 == null : value1.equals(value2);
     }
 
     /**
      * Gets the {@link #name} of the plant.
      * @return The name of the plant.
      */
+    @Override
     public String getName() {
         return name;
     }
@@ -112,13 +194,17 @@ public class Plant implements DBObject {
      * @param name The new name of the plant.
      */
     public void setName(final String name) {
-        this.name = name;
+        if (!areEqual(this.name, name)) {
+            this.name = name;
+            dirtyFields |= FIELD_NAME;
+        }
     }
 
     /**
      * Gets the {@link #specie} of the plant.
      * @return The specie of the plant.
      */
+    @Override
     public String getSpecie() {
         return specie;
     }
@@ -128,13 +214,17 @@ public class Plant implements DBObject {
      * @param specie The new specie of the plant.
      */
     public void setSpecie(final String specie) {
-        this.specie = specie;
+        if (!areEqual(this.specie, specie)) {
+            this.specie = specie;
+            dirtyFields |= FIELD_SPECIE;
+        }
     }
 
     /**
      * Gets the {@link #location} of the plant.
      * @return The location of the plant.
      */
+    @Override
     public String getLocation() {
         return location;
     }
@@ -144,13 +234,17 @@ public class Plant implements DBObject {
      * @param location The new location of the plant.
      */
     public void setLocation(final String location) {
-        this.location = location;
+        if (!areEqual(this.location, location)) {
+            this.location = location;
+            dirtyFields |= FIELD_LOCATION;
+        }
     }
 
     /**
      * Gets the watering frequency (see {@link #wateringFrequency}) of the plant.
      * @return The watering frequency in days.
      */
+    @Override
     public int getWateringFrequency() {
         return wateringFrequency;
     }
@@ -182,31 +276,65 @@ public class Plant implements DBObject {
         if (wateringFrequency < 1) {
             throw new IllegalArgumentException(EXC_CAUSE_NEGATIVE_NULL_WATERINGFREQUENCY);
         }
-        this.wateringFrequency = wateringFrequency;
+        if (this.wateringFrequency != wateringFrequency) {
+            this.wateringFrequency = wateringFrequency;
+            dirtyFields |= FIELD_WATERINGFREQUENCY;
+        }
     }
 
     /**
      * Gets the date when the plant has been watered for the last time.
-     * @return The date.
+     * @return A new date object holding the date.
      */
     public LocalDate getLastWateredDate() {
-        return lastWateredDate;
+        return EpochDay.toLocalDate(lastWateredDay);
     }
 
     /**
-     * Waters the plant and updates {@link #lastWateredDate} to the current date.
+     * Gets the {@link #lastWateredDay} of the plant.
+     * @return The day when the plant was watered for the last time, as an epoch day.
+     */
+    public int getLastWateredDay() {
+        return lastWateredDay;
+    }
+
+    /**
+     * Gets the day when the plant needs to be watered next, i.e. {@link #wateringFrequency} days
+     * after {@link #lastWateredDay}.
+     * @return The next watering day, as an epoch day (see {@link EpochDay}).
+     */
+    @Override
+    public int getNextWateringDay() {
+        return lastWateredDay + wateringFrequency;
+    }
+
+    /**
+     * Waters the plant and updates {@link #lastWateredDay} to the current date.
      */
     public void water() {
-        this.lastWateredDate = new LocalDate(CURRENT_DATE);
+        setLastWateredDay(CLOCK.today());
     }
 
     /**
      * Gets the current watering state of the plant (see {@link WateringState}).
      * @return The current watering state of the plant.
      */
+    @Override
     public WateringState getWateringState() {
-        final int dayGap = Days.daysBetween(this.lastWateredDate, CURRENT_DATE).getDays();
-        final int daysLeft = this.wateringFrequency - dayGap;
+        return getWateringState(this.lastWateredDay, this.wateringFrequency, CLOCK.today());
+    }
+
+    /**
+     * Gets the watering state of a plant on the specified day, from primitive values only.
+     * @param lastWateredDay The day when the plant was watered for the last time, as an epoch day.
+     * @param wateringFrequency The watering frequency of the plant, in days.
+     * @param today The day to compute the state for, as an epoch day.
+     * @return The watering state of the plant on that day.
+     */
+    public static WateringState getWateringState(final int lastWateredDay, final int wateringFrequency,
+                                                 final int today) {
+        final int dayGap = today - lastWateredDay;
+        final int daysLeft = wateringFrequency - dayGap;
 
         if (dayGap == 0 || daysLeft > 1) {
            return WateringState.HYDRATED;
@@ -239,8 +367,49 @@ public class Plant implements DBObject {
         return plants;
     }
 
+    /**
+     * Sets the date when the plant has been watered for the last time.
+     * @param lastWateredDate The new last watering date.
+     */
     public void setLastWateredDate(final LocalDate lastWateredDate) {
-        this.lastWateredDate = lastWateredDate;
+        setLastWateredDay(EpochDay.of(lastWateredDate));
+    }
+
+    /**
+     * Sets the {@link #lastWateredDay} of the plant.
+     * @param lastWateredDay The new last watering day, as an epoch day.
+     */
+    public void setLastWateredDay(final int lastWateredDay) {
+        if (this.lastWateredDay != lastWateredDay) {
+            this.lastWateredDay = lastWateredDay;
+            dirtyFields |= FIELD_LASTWATEREDDATE;
+        }
+    }
+
+    /**
+     * Gets the fields modified since the plant was last loaded from or saved to the database.
+     * @return A combination of the <code>FIELD_*</code> flags, <code>0</code> if nothing was modified.
+     */
+    @Override
+    public int getDirtyFields() {
+        return dirtyFields;
+    }
+
+    /**
+     * Marks all the fields of the plant as saved.
+     */
+    @Override
+    public void clearDirtyFields() {
+        dirtyFields = 0;
+    }
+
+    /**
+     * Marks the specified fields of the plant as modified again, keeping those modified since.
+     * @param dirtyFields A combination of the <code>FIELD_*</code> flags.
+     */
+    @Override
+    public void restoreDirtyFields(final int dirtyFields) {
+        this.dirtyFields |= dirtyFields;
     }
 
     /**
@@ -0,0 +1,302 @@
+package fr.lille.bour.armand.waterryday.models;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import fr.lille.bour.armand.waterryday.models.Plant.WateringState;
+
+/**
+ * In-memory secondary indexes of plant ids by location, specie and watering state, updated
+ * plant by plant so that filtering and counting take O(result) instead of a pass over all the
+ * plants.
+ * The watering states change with the days: the state index is built for one day and built again
+ * on the first query for another day.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class PlantIndex {
+
+    protected static final String EXC_CAUSE_UNKNOWN_PLANT = "No plant with this id is indexed.";
+
+    private final Map<String, Set<Long>> mByLocation = new HashMap<>();
+    private final Map<String, Set<Long>> mBySpecie = new HashMap<>();
+    private final Map<WateringState, Set<Long>> mByState = new EnumMap<>(WateringState.class);
+    /** The day the state index is built for. */
+    private int mStateDay;
+    /** The indexed values of each plant, by id. */
+    private final Map<Long, Entry> mEntries = new HashMap<>();
+
+    /**
+     * Creates an empty index.
+     */
+    public PlantIndex() {
+        for (final WateringState state : WateringState.values()) {
+            mByState.put(state, new LinkedHashSet<Long>());
+        }
+        mStateDay = Plant.getCurrentEpochDay();
+    }
+
+    /**
+     * Gets the number of indexed plants.
+     * @return The number of plants.
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Tells whether the plant with the specified id is indexed.
+     * @param id The id of the plant.
+     * @return <code>true</code> if the plant is indexed.
+     */
+    public boolean contains(final long id) {
+        return mEntries.containsKey(id);
+    }
+
+    /**
+     * Gets the next watering day of the plant with the specified id.
+     * @param id The id of the plant.
+     * @return The next watering day, as an epoch day.
+     * @throws IllegalArgumentException When the plant is not indexed.
+     */
+    public int getNextWateringDay(final long id) throws IllegalArgumentException {
+        final Entry entry = mEntries.get(id);
+        if (entry == null) {
+            throw new IllegalArgumentException(EXC_CAUSE_UNKNOWN_PLANT);
+        }
+        return entry.lastWateredDay + entry.wateringFrequency;
+    }
+
+    /**
+     * Indexes the specified plant, or indexes it again if it already is.
+     * @param plant The plant to index.
+     */
+    public void put(final Plant plant) {
+        put(plant.getId(), plant.getLocation(), plant.getSpecie(), plant.getWateringFrequency(),
+                plant.getLastWateredDay());
+    }
+
+    /**
+     * Indexes a plant, or indexes it again if it already is.
+     * @param id The id of the plant.
+     * @param location The location of the plant.
+     * @param specie The specie of the plant.
+     * @param wateringFrequency The watering frequency of the plant, in days.
+     * @param lastWateredDay The day when the plant was watered for the last time, as an epoch day.
+     */
+    public void put(final long id, final String location, final String specie, final int wateringFrequency,
+                    final int lastWateredDay) {
+        Entry entry = mEntries.get(id);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(id, entry);
+        } else {
+            unindex(id, entry);
+        }
+        entry.location = location;
+        entry.specie = specie;
+        entry.wateringFrequency = wateringFrequency;
+        entry.lastWateredDay = lastWateredDay;
+        index(id, entry);
+    }
+
+    /**
+     * Marks the plant with the specified id as watered on the specified day.
+     * @param id The id of the plant.
+     * @param day The watering day, as an epoch day.
+     * @return <code>true</code> if the plant is indexed.
+     */
+    public boolean water(final long id, final int day) {
+        final Entry entry = mEntries.get(id);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.lastWateredDay != day) {
+            // Only the state may change
+            mByState.get(entry.state).remove(id);
+            entry.lastWateredDay = day;
+            indexState(id, entry);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the plant with the specified id from the index.
+     * @param id The id of the plant.
+     * @return <code>true</code> if the plant was indexed.
+     */
+    public boolean remove(final long id) {
+        final Entry entry = mEntries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        unindex(id, entry);
+        return true;
+    }
+
+    /**
+     * Removes all the plants from the index.
+     */
+    public void clear() {
+        mEntries.clear();
+        mByLocation.clear();
+        mBySpecie.clear();
+        for (final Set<Long> ids : mByState.values()) {
+            ids.clear();
+        }
+    }
+
+    /**
+     * Gets the indexed locations.
+     * @return A read-only view of the locations having at least one plant.
+     */
+    public Set<String> getLocations() {
+        return Collections.unmodifiableSet(mByLocation.keySet());
+    }
+
+    /**
+     * Gets the indexed species.
+     * @return A read-only view of the species having at least one plant.
+     */
+    public Set<String> getSpecies() {
+        return Collections.unmodifiableSet(mBySpecie.keySet());
+    }
+
+    /**
+     * Gets the ids of the plants at the specified location.
+     * @param location The location.
+     * @return A read-only view of the ids, empty if there is none.
+     */
+    public Set<Long> getIdsByLocation(final String location) {
+        return readOnly(mByLocation.get(location));
+    }
+
+    /**
+     * Gets the ids of the plants of the specified specie.
+     * @param specie The specie.
+     * @return A read-only view of the ids, empty if there is none.
+     */
+    public Set<Long> getIdsBySpecie(final String specie) {
+        return readOnly(mBySpecie.get(specie));
+    }
+
+    /**
+     * Gets the ids of the plants in the specified watering state today, as given by
+     * {@link Plant#getClock()}.
+     * @param state The watering state.
+     * @return A read-only view of the ids, empty if there is none.
+     */
+    public Set<Long> getIdsByState(final WateringState state) {
+        return getIdsByState(state, Plant.getCurrentEpochDay());
+    }
+
+    /**
+     * Gets the ids of the plants in the specified watering state on the specified day.
+     * The state index is built again if it was built for another day.
+     * @param state The watering state.
+     * @param today The day, as an epoch day.
+     * @return A read-only view of the ids, empty if there is none.
+     */
+    public Set<Long> getIdsByState(final WateringState state, final int today) {
+        setStateDay(today);
+        return readOnly(mByState.get(state));
+    }
+
+    /**
+     * Counts the plants at the specified location.
+     * @param location The location.
+     * @return The number of plants.
+     */
+    public int countByLocation(final String location) {
+        final Set<Long> ids = mByLocation.get(location);
+        return ids == null ? 0 : ids.size();
+    }
+
+    /**
+     * Counts the plants of the specified specie.
+     * @param specie The specie.
+     * @return The number of plants.
+     */
+    public int countBySpecie(final String specie) {
+        final Set<Long> ids = mBySpecie.get(specie);
+        return ids == null ? 0 : ids.size();
+    }
+
+    /**
+     * Counts the plants in the specified watering state on the specified day.
+     * @param state The watering state.
+     * @param today The day, as an epoch day.
+     * @return The number of plants.
+     */
+    public int countByState(final WateringState state, final int today) {
+        return getIdsByState(state, today).size();
+    }
+
+    private void setStateDay(final int today) {
+        if (today == mStateDay) {
+            return;
+        }
+        mStateDay = today;
+        for (final Set<Long> ids : mByState.values()) {
+            ids.clear();
+        }
+        for (final Map.Entry<Long, Entry> entry : mEntries.entrySet()) {
+            indexState(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void index(final long id, final Entry entry) {
+        add(mByLocation, entry.location, id);
+        add(mBySpecie, entry.specie, id);
+        indexState(id, entry);
+    }
+
+    private void indexState(final long id, final Entry entry) {
+        entry.state = Plant.getWateringState(entry.lastWateredDay, entry.wateringFrequency, mStateDay);
+        mByState.get(entry.state).add(id);
+    }
+
+    private void unindex(final long id, final Entry entry) {
+        remove(mByLocation, entry.location, id);
+        remove(mBySpecie, entry.specie, id);
+        mByState.get(entry.state).remove(id);
+    }
+
+    private static void add(final Map<String, Set<Long>> index, final String key, final long id) {
+        Set<Long> ids = index.get(key);
+        if (ids == null) {
+            ids = new LinkedHashSet<>();
+            index.put(key, ids);
+        }
+        ids.add(id);
+    }
+
+    private static void remove(final Map<String, Set<Long>> index, final String key, final long id) {
+        final Set<Long> ids = index.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            // Keeps the keys to the values still in use
+            index.remove(key);
+        }
+    }
+
+    private static Set<Long> readOnly(final Set<Long> ids) {
+        return ids == null ? Collections.<Long>emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * Indexed values of a plant, kept to find its ids in the indexes when it changes.
+     */
+    private static class Entry {
+        String location;
+        String specie;
+        int wateringFrequency;
+        int lastWateredDay;
+        /** The state on the day the state index is built for. */
+        WateringState state;
+    }
+}
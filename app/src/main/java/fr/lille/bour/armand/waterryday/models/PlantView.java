@@ -0,0 +1,53 @@
+package fr.lille.bour.armand.waterryday.models;
+
+/**
+ * Read-only view of the values of a plant, implemented by {@link Plant} and by lighter
+ * representations that do not hold one object per plant.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public interface PlantView {
+
+    /**
+     * Gets the id of the plant in the database.
+     * @return The id.
+     */
+    long getId();
+
+    /**
+     * Gets the name of the plant.
+     * @return The name.
+     */
+    String getName();
+
+    /**
+     * Gets the specie of the plant.
+     * @return The specie.
+     */
+    String getSpecie();
+
+    /**
+     * Gets the location of the plant.
+     * @return The location.
+     */
+    String getLocation();
+
+    /**
+     * Gets the watering frequency of the plant.
+     * @return The watering frequency in days.
+     */
+    int getWateringFrequency();
+
+    /**
+     * Gets the day when the plant needs to be watered next.
+     * @return The next watering day, as an epoch day (see {@link EpochDay}).
+     */
+    int getNextWateringDay();
+
+    /**
+     * Gets the current watering state of the plant.
+     * @return The current watering state.
+     */
+    Plant.WateringState getWateringState();
+}
@@ -0,0 +1,75 @@
+package fr.lille.bour.armand.waterryday.models;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalisation of the searched texts and of the search queries, so that "Géranium", "GERANIUM"
+ * and "geranium" all match each other. Both sides are folded the same way before reaching the
+ * search index.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public final class SearchText {
+
+    /** The accents and other marks left apart by the canonical decomposition. */
+    private static final Pattern MARKS = Pattern.compile("\\p{Mn}+");
+    /** What separates two words of a query. */
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private SearchText() {
+        // Utility class
+    }
+
+    /**
+     * Folds a text to the form stored in the search index: lower case, without accents.
+     * @param text The text to fold, may be <code>null</code>.
+     * @return The folded text, or <code>null</code> if the text is <code>null</code>.
+     */
+    public static String fold(final String text) {
+        if (text == null) {
+            return null;
+        }
+        final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Splits a query into folded words, ignoring punctuation and spaces.
+     * @param query The query as typed by the user, may be <code>null</code>.
+     * @return The words, in order; empty if there is none.
+     */
+    public static List<String> tokenize(final String query) {
+        final List<String> tokens = new ArrayList<>();
+        if (query == null) {
+            return tokens;
+        }
+        for (final String token : SEPARATORS.split(fold(query))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Builds the full-text query matching the texts containing a word starting with each of the
+     * specified words. The words only hold letters and digits, so they cannot form operators.
+     * @param tokens The folded words, see {@link #tokenize(String)}.
+     * @return The full-text query, e.g. <code>"ger* ros*"</code>.
+     */
+    public static String toPrefixQuery(final List<String> tokens) {
+        final StringBuilder query = new StringBuilder();
+        for (final String token : tokens) {
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append(token).append('*');
+        }
+        return query.toString();
+    }
+}
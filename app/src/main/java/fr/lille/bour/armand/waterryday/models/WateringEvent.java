@@ -0,0 +1,105 @@
+package fr.lille.bour.armand.waterryday.models;
+
+/**
+ * The {@link WateringEvent} class represents one watering of a plant, kept in the watering history.
+ * Events are never modified once recorded: only their id is set, when they are saved.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class WateringEvent implements DBObject {
+
+    /** The event's id in the database. */
+    protected long id;
+    /** The id of the watered plant. */
+    protected final long plantId;
+    /** The watering day, as an epoch day (see {@link EpochDay}). */
+    protected final int day;
+    /** The location of the plant when it was watered. */
+    protected final String location;
+
+    /**
+     * Creates a new event with the specified parameters.
+     *
+     * @param id The id of the event, or <code>-1</code> if it is not saved yet.
+     * @param plantId The id of the watered plant.
+     * @param day The watering day, as an epoch day.
+     * @param location The location of the plant when it was watered.
+     */
+    public WateringEvent(final long id, final long plantId, final int day, final String location) {
+        this.id = id;
+        this.plantId = plantId;
+        this.day = day;
+        this.location = location;
+    }
+
+    /**
+     * Creates the event of the last watering of the specified plant.
+     * @param plant The watered plant.
+     * @return A new, unsaved event.
+     */
+    public static WateringEvent of(final Plant plant) {
+        return new WateringEvent(-1, plant.getId(), plant.getLastWateredDay(), plant.getLocation());
+    }
+
+    /**
+     * Gets the {@link #id} of the event in the database.
+     * @return The id of the event in the database.
+     */
+    @Override
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Sets the {@link #id} of the event in the database.
+     * @param id The id of the event in the database.
+     */
+    @Override
+    public void setId(final long id) {
+        this.id = id;
+    }
+
+    /**
+     * Gets the {@link #plantId} of the event.
+     * @return The id of the watered plant.
+     */
+    public long getPlantId() {
+        return plantId;
+    }
+
+    /**
+     * Gets the {@link #day} of the event.
+     * @return The watering day, as an epoch day.
+     */
+    public int getDay() {
+        return day;
+    }
+
+    /**
+     * Gets the {@link #location} of the event.
+     * @return The location of the plant when it was watered.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * Events are never modified, so there is nothing to save after their insertion.
+     * @return <code>0</code>.
+     */
+    @Override
+    public int getDirtyFields() {
+        return 0;
+    }
+
+    @Override
+    public void clearDirtyFields() {
+        // Nothing to clear
+    }
+
+    @Override
+    public void restoreDirtyFields(final int dirtyFields) {
+        // Nothing to restore
+    }
+}
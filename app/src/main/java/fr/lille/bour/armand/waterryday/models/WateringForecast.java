@@ -0,0 +1,308 @@
+package fr.lille.bour.armand.waterryday.models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Forecast of the number of plants to water on each day of a period, by location.
+ * Each plant is assumed to be watered on its due day, then every watering frequency
+ * days; overdue plants are assumed to be watered on the first day of the period.
+ * <p>
+ * Building the forecast takes O(plants + locations &times; frequencies &times; days): the first
+ * watering of each plant is counted, then the later ones are derived per location and frequency
+ * with <code>due[d] = first[d] + due[d - frequency]</code>. Adding, editing, watering or removing
+ * a single plant then updates the cached histogram in O(days / frequency).
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class WateringForecast {
+
+    protected static final String EXC_CAUSE_NEGATIVE_NULL_DAYS = "The period must last at least one day.";
+
+    private final int mDays;
+    private int mStartDay;
+
+    /** The number of plants due on each day of the period, by location. */
+    private final Map<String, int[]> mHistogram = new LinkedHashMap<>();
+    /** The forecast plants, by id. */
+    private final Map<Long, Entry> mEntries = new HashMap<>();
+
+    /**
+     * Creates an empty forecast.
+     * @param startDay The first day of the period, as an epoch day.
+     * @param days The number of days of the period.
+     */
+    public WateringForecast(final int startDay, final int days) {
+        if (days <= 0) {
+            throw new IllegalArgumentException(EXC_CAUSE_NEGATIVE_NULL_DAYS);
+        }
+        mStartDay = startDay;
+        mDays = days;
+    }
+
+    /**
+     * Gets the first day of the period.
+     * @return The first day, as an epoch day.
+     */
+    public int getStartDay() {
+        return mStartDay;
+    }
+
+    /**
+     * Gets the number of days of the period.
+     * @return The number of days.
+     */
+    public int getDays() {
+        return mDays;
+    }
+
+    /**
+     * Gets the number of plants in the forecast.
+     * @return The number of plants.
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Gets the locations having at least one plant in the forecast, as of the call.
+     * @return A new set of the locations, in the order they were first seen.
+     */
+    public Set<String> getLocations() {
+        final Set<String> current = new HashSet<>();
+        for (final Entry entry : mEntries.values()) {
+            current.add(entry.location);
+        }
+        final Set<String> locations = new LinkedHashSet<>();
+        for (final String location : mHistogram.keySet()) {
+            if (current.contains(location)) {
+                locations.add(location);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Gets the number of plants to water at a location on a day.
+     * @param location The location.
+     * @param day The day, as an epoch day.
+     * @return The number of plants due, <code>0</code> if the day is out of the period.
+     */
+    public int getDueCount(final String location, final int day) {
+        final int[] counts = mHistogram.get(location);
+        final int offset = day - mStartDay;
+        return counts == null || offset < 0 || offset >= mDays ? 0 : counts[offset];
+    }
+
+    /**
+     * Gets the number of plants to water at a location on each day of the period.
+     * @param location The location.
+     * @return A new array holding the number of plants due on each day, from the first one.
+     */
+    public int[] getDueCounts(final String location) {
+        final int[] counts = mHistogram.get(location);
+        return counts == null ? new int[mDays] : Arrays.copyOf(counts, mDays);
+    }
+
+    /**
+     * Gets the number of plants to water on each day of the period, all locations included.
+     * @return A new array holding the number of plants due on each day, from the first one.
+     */
+    public int[] getTotalDueCounts() {
+        final int[] totals = new int[mDays];
+        for (final int[] counts : mHistogram.values()) {
+            for (int i = 0; i < mDays; i++) {
+                totals[i] += counts[i];
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Adds the specified plants to the forecast, or updates those already in it, then builds the
+     * whole histogram at once. Preferred over {@link #put(PlantView)} for many plants.
+     * @param plants The plants to add or update.
+     */
+    public void putAll(final Iterator<? extends PlantView> plants) {
+        while (plants.hasNext()) {
+            final PlantView plant = plants.next();
+            if (plant.getWateringFrequency() <= 0) {
+                throw new IllegalArgumentException(Plant.EXC_CAUSE_NEGATIVE_NULL_WATERINGFREQUENCY);
+            }
+            Entry entry = mEntries.get(plant.getId());
+            if (entry == null) {
+                entry = new Entry();
+                mEntries.put(plant.getId(), entry);
+            }
+            entry.location = plant.getLocation();
+            entry.wateringFrequency = plant.getWateringFrequency();
+            entry.nextWateringDay = plant.getNextWateringDay();
+        }
+        rebuild();
+    }
+
+    /**
+     * Adds the specified plant to the forecast, or updates it if it already is.
+     * Only the waterings of this plant are counted again.
+     * @param plant The plant to add or update.
+     */
+    public void put(final PlantView plant) {
+        put(plant.getId(), plant.getLocation(), plant.getWateringFrequency(), plant.getNextWateringDay());
+    }
+
+    /**
+     * Adds a plant to the forecast, or updates it if it already is.
+     * Only the waterings of this plant are counted again.
+     * @param id The id of the plant.
+     * @param location The location of the plant.
+     * @param wateringFrequency The watering frequency of the plant, in days.
+     * @param nextWateringDay The next watering day of the plant, as an epoch day.
+     */
+    public void put(final long id, final String location, final int wateringFrequency, final int nextWateringDay) {
+        if (wateringFrequency <= 0) {
+            throw new IllegalArgumentException(Plant.EXC_CAUSE_NEGATIVE_NULL_WATERINGFREQUENCY);
+        }
+        Entry entry = mEntries.get(id);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(id, entry);
+        } else {
+            count(entry, -1);
+        }
+        entry.location = location;
+        entry.wateringFrequency = wateringFrequency;
+        entry.nextWateringDay = nextWateringDay;
+        count(entry, 1);
+    }
+
+    /**
+     * Marks the plant with the specified id as watered on the specified day.
+     * @param id The id of the plant.
+     * @param day The watering day, as an epoch day.
+     * @return <code>true</code> if the plant is in the forecast.
+     */
+    public boolean water(final long id, final int day) {
+        final Entry entry = mEntries.get(id);
+        if (entry == null) {
+            return false;
+        }
+        count(entry, -1);
+        entry.nextWateringDay = day + entry.wateringFrequency;
+        count(entry, 1);
+        return true;
+    }
+
+    /**
+     * Removes the plant with the specified id from the forecast.
+     * @param id The id of the plant.
+     * @return <code>true</code> if the plant was in the forecast.
+     */
+    public boolean remove(final long id) {
+        final Entry entry = mEntries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        count(entry, -1);
+        return true;
+    }
+
+    /**
+     * Moves the period to start on the specified day, typically after midnight, and builds the
+     * forecast again from the plants already known.
+     * @param startDay The new first day of the period, as an epoch day.
+     */
+    public void setStartDay(final int startDay) {
+        if (startDay != mStartDay) {
+            mStartDay = startDay;
+            rebuild();
+        }
+    }
+
+    /**
+     * Builds the whole histogram again: counts the first watering of each plant in the period,
+     * then derives the following ones per location and frequency.
+     */
+    protected void rebuild() {
+        // First watering days, by location then by frequency
+        final Map<String, Map<Integer, int[]>> firsts = new HashMap<>();
+        for (final Entry entry : mEntries.values()) {
+            final int offset = getFirstOffset(entry);
+            if (offset >= mDays) {
+                continue;
+            }
+            Map<Integer, int[]> byFrequency = firsts.get(entry.location);
+            if (byFrequency == null) {
+                byFrequency = new HashMap<>();
+                firsts.put(entry.location, byFrequency);
+            }
+            int[] starts = byFrequency.get(entry.wateringFrequency);
+            if (starts == null) {
+                starts = new int[mDays];
+                byFrequency.put(entry.wateringFrequency, starts);
+            }
+            starts[offset]++;
+        }
+
+        for (final int[] counts : mHistogram.values()) {
+            Arrays.fill(counts, 0);
+        }
+        for (final Map.Entry<String, Map<Integer, int[]>> location : firsts.entrySet()) {
+            final int[] counts = getCounts(location.getKey());
+            for (final Map.Entry<Integer, int[]> frequency : location.getValue().entrySet()) {
+                final int step = frequency.getKey();
+                final int[] due = frequency.getValue();
+                for (int d = 0; d < mDays; d++) {
+                    if (d >= step) {
+                        due[d] += due[d - step];
+                    }
+                    counts[d] += due[d];
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds or subtracts the waterings of a plant to or from the histogram.
+     * @param entry The plant.
+     * @param delta <code>1</code> to add the waterings, <code>-1</code> to subtract them.
+     */
+    private void count(final Entry entry, final int delta) {
+        final int[] counts = getCounts(entry.location);
+        for (int d = getFirstOffset(entry); d < mDays; d += entry.wateringFrequency) {
+            counts[d] += delta;
+        }
+    }
+
+    /**
+     * Gets the offset in the period of the first watering of a plant, overdue plants being
+     * watered on the first day.
+     */
+    private int getFirstOffset(final Entry entry) {
+        return Math.max(0, entry.nextWateringDay - mStartDay);
+    }
+
+    private int[] getCounts(final String location) {
+        int[] counts = mHistogram.get(location);
+        if (counts == null) {
+            counts = new int[mDays];
+            mHistogram.put(location, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Forecast plant.
+     */
+    private static class Entry {
+        String location;
+        int wateringFrequency;
+        int nextWateringDay;
+    }
+}
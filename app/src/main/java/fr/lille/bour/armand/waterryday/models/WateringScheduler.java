@@ -0,0 +1,368 @@
+package fr.lille.bour.armand.waterryday.models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schedule of the plants ordered by next watering day, kept in an indexed binary heap.
+ * Adding, watering, changing the frequency of and removing a plant take O(log n); the next due
+ * day is read in O(1), and the plants due by a day or the k most urgent ones are found without
+ * scanning the whole schedule.
+ * Plants due on the same day are ordered by id.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class WateringScheduler {
+
+    /** Returned by {@link #getNextDueDay()} when the schedule is empty. */
+    public static final int NONE = Integer.MAX_VALUE;
+
+    protected static final String EXC_CAUSE_UNKNOWN_PLANT = "No plant with this id is scheduled.";
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The entries of the schedule, as a binary min-heap. */
+    private Entry[] mHeap = new Entry[INITIAL_CAPACITY];
+    private int mSize;
+    /** The entries by plant id, giving their position in the heap. */
+    private final Map<Long, Entry> mEntries = new HashMap<>();
+
+    /**
+     * Gets the number of scheduled plants.
+     * @return The number of plants.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Tells whether the plant with the specified id is scheduled.
+     * @param id The id of the plant.
+     * @return <code>true</code> if the plant is scheduled.
+     */
+    public boolean contains(final long id) {
+        return mEntries.containsKey(id);
+    }
+
+    /**
+     * Schedules the specified plant, or reschedules it if it already is.
+     * @param plant The plant to schedule.
+     */
+    public void add(final PlantView plant) {
+        add(plant.getId(), plant.getWateringFrequency(), plant.getNextWateringDay());
+    }
+
+    /**
+     * Schedules a plant, or reschedules it if it already is.
+     * @param id The id of the plant.
+     * @param wateringFrequency The watering frequency of the plant, in days.
+     * @param nextWateringDay The next watering day of the plant, as an epoch day.
+     */
+    public void add(final long id, final int wateringFrequency, final int nextWateringDay) {
+        checkWateringFrequency(wateringFrequency);
+        Entry entry = mEntries.get(id);
+        if (entry == null) {
+            entry = new Entry(id);
+            mEntries.put(id, entry);
+            if (mSize == mHeap.length) {
+                mHeap = Arrays.copyOf(mHeap, mSize * 2);
+            }
+            entry.index = mSize;
+            mHeap[mSize++] = entry;
+        }
+        entry.wateringFrequency = wateringFrequency;
+        reschedule(entry, nextWateringDay);
+    }
+
+    /**
+     * Marks the plant with the specified id as watered on the specified day.
+     * @param id The id of the plant.
+     * @param day The watering day, as an epoch day.
+     */
+    public void water(final long id, final int day) {
+        final Entry entry = getEntry(id);
+        reschedule(entry, day + entry.wateringFrequency);
+    }
+
+    /**
+     * Changes the watering frequency of the plant with the specified id, keeping its last
+     * watering day.
+     * @param id The id of the plant.
+     * @param wateringFrequency The new watering frequency, in days.
+     */
+    public void setWateringFrequency(final long id, final int wateringFrequency) {
+        checkWateringFrequency(wateringFrequency);
+        final Entry entry = getEntry(id);
+        final int lastWateredDay = entry.nextWateringDay - entry.wateringFrequency;
+        entry.wateringFrequency = wateringFrequency;
+        reschedule(entry, lastWateredDay + wateringFrequency);
+    }
+
+    /**
+     * Removes the plant with the specified id from the schedule.
+     * @param id The id of the plant.
+     * @return <code>true</code> if the plant was scheduled.
+     */
+    public boolean remove(final long id) {
+        final Entry entry = mEntries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        final Entry last = mHeap[--mSize];
+        mHeap[mSize] = null;
+        if (last != entry) {
+            place(last, entry.index);
+            if (!siftUp(last)) {
+                siftDown(last);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all the plants from the schedule.
+     */
+    public void clear() {
+        Arrays.fill(mHeap, 0, mSize, null);
+        mSize = 0;
+        mEntries.clear();
+    }
+
+    /**
+     * Gets the next watering day of the plant with the specified id.
+     * @param id The id of the plant.
+     * @return The next watering day, as an epoch day.
+     */
+    public int getNextWateringDay(final long id) {
+        return getEntry(id).nextWateringDay;
+    }
+
+    /**
+     * Gets the earliest next watering day of all the scheduled plants.
+     * @return The earliest next watering day, as an epoch day, or {@link #NONE} if no plant is
+     *         scheduled.
+     */
+    public int getNextDueDay() {
+        return mSize == 0 ? NONE : mHeap[0].nextWateringDay;
+    }
+
+    /**
+     * Gets the id of the most urgent plant.
+     * @return The id of the plant with the earliest next watering day, or <code>-1</code> if no
+     *         plant is scheduled.
+     */
+    public long peek() {
+        return mSize == 0 ? -1 : mHeap[0].id;
+    }
+
+    /**
+     * Adds the ids of all the plants due on or before the specified day to a list, in no
+     * particular order. Only the due part of the heap is visited.
+     * @param day The day, as an epoch day.
+     * @param ids The list to add the ids to.
+     * @return The number of ids added.
+     */
+    public int getDueBy(final int day, final List<Long> ids) {
+        if (mSize == 0 || mHeap[0].nextWateringDay > day) {
+            return 0;
+        }
+        int[] pending = new int[32];
+        int top = 0;
+        int count = 0;
+        pending[top++] = 0;
+        while (top > 0) {
+            final int index = pending[--top];
+            ids.add(mHeap[index].id);
+            count++;
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < mSize; child++) {
+                if (mHeap[child].nextWateringDay <= day) {
+                    if (top == pending.length) {
+                        pending = Arrays.copyOf(pending, top * 2);
+                    }
+                    pending[top++] = child;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds the ids of all the plants due today, as given by {@link Plant#getClock()}, to a list.
+     * @param ids The list to add the ids to.
+     * @return The number of ids added.
+     * @see #getDueBy(int, List)
+     */
+    public int getDueToday(final List<Long> ids) {
+        return getDueBy(Plant.getCurrentEpochDay(), ids);
+    }
+
+    /**
+     * Counts the plants due today, as given by {@link Plant#getClock()}.
+     * @return The number of due plants.
+     */
+    public int countDueToday() {
+        return countDueBy(Plant.getCurrentEpochDay());
+    }
+
+    /**
+     * Counts the plants due on or before the specified day.
+     * @param day The day, as an epoch day.
+     * @return The number of due plants.
+     */
+    public int countDueBy(final int day) {
+        return countDueBy(0, day);
+    }
+
+    private int countDueBy(final int index, final int day) {
+        if (index >= mSize || mHeap[index].nextWateringDay > day) {
+            return 0;
+        }
+        return 1 + countDueBy(2 * index + 1, day) + countDueBy(2 * index + 2, day);
+    }
+
+    /**
+     * Gets the ids of the most urgent plants, from the most urgent one, in O(k log k).
+     * @param k The maximum number of plants.
+     * @return The ids of at most <code>k</code> plants.
+     */
+    public long[] getMostUrgent(final int k) {
+        final int count = Math.min(k, mSize);
+        final long[] ids = new long[count];
+        if (count == 0) {
+            return ids;
+        }
+        // Frontier of the heap, itself kept as a heap of positions in the schedule
+        final int[] frontier = new int[count + 1];
+        int frontierSize = 0;
+        frontier[frontierSize++] = 0;
+        for (int i = 0; i < count; i++) {
+            final int index = frontier[0];
+            ids[i] = mHeap[index].id;
+            frontier[0] = frontier[--frontierSize];
+            siftDownFrontier(frontier, frontierSize, 0);
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < mSize; child++) {
+                frontier[frontierSize] = child;
+                siftUpFrontier(frontier, frontierSize++);
+            }
+        }
+        return ids;
+    }
+
+    private void siftUpFrontier(final int[] frontier, int position) {
+        final int index = frontier[position];
+        while (position > 0) {
+            final int parent = (position - 1) / 2;
+            if (!isBefore(mHeap[index], mHeap[frontier[parent]])) {
+                break;
+            }
+            frontier[position] = frontier[parent];
+            position = parent;
+        }
+        frontier[position] = index;
+    }
+
+    private void siftDownFrontier(final int[] frontier, final int size, int position) {
+        if (size == 0) {
+            return;
+        }
+        final int index = frontier[position];
+        int child;
+        while ((child = 2 * position + 1) < size) {
+            if (child + 1 < size && isBefore(mHeap[frontier[child + 1]], mHeap[frontier[child]])) {
+                child++;
+            }
+            if (!isBefore(mHeap[frontier[child]], mHeap[index])) {
+                break;
+            }
+            frontier[position] = frontier[child];
+            position = child;
+        }
+        frontier[position] = index;
+    }
+
+    private Entry getEntry(final long id) {
+        final Entry entry = mEntries.get(id);
+        if (entry == null) {
+            throw new IllegalArgumentException(EXC_CAUSE_UNKNOWN_PLANT);
+        }
+        return entry;
+    }
+
+    private static void checkWateringFrequency(final int wateringFrequency) {
+        if (wateringFrequency <= 0) {
+            throw new IllegalArgumentException(Plant.EXC_CAUSE_NEGATIVE_NULL_WATERINGFREQUENCY);
+        }
+    }
+
+    private void reschedule(final Entry entry, final int nextWateringDay) {
+        final int previous = entry.nextWateringDay;
+        entry.nextWateringDay = nextWateringDay;
+        if (nextWateringDay < previous || entry.index == mSize - 1) {
+            siftUp(entry);
+        } else {
+            siftDown(entry);
+        }
+    }
+
+    private void place(final Entry entry, final int index) {
+        entry.index = index;
+        mHeap[index] = entry;
+    }
+
+    /**
+     * Moves the entry up the heap while it comes before its parent.
+     * @return <code>true</code> if the entry moved.
+     */
+    private boolean siftUp(final Entry entry) {
+        final int start = entry.index;
+        int index = start;
+        while (index > 0) {
+            final int parent = (index - 1) / 2;
+            if (!isBefore(entry, mHeap[parent])) {
+                break;
+            }
+            place(mHeap[parent], index);
+            index = parent;
+        }
+        place(entry, index);
+        return index != start;
+    }
+
+    private void siftDown(final Entry entry) {
+        int index = entry.index;
+        int child;
+        while ((child = 2 * index + 1) < mSize) {
+            if (child + 1 < mSize && isBefore(mHeap[child + 1], mHeap[child])) {
+                child++;
+            }
+            if (!isBefore(mHeap[child], entry)) {
+                break;
+            }
+            place(mHeap[child], index);
+            index = child;
+        }
+        place(entry, index);
+    }
+
+    private static boolean isBefore(final Entry a, final Entry b) {
+        return a.nextWateringDay < b.nextWateringDay
+                || (a.nextWateringDay == b.nextWateringDay && a.id < b.id);
+    }
+
+    /**
+     * Scheduled plant, knowing its position in the heap.
+     */
+    private static class Entry {
+        final long id;
+        int wateringFrequency;
+        int nextWateringDay;
+        int index;
+
+        Entry(final long id) {
+            this.id = id;
+        }
+    }
+}
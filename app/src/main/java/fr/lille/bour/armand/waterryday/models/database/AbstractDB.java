@@ -1,18 +1,37 @@
 package fr.lille.bour.armand.waterryday.models.database;
 
+import android.content.ComponentCallbacks2;
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseArray;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import fr.lille.bour.armand.waterryday.models.DBObject;
 
 /**
  * Abstract class used as a template for database interaction class.
+ * Rows are read and inserted through this class; the tables whose rows can also be updated and
+ * deleted extend {@link AbstractMutableDB}.
+ * Each committed transaction publishes the rows it changed as one {@link ChangeEvent} per table,
+ * to the listeners registered with {@link #addChangeListener(ChangeEvent.Listener)}.
  *
  * @author Armand (Tydax) BOUR
  */
@@ -20,6 +39,55 @@ import fr.lille.bour.armand.waterryday.models.DBObject;
 public abstract class AbstractDB<K extends DBObject> {
 
     protected static final String WHERE_CLAUSE = "%s = ?";
+    protected static final String WHERE_AFTER_ID = "%s > ?";
+    protected static final String REQ_INSERT = "INSERT INTO %s (%s) VALUES (%s)";
+    protected static final String REQ_UPDATE = "UPDATE %s SET %s WHERE %s = ?";
+    protected static final String REQ_DELETE = "DELETE FROM %s WHERE %s = ?";
+    protected static final String REQ_SELECT_BY_ID = "SELECT %s FROM %s WHERE %s = ?";
+
+    private static final String TAG = "AbstractDB";
+
+    /** The version of a read whose objects must bypass the cache, see {@link #beginRead(SQLiteDatabase)}. */
+    private static final long NO_VERSION = -1;
+
+    private static final String EXC_CAUSE_STATEMENTS_CLOSED = "The compiled statements of %s have been invalidated.";
+
+    /** The writes of each thread not committed yet, by table, see {@link #endTransaction(SQLiteDatabase, boolean)}. */
+    private static final ThreadLocal<Map<AbstractDB<?>, PendingWrites<?>>> sPendingWrites =
+            new ThreadLocal<Map<AbstractDB<?>, PendingWrites<?>>>() {
+                @Override
+                protected Map<AbstractDB<?>, PendingWrites<?>> initialValue() {
+                    return new IdentityHashMap<>();
+                }
+            };
+    /**
+     * Whether a nested transaction of the thread ended without being successful: SQLite then rolls
+     * back the outermost transaction as well, even if it is marked successful.
+     */
+    private static final ThreadLocal<Boolean> sChildFailed = new ThreadLocal<>();
+
+    /** The listeners of the changes of the table. */
+    private final List<ChangeEvent.Listener> mChangeListeners = new CopyOnWriteArrayList<>();
+
+    /** The compiled statements of each thread, see {@link #getStatements(SQLiteDatabase)}. */
+    private final ThreadLocal<StatementCache> mStatements = new ThreadLocal<>();
+    /** The compiled statements of all the threads, so that {@link #invalidateStatements()} closes them all. */
+    private final Set<StatementCache> mAllStatements =
+            Collections.newSetFromMap(new ConcurrentHashMap<StatementCache, Boolean>());
+    /** Incremented to invalidate all the compiled statements, see {@link #invalidateStatements()}. */
+    private final AtomicInteger mStatementGeneration = new AtomicInteger();
+
+    /** The cache of objects by id, or <code>null</code> if caching is disabled. */
+    private volatile LruCache<Long, K> mCache;
+    /** Guards {@link #mCacheVersion}, and the lookups then puts of the objects read. */
+    private final Object mCacheLock = new Object();
+    /** Incremented by every write to the cache, so that a read can tell whether it raced with one. */
+    private long mCacheVersion;
+
+    /** The precomputed queries, built on first use. */
+    private String mInsertQuery;
+    private String mDeleteQuery;
+    private String mSelectByIdQuery;
 
     /**
      * Gets the table name associated with that class.
@@ -55,38 +123,584 @@ public abstract class AbstractDB<K extends DBObject> {
     protected abstract K convertCursorToObject(final Cursor c);
 
     /**
-     * Gets all the objects contained in the table.
+     * Binds the value of one field of the object to a compiled statement.
+     * @param statement The statement to bind the value to.
+     * @param index The 1-based index of the parameter in the statement.
+     * @param obj The object holding the value.
+     * @param field The index of the field in {@link #getAllTableFields()}.
+     */
+    protected abstract void bindField(final SQLiteStatement statement, final int index,
+                                      final K obj, final int field);
+
+    /**
+     * Binds all the fields of the object but the id, in the order of {@link #getAllTableFields()}.
+     * @param statement The statement to bind the values to.
+     * @param obj The object holding the values.
+     * @return The number of parameters bound.
+     */
+    protected int bindAllFields(final SQLiteStatement statement, final K obj) {
+        final int count = getAllTableFields().length;
+        for (int field = 1; field < count; field++) {
+            bindField(statement, field, obj, field);
+        }
+        return count - 1;
+    }
+
+    /**
+     * Binds the fields of the object selected by the specified columns, in the order of
+     * {@link #getAllTableFields()}.
+     * @param statement The statement to bind the values to.
+     * @param obj The object holding the values.
+     * @param columns A bit mask of the fields to bind, bit <em>i</em> standing for field <em>i</em>.
+     * @return The number of parameters bound.
+     */
+    protected int bindColumns(final SQLiteStatement statement, final K obj, final int columns) {
+        final int count = getAllTableFields().length;
+        int index = 0;
+        for (int field = 1; field < count; field++) {
+            if ((columns & (1 << field)) != 0) {
+                bindField(statement, ++index, obj, field);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Gets the columns to write to save the modifications of the object.
+     * By default, all the columns but the id are written as soon as one field is dirty.
+     * @param obj The object to save.
+     * @return A bit mask of the columns, bit <em>i</em> standing for field <em>i</em> of
+     *         {@link #getAllTableFields()}; <code>0</code> if there is nothing to write.
+     */
+    protected int getDirtyColumns(final K obj) {
+        if (obj.getDirtyFields() == 0) {
+            return 0;
+        }
+        return ((1 << getAllTableFields().length) - 1) & ~1;
+    }
+
+    /**
+     * Builds the <code>INSERT</code> query for all the fields but the id.
+     * @return The query, with one parameter per field.
+     */
+    protected String buildInsertQuery() {
+        final String[] fields = getAllTableFields();
+        final StringBuilder columns = new StringBuilder();
+        final StringBuilder params = new StringBuilder();
+        for (int i = 1; i < fields.length; i++) {
+            if (i > 1) {
+                columns.append(", ");
+                params.append(", ");
+            }
+            columns.append(fields[i]);
+            params.append('?');
+        }
+        return String.format(REQ_INSERT, getTableName(), columns, params);
+    }
+
+    /**
+     * Builds the <code>UPDATE</code> query for the specified columns.
+     * @param columns A bit mask of the columns to set, see {@link #getDirtyColumns(DBObject)}.
+     * @return The query, with one parameter per column followed by the id.
+     */
+    protected String buildUpdateQuery(final int columns) {
+        final String[] fields = getAllTableFields();
+        final StringBuilder assignments = new StringBuilder();
+        for (int i = 1; i < fields.length; i++) {
+            if ((columns & (1 << i)) != 0) {
+                if (assignments.length() > 0) {
+                    assignments.append(", ");
+                }
+                assignments.append(String.format(WHERE_CLAUSE, fields[i]));
+            }
+        }
+        return String.format(REQ_UPDATE, getTableName(), assignments, BaseColumns._ID);
+    }
+
+    /**
+     * Gets the <code>INSERT</code> query of the table, built once.
+     */
+    protected String getInsertQuery() {
+        if (mInsertQuery == null) {
+            mInsertQuery = buildInsertQuery();
+        }
+        return mInsertQuery;
+    }
+
+    /**
+     * Gets the <code>DELETE</code> by id query of the table, built once.
+     */
+    protected String getDeleteQuery() {
+        if (mDeleteQuery == null) {
+            mDeleteQuery = String.format(REQ_DELETE, getTableName(), BaseColumns._ID);
+        }
+        return mDeleteQuery;
+    }
+
+    /**
+     * Gets the <code>SELECT</code> by id query of the table, built once.
+     * SQLite cannot return rows through a {@link SQLiteStatement}, but each connection keeps its own
+     * cache of prepared statements keyed by query: using the exact same query every time hits it.
+     */
+    protected String getSelectByIdQuery() {
+        if (mSelectByIdQuery == null) {
+            final StringBuilder columns = new StringBuilder();
+            for (final String field : getAllTableFields()) {
+                if (columns.length() > 0) {
+                    columns.append(", ");
+                }
+                columns.append(field);
+            }
+            mSelectByIdQuery = String.format(REQ_SELECT_BY_ID, columns, getTableName(), BaseColumns._ID);
+        }
+        return mSelectByIdQuery;
+    }
+
+    /**
+     * Gets the compiled statements of the current thread for the specified database, compiling them
+     * again if the database has been reopened or the statements have been invalidated.
+     * Statements are kept per thread so that their bindings are never shared between threads.
+     * @param db The database the statements run against.
+     * @return The statement cache.
+     */
+    protected StatementCache getStatements(final SQLiteDatabase db) {
+        StatementCache cache = mStatements.get();
+        if (cache == null || cache.mDb != db || cache.mGeneration != mStatementGeneration.get()) {
+            if (cache != null) {
+                cache.close();
+                mAllStatements.remove(cache);
+            }
+            cache = new StatementCache(db, mStatementGeneration.get());
+            mAllStatements.add(cache);
+            mStatements.set(cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Registers a listener of the changes of the table.
+     * @param listener The listener, called after each transaction that changed the table.
+     */
+    public void addChangeListener(final ChangeEvent.Listener listener) {
+        mChangeListeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener of the changes of the table.
+     * @param listener The listener to remove.
+     */
+    public void removeChangeListener(final ChangeEvent.Listener listener) {
+        mChangeListeners.remove(listener);
+    }
+
+    /**
+     * Records the change of a row in the current transaction, to be published once it is committed.
+     * @param kind {@link ChangeEvent#INSERTED}, {@link ChangeEvent#UPDATED} or {@link ChangeEvent#DELETED}.
+     * @param id The id of the row.
+     */
+    protected void recordChange(final int kind, final long id) {
+        getPendingWrites().mChanges.record(kind, id);
+    }
+
+    /**
+     * Records a change of an unknown set of rows in the current transaction, e.g. by a single
+     * statement, to be published once it is committed.
+     */
+    protected void recordBulkChange() {
+        getPendingWrites().mChanges.recordBulk();
+    }
+
+    /**
+     * Records that an object is about to be written in the current transaction, with its id and
+     * dirty fields before the write. Once the transaction is committed, the object is cached if
+     * its row was written; if it is rolled back, the object gets its id and dirty fields back, so
+     * that writing it again is not skipped.
+     * @param object The object about to be written.
+     */
+    protected void recordWrite(final K object) {
+        final PendingWrites<K> writes = getPendingWrites();
+        writes.mObjects.add(object);
+        writes.mPreviousIds.add(object.getId());
+        writes.mDirtyFields.add(object.getDirtyFields());
+    }
+
+    @SuppressWarnings("unchecked")
+    private PendingWrites<K> getPendingWrites() {
+        final Map<AbstractDB<?>, PendingWrites<?>> pending = sPendingWrites.get();
+        PendingWrites<K> writes = (PendingWrites<K>) pending.get(this);
+        if (writes == null) {
+            writes = new PendingWrites<>(this);
+            pending.put(this, writes);
+        }
+        return writes;
+    }
+
+    /**
+     * Ends a transaction of the database. Once the outermost transaction is ended, the writes
+     * recorded in it are finalized: if it was committed, the written objects are cached and the
+     * changes are published; otherwise the written objects get their state before the transaction
+     * back, see {@link #recordWrite(DBObject)}. Like SQLite, a nested transaction ended without
+     * being successful rolls back the outermost one, even if the failure was caught.
+     * The writes of this class end their own transactions this way; code grouping several writes
+     * in a transaction must end it this way too, or their changes are only published with the next
+     * transaction of the thread.
+     * @param db The database, in a transaction begun by the current thread.
+     * @param successful Whether {@link SQLiteDatabase#setTransactionSuccessful()} was called.
+     * @return <code>true</code> if the transaction was successful and none of its nested
+     * transactions failed.
+     */
+    public static boolean endTransaction(final SQLiteDatabase db, final boolean successful) {
+        boolean committed = false;
+        try {
+            db.endTransaction();
+            committed = successful && sChildFailed.get() == null;
+        } finally {
+            if (db.inTransaction()) {
+                if (!committed) {
+                    sChildFailed.set(Boolean.TRUE);
+                }
+            } else {
+                sChildFailed.remove();
+                final Map<AbstractDB<?>, PendingWrites<?>> pending = sPendingWrites.get();
+                if (!pending.isEmpty()) {
+                    final List<PendingWrites<?>> writes = new ArrayList<>(pending.values());
+                    pending.clear();
+                    for (final PendingWrites<?> tableWrites : writes) {
+                        if (committed) {
+                            tableWrites.commit();
+                        } else {
+                            tableWrites.rollBack();
+                        }
+                    }
+                }
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * Brings the cache up to date with a committed transaction: the changed rows are dropped, then
+     * the objects written are cached, unless their rows were deleted afterwards. Readers that
+     * started before are kept from caching their older rows, see {@link #share(DBObject, long, boolean)}.
+     * @param event The changes of the transaction, or <code>null</code> if it changed nothing.
+     * @param objects The objects written in the transaction.
+     */
+    private void onCommitted(final ChangeEvent event, final List<K> objects) {
+        final LruCache<Long, K> cache = mCache;
+        if (cache == null) {
+            return;
+        }
+        synchronized (mCacheLock) {
+            mCacheVersion++;
+            if (event == null) {
+                return;
+            }
+            if (event.isBulk()) {
+                cache.evictAll();
+            } else {
+                for (final long[] ids : new long[][] { event.getInsertedIds(), event.getUpdatedIds(), event.getDeletedIds() }) {
+                    for (final long id : ids) {
+                        cache.remove(id);
+                    }
+                }
+            }
+            for (final K object : objects) {
+                final int change = event.getChange(object.getId());
+                if (change == ChangeEvent.INSERTED || change == ChangeEvent.UPDATED) {
+                    cache.put(object.getId(), object);
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls the listeners of the table with a committed change.
+     */
+    private void publish(final ChangeEvent event) {
+        for (final ChangeEvent.Listener listener : mChangeListeners) {
+            try {
+                listener.onChanged(event);
+            } catch (final RuntimeException exc) {
+                // The transaction is committed anyway, the other listeners must know it
+                Log.e(TAG, "Change listener failed on " + event, exc);
+            }
+        }
+    }
+
+    /**
+     * Invalidates and closes the compiled statements of all threads, e.g. when the database is
+     * closed or its schema changes. Each thread compiles them again on its next write.
+     * Must not run while another thread writes through this table: {@link DatabaseHelper} calls it
+     * when the database is upgraded or closed, when no write can be in progress.
+     */
+    public void invalidateStatements() {
+        mStatementGeneration.incrementAndGet();
+        for (final StatementCache cache : mAllStatements) {
+            cache.close();
+        }
+        mAllStatements.clear();
+        mStatements.remove();
+    }
+
+    /**
+     * Enables the cache of objects by id, an identity map: as long as an object is cached, every
+     * read of its id returns the same instance, through {@link #get(SQLiteOpenHelper, long)} as
+     * well as the reads of several objects. The cache is kept up to date by the write methods of
+     * this class, once their transaction is committed. Reads on a thread in a transaction bypass it, as they may see uncommitted rows.
+     * <p>
+     * Cached objects are shared by all the threads that read them, without synchronization of
+     * their own: they must only be modified on the main thread, and handed to the background
+     * threads through the queues of {@link DatabaseExecutor}, which publish the modifications.
+     * Background threads must not modify them.
+     * <p>
+     * Does nothing if the cache is already enabled.
+     * @param maxSize The maximum number of objects in the cache.
+     */
+    public synchronized void enableCache(final int maxSize) {
+        if (mCache == null) {
+            mCache = new LruCache<>(maxSize);
+        }
+    }
+
+    /**
+     * Disables the cache of objects and drops its content.
+     */
+    public synchronized void disableCache() {
+        mCache = null;
+    }
+
+    /**
+     * Tells whether the cache of objects is enabled.
+     * @return <code>true</code> if {@link #enableCache(int)} has been called.
+     */
+    public boolean isCacheEnabled() {
+        return mCache != null;
+    }
+
+    /**
+     * Gets the number of lookups served by the cache.
+     * @return The number of hits, or 0 if caching is disabled.
+     */
+    public int getCacheHitCount() {
+        final LruCache<Long, K> cache = mCache;
+        return cache == null ? 0 : cache.hitCount();
+    }
+
+    /**
+     * Gets the number of lookups that had to go to the database.
+     * @return The number of misses, or 0 if caching is disabled.
+     */
+    public int getCacheMissCount() {
+        final LruCache<Long, K> cache = mCache;
+        return cache == null ? 0 : cache.missCount();
+    }
+
+    /**
+     * Gets the number of objects evicted from the cache to respect its maximum size.
+     * @return The number of evictions, or 0 if caching is disabled.
+     */
+    public int getCacheEvictionCount() {
+        final LruCache<Long, K> cache = mCache;
+        return cache == null ? 0 : cache.evictionCount();
+    }
+
+    /**
+     * Releases cached objects according to the memory pressure reported by the system.
+     * @param level The level given to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void trimCache(final int level) {
+        final LruCache<Long, K> cache = mCache;
+        if (cache == null) {
+            return;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            cache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            cache.trimToSize(cache.maxSize() / 2);
+        }
+    }
+
+    /**
+     * Drops all the cached objects, e.g. after a write that bypassed the methods of this class.
+     */
+    public void evictCache() {
+        final LruCache<Long, K> cache = mCache;
+        if (cache != null) {
+            synchronized (mCacheLock) {
+                mCacheVersion++;
+                cache.evictAll();
+            }
+        }
+    }
+
+    /**
+     * Removes the object with the specified id from the cache, if enabled.
+     */
+    protected void cacheRemove(final long id) {
+        final LruCache<Long, K> cache = mCache;
+        if (cache != null) {
+            synchronized (mCacheLock) {
+                mCacheVersion++;
+                cache.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Starts a read whose objects go through {@link #share(DBObject, long, boolean)}. Must be
+     * called before the cursor of the read is first moved, as SQLite only runs the query then.
+     * @param db The database the read runs against.
+     * @return The version of the cache when the read started, or {@link #NO_VERSION} if the objects
+     *         must bypass the cache: it is disabled, or the thread is in a transaction.
+     */
+    protected long beginRead(final SQLiteDatabase db) {
+        if (mCache == null || db.inTransaction()) {
+            return NO_VERSION;
+        }
+        synchronized (mCacheLock) {
+            return mCacheVersion;
+        }
+    }
+
+    /**
+     * Passes an object read from the database through the cache: returns the cached instance of
+     * its id if there is one. Otherwise, the object is cached unless a write happened since the
+     * read started, as the row read may then be older than the one written.
+     * @param object The object read.
+     * @param version The version returned by {@link #beginRead(SQLiteDatabase)} before the read.
+     * @param populate Whether to cache the object, <code>false</code> for full scans that would
+     *                 evict the objects in use.
+     * @return The cached instance, or the object read.
+     */
+    protected K share(final K object, final long version, final boolean populate) {
+        final LruCache<Long, K> cache = mCache;
+        if (cache == null || version == NO_VERSION) {
+            return object;
+        }
+        synchronized (mCacheLock) {
+            final K cached = cache.get(object.getId());
+            if (cached != null) {
+                return cached;
+            }
+            if (populate && version == mCacheVersion) {
+                cache.put(object.getId(), object);
+            }
+        }
+        return object;
+    }
+
+    /**
+     * Gets the object with the specified id.
      * @param helper The database helper.
-     * @return A {@link List} containing all the objects contained in the table.
+     * @param id The id of the object.
+     * @return The object, or <code>null</code> if there is no object with that id.
      */
     public K get(final SQLiteOpenHelper helper, final long id) {
         final SQLiteDatabase db = helper.getReadableDatabase();
-        final String selection = String.format(WHERE_CLAUSE, BaseColumns._ID);
+        final long version = beginRead(db);
+        // The cache may be disabled meanwhile: it is read once
+        final LruCache<Long, K> cache = mCache;
+        if (version != NO_VERSION && cache != null) {
+            final K cached = cache.get(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
         final String[] selectArgs = { String.valueOf(id) };
-        final Cursor cursor = db.query(getTableName(), getAllTableFields(), selection, selectArgs, null, null, null);
-        cursor.moveToFirst();
-        final K object = convertCursorToObject(cursor);
-        return object;
+        final Cursor cursor = db.rawQuery(getSelectByIdQuery(), selectArgs);
+        final K object;
+        try {
+            object = cursor.moveToFirst() ? convertCursorToObject(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+        return object == null ? null : share(object, version, true);
     }
 
     /**
      * Gets all the objects contained in the table.
+     * Prefer {@link #iterate(SQLiteOpenHelper, int)} for large tables.
      * @param helper The database helper.
      * @return A {@link List} containing all the objects contained in the table.
      */
     public List<K> getAll(final SQLiteOpenHelper helper) {
         final SQLiteDatabase db = helper.getReadableDatabase();
         final Cursor cursor = db.query(getTableName(), getAllTableFields(), null, null, null, null, null);
-        cursor.moveToFirst();
+        return readAll(db, cursor);
+    }
+
+    /**
+     * Gets one page of objects, ordered by id.
+     * The page starts right after the specified id, so that the next page can be fetched from
+     * the id of the last object without skipping or repeating rows (keyset pagination).
+     * @param helper The database helper.
+     * @param afterId The id after which the page starts, or <code>-1</code> for the first page.
+     * @param pageSize The maximum number of objects in the page.
+     * @return The objects of the page; the page is the last one if it holds less than
+     *         <code>pageSize</code> objects.
+     */
+    public List<K> getPage(final SQLiteOpenHelper helper, final long afterId, final int pageSize) {
+        return readAll(helper.getReadableDatabase(), queryPage(helper, afterId, pageSize));
+    }
 
-        final List<K> objects = new ArrayList<>();
-        while (!cursor.isAfterLast()) {
-            final K object = convertCursorToObject(cursor);
-            objects.add(object);
-            cursor.moveToNext();
+    /**
+     * Iterates over all the objects of the table, ordered by id, loading one page at a time.
+     * Only the cursor of the current page is kept open, so memory does not grow with the table.
+     * @param helper The database helper.
+     * @param pageSize The number of rows fetched per page.
+     * @return An iterator that must be closed if it is not read until the end.
+     */
+    public PageIterator<K> iterate(final SQLiteOpenHelper helper, final int pageSize) {
+        return new PageIterator<>(this, helper, pageSize);
+    }
+
+    /**
+     * Queries one page of rows, ordered by id.
+     * @see #getPage(SQLiteOpenHelper, long, int)
+     */
+    protected Cursor queryPage(final SQLiteOpenHelper helper, final long afterId, final int pageSize) {
+        final SQLiteDatabase db = helper.getReadableDatabase();
+        final String[] selectArgs = { String.valueOf(afterId) };
+        return db.query(getTableName(), getAllTableFields(), String.format(WHERE_AFTER_ID, BaseColumns._ID),
+                selectArgs, null, null, BaseColumns._ID, String.valueOf(pageSize));
+    }
+
+    /**
+     * Converts all the rows of the cursor through the cache, then closes it.
+     * @param db The database the cursor reads, not moved yet.
+     * @param cursor The cursor to read.
+     * @return The objects read, or their cached instances.
+     */
+    protected List<K> readAll(final SQLiteDatabase db, final Cursor cursor) {
+        final long version = beginRead(db);
+        try {
+            final List<K> objects = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                objects.add(share(convertCursorToObject(cursor), version, true));
+            }
+            return objects;
+        } finally {
+            cursor.close();
         }
+    }
+
+    /**
+     * Called in the transaction of each insertion, once the object has its id, so that subclasses
+     * can maintain tables derived from this one. Does nothing by default.
+     * @param statements The compiled statements of the current thread.
+     * @param object The inserted object.
+     */
+    protected void onInserted(final StatementCache statements, final K object) {
+    }
 
-        return objects;
+    /**
+     * Called in the transaction emptying the table. Does nothing by default.
+     * @param db The database.
+     */
+    protected void onCleaned(final SQLiteDatabase db) {
     }
 
     /**
@@ -97,43 +711,245 @@ public abstract class AbstractDB<K extends DBObject> {
      */
     public long insert(final SQLiteOpenHelper helper, final K object) {
         final SQLiteDatabase db = helper.getWritableDatabase();
-        final ContentValues values = convertObjectToContentValues(object);
-        final long id = db.insert(getTableName(), null, values);
-        object.setId(id);
+        final StatementCache statements = getStatements(db);
+        final SQLiteStatement statement = statements.getInsert();
+        statement.clearBindings();
+        bindAllFields(statement, object);
+        long id;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            recordWrite(object);
+            try {
+                id = statement.executeInsert();
+            } catch (final SQLException exc) {
+                id = -1;
+            }
+            object.setId(id);
+            if (id != -1) {
+                onInserted(statements, object);
+                recordChange(ChangeEvent.INSERTED, id);
+                object.clearDirtyFields();
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endTransaction(db, successful);
+        }
         return id;
     }
 
-
     /**
-     * Deletes the specified object at the specified id in the database.
+     * Inserts all the specified objects in a single transaction and updates their ids.
      * @param helper The database helper to use.
-     * @param id The id of the object to delete.
-     * @return <code>true</code> if a row was successfully deleted; <br>
-     *         <code>false</code> otherwise.
+     * @param objects The objects to insert in the database.
+     * @return The number of objects inserted.
      */
-    public boolean delete(final SQLiteOpenHelper helper, final long id) {
+    public int insertAll(final SQLiteOpenHelper helper, final Collection<K> objects) {
         final SQLiteDatabase db = helper.getWritableDatabase();
-        final String whereClause = String.format(WHERE_CLAUSE, BaseColumns._ID);
-        final String[] whereArgs = { String.valueOf(id) };
-        return db.delete(getTableName(), whereClause, whereArgs) == 1;
+        final StatementCache statements = getStatements(db);
+        final SQLiteStatement statement = statements.getInsert();
+        int inserted = 0;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            for (final K object : objects) {
+                statement.clearBindings();
+                bindAllFields(statement, object);
+                recordWrite(object);
+                final long id = statement.executeInsert();
+                object.setId(id);
+                if (id != -1) {
+                    inserted++;
+                    onInserted(statements, object);
+                    recordChange(ChangeEvent.INSERTED, id);
+                    object.clearDirtyFields();
+                }
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endTransaction(db, successful);
+        }
+        return inserted;
     }
 
     /**
-     * Updates the object in the database.
+     * Deletes all the rows of the table.
      * @param helper The database helper to use.
-     * @param object The object to update.
-     * @return <code>true</code> if a row was successfully updated; <br>
-     *         <code>false</code> otherwise.
+     * @return The number of rows deleted.
      */
-    public boolean update(final SQLiteOpenHelper helper, final K object) {
+    public int cleanTable(final SQLiteOpenHelper helper) {
         final SQLiteDatabase db = helper.getWritableDatabase();
-        final String whereClause = String.format(WHERE_CLAUSE, BaseColumns._ID);
-        final String[] whereArgs = { String.valueOf(object.getId()) };
-        final ContentValues values = convertObjectToContentValues(object);
-        return db.update(getTableName(), values, whereClause, whereArgs) == 1;
+        final int deleted;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            deleted = db.delete(getTableName(), "1", null);
+            onCleaned(db);
+            recordBulkChange();
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endTransaction(db, successful);
+        }
+        return deleted;
     }
 
-    public int cleanTable(final SQLiteOpenHelper helper) {
-        return helper.getWritableDatabase().delete(getTableName(), "1", null);
+    /**
+     * The writes of one thread on one table, not committed yet.
+     */
+    private static final class PendingWrites<K extends DBObject> {
+
+        private final AbstractDB<K> mTable;
+        private final ChangeEvent.Builder mChanges;
+        /** The objects written, with their id and dirty fields before each write. */
+        private final List<K> mObjects = new ArrayList<>();
+        private final List<Long> mPreviousIds = new ArrayList<>();
+        private final List<Integer> mDirtyFields = new ArrayList<>();
+
+        private PendingWrites(final AbstractDB<K> table) {
+            mTable = table;
+            mChanges = new ChangeEvent.Builder(table);
+        }
+
+        /**
+         * Caches the written objects, then publishes the changes.
+         */
+        private void commit() {
+            final ChangeEvent event = mChanges.isEmpty() ? null : mChanges.build();
+            mTable.onCommitted(event, mObjects);
+            if (event != null) {
+                mTable.publish(event);
+            }
+        }
+
+        /**
+         * Gives the written objects their state before the transaction back, latest write first.
+         */
+        private void rollBack() {
+            for (int i = mObjects.size() - 1; i >= 0; i--) {
+                final K object = mObjects.get(i);
+                object.setId(mPreviousIds.get(i));
+                object.restoreDirtyFields(mDirtyFields.get(i));
+            }
+        }
+    }
+
+    /**
+     * The compiled statements of one thread, valid for one database only.
+     * Each statement is compiled on first use. The cache is only used by its thread, but can be
+     * closed by any thread through {@link #invalidateStatements()}.
+     */
+    protected class StatementCache {
+
+        private final SQLiteDatabase mDb;
+        private final int mGeneration;
+        /** Whether the statements have been closed: none can be compiled any more. */
+        private boolean mClosed;
+
+        private SQLiteStatement mInsert;
+        private SQLiteStatement mDelete;
+        /** The update statements, by bit mask of the columns they set. */
+        private final SparseArray<SQLiteStatement> mUpdates = new SparseArray<>();
+        /** The statements of the subclasses, by query. */
+        private final Map<String, SQLiteStatement> mOthers = new HashMap<>();
+
+        private StatementCache(final SQLiteDatabase db, final int generation) {
+            mDb = db;
+            mGeneration = generation;
+        }
+
+        /**
+         * Gets the database the statements are compiled for.
+         */
+        public SQLiteDatabase getDatabase() {
+            return mDb;
+        }
+
+        /**
+         * Gets the statement inserting all the fields but the id.
+         */
+        public synchronized SQLiteStatement getInsert() {
+            checkOpen();
+            if (mInsert == null) {
+                mInsert = mDb.compileStatement(getInsertQuery());
+            }
+            return mInsert;
+        }
+
+        /**
+         * Gets the statement updating the specified columns, the id being the last parameter.
+         * @param columns A bit mask of the columns, see {@link #getDirtyColumns(DBObject)}.
+         */
+        public synchronized SQLiteStatement getUpdate(final int columns) {
+            checkOpen();
+            SQLiteStatement update = mUpdates.get(columns);
+            if (update == null) {
+                update = mDb.compileStatement(buildUpdateQuery(columns));
+                mUpdates.put(columns, update);
+            }
+            return update;
+        }
+
+        /**
+         * Gets the statement deleting the row with the id bound as first parameter.
+         */
+        public synchronized SQLiteStatement getDelete() {
+            checkOpen();
+            if (mDelete == null) {
+                mDelete = mDb.compileStatement(getDeleteQuery());
+            }
+            return mDelete;
+        }
+
+        /**
+         * Gets the statement compiled from the specified query, e.g. to write the tables derived
+         * from this one. The query should be a constant, as each different query stays compiled.
+         * @param query The query.
+         */
+        public synchronized SQLiteStatement get(final String query) {
+            checkOpen();
+            SQLiteStatement statement = mOthers.get(query);
+            if (statement == null) {
+                statement = mDb.compileStatement(query);
+                mOthers.put(query, statement);
+            }
+            return statement;
+        }
+
+        /**
+         * @throws IllegalStateException If the statements have been closed.
+         */
+        private void checkOpen() {
+            if (mClosed) {
+                throw new IllegalStateException(String.format(EXC_CAUSE_STATEMENTS_CLOSED, getTableName()));
+            }
+        }
+
+        /**
+         * Closes all the compiled statements. Does nothing if they are already closed.
+         */
+        private synchronized void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            for (final SQLiteStatement statement : new SQLiteStatement[] { mInsert, mDelete }) {
+                if (statement != null) {
+                    statement.close();
+                }
+            }
+            for (int i = 0; i < mUpdates.size(); i++) {
+                mUpdates.valueAt(i).close();
+            }
+            for (final SQLiteStatement statement : mOthers.values()) {
+                statement.close();
+            }
+            mInsert = null;
+            mDelete = null;
+            mUpdates.clear();
+            mOthers.clear();
+        }
     }
 }
@@ -0,0 +1,172 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Collection;
+
+import fr.lille.bour.armand.waterryday.models.DBObject;
+
+/**
+ * Template for the tables whose rows can be updated and deleted once inserted.
+ * Tables that are only appended to, such as the watering history, extend {@link AbstractDB}.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public abstract class AbstractMutableDB<K extends DBObject> extends AbstractDB<K> {
+
+    /**
+     * Called in the transaction of each update that wrote a row. Does nothing by default.
+     * @param statements The compiled statements of the current thread.
+     * @param object The updated object.
+     * @param columns A bit mask of the written columns, see {@link #getDirtyColumns(DBObject)}.
+     */
+    protected void onUpdated(final StatementCache statements, final K object, final int columns) {
+    }
+
+    /**
+     * Called in the transaction of each deletion. Does nothing by default.
+     * @param statements The compiled statements of the current thread.
+     * @param id The id of the deleted object.
+     */
+    protected void onDeleted(final StatementCache statements, final long id) {
+    }
+
+    /**
+     * Deletes the specified object at the specified id in the database.
+     * @param helper The database helper to use.
+     * @param id The id of the object to delete.
+     * @return <code>true</code> if a row was successfully deleted; <br>
+     *         <code>false</code> otherwise.
+     */
+    public boolean delete(final SQLiteOpenHelper helper, final long id) {
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        final StatementCache statements = getStatements(db);
+        final SQLiteStatement statement = statements.getDelete();
+        statement.bindLong(1, id);
+        final boolean deleted;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            deleted = statement.executeUpdateDelete() == 1;
+            if (deleted) {
+                onDeleted(statements, id);
+                recordChange(ChangeEvent.DELETED, id);
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endTransaction(db, successful);
+        }
+        return deleted;
+    }
+
+    /**
+     * Updates the object in the database, writing only the columns of its dirty fields.
+     * Nothing is written if no field was modified since the object was loaded or saved.
+     * @param helper The database helper to use.
+     * @param object The object to update.
+     * @return <code>true</code> if a row was successfully updated or was already up to date; <br>
+     *         <code>false</code> otherwise.
+     */
+    public boolean update(final SQLiteOpenHelper helper, final K object) {
+        final int columns = getDirtyColumns(object);
+        if (columns == 0) {
+            return true;
+        }
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        final boolean updated;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            updated = executeUpdate(getStatements(db), object, columns);
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endTransaction(db, successful);
+        }
+        if (!updated) {
+            cacheRemove(object.getId());
+        }
+        return updated;
+    }
+
+    /**
+     * Writes the specified columns of the object with the cached statement for these columns.
+     * @return <code>true</code> if the row was updated.
+     */
+    private boolean executeUpdate(final StatementCache statements, final K object, final int columns) {
+        final SQLiteStatement statement = statements.getUpdate(columns);
+        statement.clearBindings();
+        final int bound = bindColumns(statement, object, columns);
+        statement.bindLong(bound + 1, object.getId());
+        recordWrite(object);
+        if (statement.executeUpdateDelete() == 1) {
+            onUpdated(statements, object, columns);
+            recordChange(ChangeEvent.UPDATED, object.getId());
+            object.clearDirtyFields();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Updates all the specified objects in a single transaction, writing only the columns of their
+     * dirty fields. Objects without modified fields are not written.
+     * @param helper The database helper to use.
+     * @param objects The objects to update.
+     * @return The number of objects updated or already up to date.
+     */
+    public int updateAll(final SQLiteOpenHelper helper, final Collection<K> objects) {
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        final StatementCache statements = getStatements(db);
+        int updated = 0;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            for (final K object : objects) {
+                final int columns = getDirtyColumns(object);
+                if (columns == 0 || executeUpdate(statements, object, columns)) {
+                    updated++;
+                }
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endTransaction(db, successful);
+        }
+        return updated;
+    }
+
+    /**
+     * Deletes all the objects with the specified ids in a single transaction.
+     * @param helper The database helper to use.
+     * @param ids The ids of the objects to delete.
+     * @return The number of rows deleted.
+     */
+    public int deleteAll(final SQLiteOpenHelper helper, final Collection<Long> ids) {
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        final StatementCache statements = getStatements(db);
+        final SQLiteStatement statement = statements.getDelete();
+        int deleted = 0;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            for (final long id : ids) {
+                statement.bindLong(1, id);
+                if (statement.executeUpdateDelete() == 1) {
+                    deleted++;
+                    onDeleted(statements, id);
+                    recordChange(ChangeEvent.DELETED, id);
+                }
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endTransaction(db, successful);
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,251 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.support.v4.util.LongSparseArray;
+
+import java.util.Arrays;
+
+/**
+ * The rows of a table changed by one committed transaction, published by {@link AbstractDB}.
+ * Each id is listed once, with its state at the end of the transaction: a row inserted then
+ * updated is only inserted, a row inserted then deleted is not listed at all.
+ * A bulk change, e.g. a table emptied or rows written by a single statement, may have changed
+ * any row: the rows it changed are not necessarily listed.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public final class ChangeEvent {
+
+    /** The row was inserted. */
+    public static final int INSERTED = 1;
+    /** The row was updated. */
+    public static final int UPDATED = 2;
+    /** The row was deleted. */
+    public static final int DELETED = 3;
+
+    private static final String EXC_CAUSE_KIND = "Unknown kind of change: %d";
+
+    /**
+     * Receives the changes of a table, see {@link AbstractDB#addChangeListener(Listener)}.
+     */
+    public interface Listener {
+
+        /**
+         * Called once the transaction that changed the table is committed, on the thread that
+         * committed it. Must return quickly, e.g. by handing the work to another thread.
+         * @param event The changes of the transaction.
+         */
+        void onChanged(ChangeEvent event);
+    }
+
+    private final AbstractDB<?> mTable;
+    private final long[] mInserted;
+    private final long[] mUpdated;
+    private final long[] mDeleted;
+    private final boolean mBulk;
+
+    private ChangeEvent(final AbstractDB<?> table, final long[] inserted, final long[] updated,
+                        final long[] deleted, final boolean bulk) {
+        mTable = table;
+        mInserted = inserted;
+        mUpdated = updated;
+        mDeleted = deleted;
+        mBulk = bulk;
+    }
+
+    /**
+     * Gets the changed table.
+     * @return The changed table.
+     */
+    public AbstractDB<?> getTable() {
+        return mTable;
+    }
+
+    /**
+     * Gets the ids of the inserted rows, in ascending order. The array must not be modified.
+     * @return The ids of the inserted rows.
+     */
+    public long[] getInsertedIds() {
+        return mInserted;
+    }
+
+    /**
+     * Gets the ids of the updated rows, in ascending order. The array must not be modified.
+     * @return The ids of the updated rows.
+     */
+    public long[] getUpdatedIds() {
+        return mUpdated;
+    }
+
+    /**
+     * Gets the ids of the deleted rows, in ascending order. The array must not be modified.
+     * @return The ids of the deleted rows.
+     */
+    public long[] getDeletedIds() {
+        return mDeleted;
+    }
+
+    /**
+     * Checks whether any row may have changed, beyond the listed ones.
+     * @return <code>true</code> if the whole table must be read again, <code>false</code> otherwise.
+     */
+    public boolean isBulk() {
+        return mBulk;
+    }
+
+    /**
+     * Checks whether the event lists no change at all.
+     * @return <code>true</code> if nothing changed, <code>false</code> otherwise.
+     */
+    public boolean isEmpty() {
+        return !mBulk && mInserted.length == 0 && mUpdated.length == 0 && mDeleted.length == 0;
+    }
+
+    /**
+     * Gets the kind of change of a row.
+     * @param id The id of the row.
+     * @return {@link #INSERTED}, {@link #UPDATED}, {@link #DELETED}, or <code>0</code> if the row is not listed.
+     */
+    public int getChange(final long id) {
+        if (Arrays.binarySearch(mUpdated, id) >= 0) {
+            return UPDATED;
+        }
+        if (Arrays.binarySearch(mInserted, id) >= 0) {
+            return INSERTED;
+        }
+        if (Arrays.binarySearch(mDeleted, id) >= 0) {
+            return DELETED;
+        }
+        return 0;
+    }
+
+    /**
+     * Checks whether a row may have changed.
+     * @param id The id of the row.
+     * @return <code>true</code> if the row is listed or the change is bulk, <code>false</code> otherwise.
+     */
+    public boolean affects(final long id) {
+        return mBulk || getChange(id) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return mTable.getTableName() + ": inserted " + Arrays.toString(mInserted) + ", updated "
+                + Arrays.toString(mUpdated) + ", deleted " + Arrays.toString(mDeleted)
+                + (mBulk ? ", bulk" : "");
+    }
+
+    /**
+     * Gathers the changes of a table one by one, keeping the state of each row at the end.
+     */
+    public static final class Builder {
+
+        private final AbstractDB<?> mTable;
+        /** The kind of change of each row, by id. */
+        private final LongSparseArray<Integer> mChanges = new LongSparseArray<>();
+        private boolean mBulk;
+
+        /**
+         * Creates a builder without any change.
+         * @param table The changed table.
+         */
+        public Builder(final AbstractDB<?> table) {
+            mTable = table;
+        }
+
+        /**
+         * Records the change of a row, after the changes already recorded.
+         * @param kind {@link #INSERTED}, {@link #UPDATED} or {@link #DELETED}.
+         * @param id The id of the row.
+         * @return This builder.
+         * @throws IllegalArgumentException If the kind is unknown.
+         */
+        public Builder record(final int kind, final long id) {
+            final Integer previous = mChanges.get(id);
+            switch (kind) {
+                case INSERTED:
+                    // A row deleted then inserted again with the same id only changed
+                    mChanges.put(id, previous == null ? INSERTED : previous == DELETED ? UPDATED : previous);
+                    break;
+
+                case UPDATED:
+                    if (previous == null) {
+                        mChanges.put(id, UPDATED);
+                    }
+                    break;
+
+                case DELETED:
+                    // A row inserted then deleted never existed for the listeners
+                    if (previous != null && previous == INSERTED) {
+                        mChanges.remove(id);
+                    } else {
+                        mChanges.put(id, DELETED);
+                    }
+                    break;
+
+                default:
+                    throw new IllegalArgumentException(String.format(EXC_CAUSE_KIND, kind));
+            }
+            return this;
+        }
+
+        /**
+         * Records a change of an unknown set of rows.
+         * @return This builder.
+         */
+        public Builder recordBulk() {
+            mBulk = true;
+            return this;
+        }
+
+        /**
+         * Records the changes of an event, after the changes already recorded.
+         * @param event The event, of the same table.
+         * @return This builder.
+         */
+        public Builder merge(final ChangeEvent event) {
+            for (final long id : event.mDeleted) {
+                record(DELETED, id);
+            }
+            for (final long id : event.mInserted) {
+                record(INSERTED, id);
+            }
+            for (final long id : event.mUpdated) {
+                record(UPDATED, id);
+            }
+            mBulk |= event.mBulk;
+            return this;
+        }
+
+        /**
+         * Checks whether no change was recorded.
+         * @return <code>true</code> if no change was recorded, <code>false</code> otherwise.
+         */
+        public boolean isEmpty() {
+            return !mBulk && mChanges.size() == 0;
+        }
+
+        /**
+         * Builds the event of the recorded changes.
+         * @return The event.
+         */
+        public ChangeEvent build() {
+            final int size = mChanges.size();
+            final long[][] ids = new long[DELETED + 1][];
+            final int[] counts = new int[DELETED + 1];
+            for (int i = 0; i < size; i++) {
+                counts[mChanges.valueAt(i)]++;
+            }
+            for (int kind = INSERTED; kind <= DELETED; kind++) {
+                ids[kind] = new long[counts[kind]];
+                counts[kind] = 0;
+            }
+            // The keys come in ascending order, and so do the ids of each kind
+            for (int i = 0; i < size; i++) {
+                final int kind = mChanges.valueAt(i);
+                ids[kind][counts[kind]++] = mChanges.keyAt(i);
+            }
+            return new ChangeEvent(mTable, ids[INSERTED], ids[UPDATED], ids[DELETED], mBulk);
+        }
+    }
+}
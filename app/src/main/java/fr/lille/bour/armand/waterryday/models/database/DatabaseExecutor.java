@@ -0,0 +1,549 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the database operations of the application off the main thread.
+ * <p>
+ * Writes run on a single writer thread: the writes queued while it is busy are merged into one
+ * transaction, so that a burst of saves costs one commit. Reads run on a small pool of their own,
+ * so that a slow load never delays a write, and readers do not block each other in WAL mode.
+ * Results are delivered on the main thread through {@link Callback}s, or can be waited for through
+ * the returned {@link Task}s.
+ * <p>
+ * Every operation is submitted on behalf of an owner, typically an activity, which calls
+ * {@link #cancelAll(Object)} when it goes away: its pending reads are dropped and none of its
+ * callbacks are called any more. Its writes still run, so that no save is lost.
+ * <p>
+ * The executor of the application lives as long as its process; the others must be stopped with
+ * {@link #shutdown()}.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class DatabaseExecutor {
+
+    private static final String TAG = "DatabaseExecutor";
+
+    /** The maximum number of writes merged into one transaction. */
+    private static final int MAX_BATCH_SIZE = 64;
+    /** The number of reader threads. */
+    private static final int READER_COUNT = 2;
+
+    private static final String EXC_CAUSE_SHUT_DOWN = "The executor has been shut down.";
+    private static final String EXC_CAUSE_ROLLED_BACK = "A nested transaction failed: the writes were rolled back.";
+
+    private static DatabaseExecutor sInstance;
+
+    private final SQLiteOpenHelper mHelper;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** The writes to run, guarded by itself against {@link #shutdown()}. */
+    private final BlockingQueue<Task<?>> mWrites = new LinkedBlockingQueue<>();
+    /** Queued last by {@link #shutdown()}: stops the writer thread once the writes before it have run. */
+    private final Task<Void> mStop;
+    private final Thread mWriter;
+    private final ExecutorService mReaders;
+    private boolean mShutdown;
+    /** The tasks not completed yet, by owner. */
+    private final Map<Object, Set<Task<?>>> mTasksByOwner = new HashMap<>();
+
+    private final Metrics mMetrics = new Metrics();
+
+    /**
+     * An operation on the database, run on a background thread.
+     * @param <T> The type of the result.
+     */
+    public interface Operation<T> {
+
+        /**
+         * Runs the operation. Writes run in the transaction of their batch, which the write
+         * methods of {@link AbstractDB} join. A write is run again on its own when another write
+         * of its batch fails: it must not have any side effect but on the database.
+         * @param helper The database helper to use.
+         * @return The result of the operation.
+         */
+        T execute(final SQLiteOpenHelper helper);
+    }
+
+    /**
+     * Receives the result of an operation on the main thread.
+     * @param <T> The type of the result.
+     */
+    public abstract static class Callback<T> {
+
+        /**
+         * Called on the main thread when the operation succeeded.
+         * @param result The result of the operation.
+         */
+        public abstract void onResult(final T result);
+
+        /**
+         * Called on the main thread when the operation failed. Logs the error by default.
+         * @param error The error thrown by the operation or by its transaction.
+         */
+        public void onError(final Throwable error) {
+            Log.e(TAG, "Database operation failed", error);
+        }
+    }
+
+    /**
+     * Gets the executor of the application database, creating it on first use.
+     * @param context A context of the application.
+     * @return The executor.
+     */
+    public static synchronized DatabaseExecutor getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new DatabaseExecutor(DatabaseHelper.getInstance(context));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Creates an executor and starts its threads, e.g. for tests on another database.
+     * @param helper The database helper the operations run with.
+     */
+    public DatabaseExecutor(final SQLiteOpenHelper helper) {
+        mHelper = helper;
+        mStop = new Task<>(null, null, null, true);
+        mReaders = new ThreadPoolExecutor(READER_COUNT, READER_COUNT, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory("DatabaseReader"));
+        mWriter = new BackgroundThreadFactory("DatabaseWriter").newThread(new Runnable() {
+            @Override
+            public void run() {
+                runWrites();
+            }
+        });
+        mWriter.start();
+    }
+
+    /**
+     * Queues a read on the reader pool.
+     * @param owner The owner of the operation, see {@link #cancelAll(Object)}.
+     * @param operation The operation.
+     * @param callback The callback receiving the result on the main thread, or <code>null</code>.
+     * @return The task of the operation.
+     * @throws IllegalStateException If the executor has been shut down.
+     */
+    public <T> Task<T> read(final Object owner, final Operation<T> operation, final Callback<? super T> callback) {
+        final Task<T> task = new Task<>(owner, operation, callback, false);
+        synchronized (mWrites) {
+            if (mShutdown) {
+                throw new IllegalStateException(EXC_CAUSE_SHUT_DOWN);
+            }
+            register(task);
+            mMetrics.onSubmitted(false);
+            mReaders.execute(task);
+        }
+        return task;
+    }
+
+    /**
+     * Queues a write on the writer thread. It runs in a transaction shared with the other writes
+     * queued meanwhile. If one of them fails, the transaction is rolled back, then each write is
+     * run again in a transaction of its own: only the failing ones are reported as failed.
+     * @param owner The owner of the operation, see {@link #cancelAll(Object)}.
+     * @param operation The operation.
+     * @param callback The callback receiving the result on the main thread, or <code>null</code>.
+     * @return The task of the operation.
+     * @throws IllegalStateException If the executor has been shut down.
+     */
+    public <T> Task<T> write(final Object owner, final Operation<T> operation, final Callback<? super T> callback) {
+        final Task<T> task = new Task<>(owner, operation, callback, true);
+        synchronized (mWrites) {
+            if (mShutdown) {
+                throw new IllegalStateException(EXC_CAUSE_SHUT_DOWN);
+            }
+            register(task);
+            mMetrics.onSubmitted(true);
+            mWrites.add(task);
+        }
+        return task;
+    }
+
+    /**
+     * Stops the threads of the executor, e.g. at the end of a test, then waits for them. The
+     * operations already queued still run and complete; no operation can be queued any more.
+     * Does nothing if the executor is already shut down.
+     */
+    public void shutdown() {
+        synchronized (mWrites) {
+            if (mShutdown) {
+                return;
+            }
+            mShutdown = true;
+            mWrites.add(mStop);
+        }
+        mReaders.shutdown();
+        try {
+            mWriter.join();
+            mReaders.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cancels the operations of the specified owner, e.g. when an activity is destroyed: its
+     * pending reads are dropped and none of its callbacks are called any more. Its writes still
+     * run.
+     * @param owner The owner of the operations.
+     */
+    public void cancelAll(final Object owner) {
+        final Set<Task<?>> tasks;
+        synchronized (mTasksByOwner) {
+            tasks = mTasksByOwner.remove(owner);
+        }
+        if (tasks == null) {
+            return;
+        }
+        for (final Task<?> task : tasks) {
+            task.mCallback = null;
+            if (!task.mWrite) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Gets a snapshot of the queue depths and latencies of the executor.
+     * @return The metrics.
+     */
+    public Metrics.Snapshot getMetrics() {
+        return mMetrics.snapshot();
+    }
+
+    private void register(final Task<?> task) {
+        synchronized (mTasksByOwner) {
+            Set<Task<?>> tasks = mTasksByOwner.get(task.mOwner);
+            if (tasks == null) {
+                tasks = new HashSet<>();
+                mTasksByOwner.put(task.mOwner, tasks);
+            }
+            tasks.add(task);
+        }
+    }
+
+    private void unregister(final Task<?> task) {
+        synchronized (mTasksByOwner) {
+            final Set<Task<?>> tasks = mTasksByOwner.get(task.mOwner);
+            if (tasks != null && tasks.remove(task) && tasks.isEmpty()) {
+                mTasksByOwner.remove(task.mOwner);
+            }
+        }
+    }
+
+    /**
+     * The loop of the writer thread: waits for a write, then runs it with all the writes queued
+     * meanwhile, until {@link #shutdown()} is called. An interruption does not stop it: the writes
+     * already queued would never complete.
+     */
+    private void runWrites() {
+        final List<Task<?>> batch = new ArrayList<>();
+        boolean stopped = false;
+        while (!stopped) {
+            try {
+                batch.add(mWrites.take());
+            } catch (final InterruptedException exc) {
+                Log.w(TAG, "Writer thread interrupted before the shutdown");
+                continue;
+            }
+            mWrites.drainTo(batch, MAX_BATCH_SIZE - 1);
+            // Nothing is queued after the stop marker
+            stopped = batch.remove(mStop);
+            if (!batch.isEmpty()) {
+                runBatch(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Runs a batch of writes in a single transaction, then completes their tasks. If the
+     * transaction fails, each write is run again on its own, so that a failing write does not
+     * fail the others: the rollback gave their objects back the state they had before.
+     */
+    private void runBatch(final List<Task<?>> batch) {
+        final long start = System.nanoTime();
+        final Throwable[] failures = new Throwable[batch.size()];
+        final Throwable failure = runInTransaction(batch);
+        if (failure != null && batch.size() > 1) {
+            for (int i = 0; i < failures.length; i++) {
+                failures[i] = runInTransaction(Collections.<Task<?>>singletonList(batch.get(i)));
+            }
+        } else {
+            Arrays.fill(failures, failure);
+        }
+        mMetrics.onBatch(System.nanoTime() - start);
+        for (int i = 0; i < failures.length; i++) {
+            batch.get(i).complete(failures[i]);
+        }
+    }
+
+    /**
+     * Runs writes in a single transaction. Every error is caught, so that the writer thread
+     * survives it and the tasks can fail with it.
+     * @return The error that rolled the transaction back, or <code>null</code> if it was committed.
+     */
+    private Throwable runInTransaction(final List<Task<?>> tasks) {
+        try {
+            final SQLiteDatabase db = mHelper.getWritableDatabase();
+            boolean successful = false;
+            boolean committed = false;
+            db.beginTransaction();
+            try {
+                for (final Task<?> task : tasks) {
+                    if (!task.isCancelled()) {
+                        task.execute(mHelper);
+                    }
+                }
+                db.setTransactionSuccessful();
+                successful = true;
+            } finally {
+                // The changes of all the writes are published as one event per table
+                committed = AbstractDB.endTransaction(db, successful);
+            }
+            // A write may have caught the failure of one of its nested transactions
+            return committed ? null : new IllegalStateException(EXC_CAUSE_ROLLED_BACK);
+        } catch (final Throwable exc) {
+            return exc;
+        }
+    }
+
+    /**
+     * An operation submitted to the executor, which can be waited for or cancelled.
+     * A write completes only once its transaction is committed.
+     * @param <T> The type of the result.
+     */
+    public final class Task<T> extends FutureTask<T> {
+
+        private final Object mOwner;
+        private final Operation<T> mOperation;
+        private final boolean mWrite;
+        private final long mSubmitTime = System.nanoTime();
+        /** Set to <code>null</code> when the owner cancels its operations. */
+        private volatile Callback<? super T> mCallback;
+        /** The result of the write, kept until its transaction is committed. */
+        private T mResult;
+
+        private Task(final Object owner, final Operation<T> operation, final Callback<? super T> callback,
+                     final boolean write) {
+            super(new Callable<T>() {
+                @Override
+                public T call() {
+                    return operation.execute(mHelper);
+                }
+            });
+            mOwner = owner;
+            mOperation = operation;
+            mCallback = callback;
+            mWrite = write;
+        }
+
+        /**
+         * Runs the write in the transaction of its batch.
+         */
+        private void execute(final SQLiteOpenHelper helper) {
+            mResult = mOperation.execute(helper);
+        }
+
+        /**
+         * Completes the write once its transaction has ended.
+         * @param failure The error that rolled the transaction back, or <code>null</code>.
+         */
+        private void complete(final Throwable failure) {
+            if (failure == null) {
+                set(mResult);
+            } else {
+                setException(failure);
+            }
+            mResult = null;
+        }
+
+        /**
+         * Records the latency, then posts the result to the callback, if any.
+         */
+        @Override
+        protected void done() {
+            unregister(this);
+            mMetrics.onCompleted(mWrite, System.nanoTime() - mSubmitTime);
+            if (isCancelled() || mCallback == null) {
+                return;
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver();
+                }
+            });
+        }
+
+        /**
+         * Calls the callback on the main thread, unless the owner cancelled its operations meanwhile.
+         */
+        private void deliver() {
+            final Callback<? super T> callback = mCallback;
+            if (callback == null) {
+                return;
+            }
+            final T result;
+            try {
+                result = get();
+            } catch (final ExecutionException exc) {
+                callback.onError(exc.getCause());
+                return;
+            } catch (final InterruptedException exc) {
+                // Cannot happen, the task is done
+                callback.onError(exc);
+                return;
+            }
+            callback.onResult(result);
+        }
+    }
+
+    /**
+     * Queue depths and latencies of the executor, updated as operations are submitted and completed.
+     */
+    public static class Metrics {
+
+        private int mPendingReads;
+        private int mPendingWrites;
+        private int mMaxPendingWrites;
+        private long mReads;
+        private long mWrites;
+        private long mBatches;
+        private long mReadLatencyNanos;
+        private long mMaxReadLatencyNanos;
+        private long mWriteLatencyNanos;
+        private long mMaxWriteLatencyNanos;
+        private long mBatchNanos;
+
+        private synchronized void onSubmitted(final boolean write) {
+            if (write) {
+                mPendingWrites++;
+                mMaxPendingWrites = Math.max(mMaxPendingWrites, mPendingWrites);
+            } else {
+                mPendingReads++;
+            }
+        }
+
+        private synchronized void onCompleted(final boolean write, final long latencyNanos) {
+            if (write) {
+                mPendingWrites--;
+                mWrites++;
+                mWriteLatencyNanos += latencyNanos;
+                mMaxWriteLatencyNanos = Math.max(mMaxWriteLatencyNanos, latencyNanos);
+            } else {
+                mPendingReads--;
+                mReads++;
+                mReadLatencyNanos += latencyNanos;
+                mMaxReadLatencyNanos = Math.max(mMaxReadLatencyNanos, latencyNanos);
+            }
+        }
+
+        private synchronized void onBatch(final long durationNanos) {
+            mBatches++;
+            mBatchNanos += durationNanos;
+        }
+
+        private synchronized Snapshot snapshot() {
+            final Snapshot snapshot = new Snapshot();
+            snapshot.pendingReads = mPendingReads;
+            snapshot.pendingWrites = mPendingWrites;
+            snapshot.maxPendingWrites = mMaxPendingWrites;
+            snapshot.reads = mReads;
+            snapshot.writes = mWrites;
+            snapshot.batches = mBatches;
+            snapshot.averageReadLatencyMillis = average(mReadLatencyNanos, mReads);
+            snapshot.maxReadLatencyMillis = mMaxReadLatencyNanos / 1e6;
+            snapshot.averageWriteLatencyMillis = average(mWriteLatencyNanos, mWrites);
+            snapshot.maxWriteLatencyMillis = mMaxWriteLatencyNanos / 1e6;
+            snapshot.averageBatchMillis = average(mBatchNanos, mBatches);
+            return snapshot;
+        }
+
+        private static double average(final long totalNanos, final long count) {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        /**
+         * The metrics at one point in time. Latencies run from submission to completion.
+         */
+        public static class Snapshot {
+            public int pendingReads;
+            public int pendingWrites;
+            /** The deepest the write queue has been. */
+            public int maxPendingWrites;
+            public long reads;
+            public long writes;
+            /** The number of transactions the writes were merged into. */
+            public long batches;
+            public double averageReadLatencyMillis;
+            public double maxReadLatencyMillis;
+            public double averageWriteLatencyMillis;
+            public double maxWriteLatencyMillis;
+            public double averageBatchMillis;
+
+            @Override
+            public String toString() {
+                return String.format("reads: %d (%d pending, %.2f ms avg, %.2f ms max), "
+                                + "writes: %d in %d transactions (%d pending, %d max, %.2f ms avg, %.2f ms max)",
+                        reads, pendingReads, averageReadLatencyMillis, maxReadLatencyMillis,
+                        writes, batches, pendingWrites, maxPendingWrites, averageWriteLatencyMillis,
+                        maxWriteLatencyMillis);
+            }
+        }
+    }
+
+    /**
+     * Creates the daemon threads of the executor, with a background priority so that they do
+     * not compete with the main thread.
+     */
+    private static class BackgroundThreadFactory implements ThreadFactory {
+
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        BackgroundThreadFactory(final String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, mName + "-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package fr.lille.bour.armand.waterryday.models.database;
 
+import android.annotation.TargetApi;
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 /**
  * Main class to use database.
@@ -11,27 +15,220 @@ import android.database.sqlite.SQLiteOpenHelper;
  */
 public class DatabaseHelper extends SQLiteOpenHelper {
 
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 6;
     private static final String DATABASE_NAME = "waterryday.db";
 
+    /** The table of the state of the database itself, as key-value pairs. */
+    private static final String METADATA_TABLE_NAME = "metadata";
+    /** Present from the creation of the database until it is seeded, see {@link #seedIfCreated()}. */
+    private static final String KEY_SEED_PENDING = "seedPending";
+
     private static final String REQ_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS %s (_id INTEGER PRIMARY KEY %s)";
-    private static final String REQ_DROP_TABLE = "DROP TABLE IF EXISTS %s";
+    /** Creates the metadata table, also used for version 6. */
+    private static final String REQ_CREATE_METADATA = String.format(
+            "CREATE TABLE IF NOT EXISTS %s (key TEXT PRIMARY KEY, value TEXT)", METADATA_TABLE_NAME);
+    private static final String WHERE_KEY_IS = "key = ?";
+    private static final String REQ_SYNCHRONOUS = "PRAGMA synchronous = %s";
+    private static final String REQ_CACHE_SIZE = "PRAGMA cache_size = %d";
+
+    /** The page cache size of the writer connection, in pages. */
+    private static final int CACHE_SIZE_PAGES = 2000;
+
+    /**
+     * The journal modes the database can be opened with.
+     */
+    public enum JournalMode {
+        /**
+         * Rollback journal, the SQLite default: readers and the writer block each other.
+         * Every commit is synced to disk.
+         */
+        ROLLBACK("FULL"),
+        /**
+         * Write-ahead logging: readers keep running on their own connections while the writer
+         * commits. Commits are only synced at checkpoints, which cannot corrupt the database.
+         */
+        WAL("NORMAL");
+
+        /** The value of <code>PRAGMA synchronous</code> for that mode. */
+        private final String mSynchronous;
+
+        JournalMode(final String synchronous) {
+            mSynchronous = synchronous;
+        }
+    }
+
+    private static DatabaseHelper sInstance;
+
+    /** The journal mode the database is opened with. */
+    private final JournalMode mJournalMode;
+
+    /**
+     * Gets the helper of the application database, shared by all the components so that they
+     * use the same connections and see each other's writes.
+     * @param context A context of the application.
+     * @return The helper.
+     */
+    public static synchronized DatabaseHelper getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new DatabaseHelper(context.getApplicationContext());
+        }
+        return sInstance;
+    }
 
     public DatabaseHelper(final Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, JournalMode.WAL);
+    }
+
+    /**
+     * Creates a helper on a database other than the application one, e.g. for benchmarks.
+     * @param context The context used to open the database.
+     * @param name The name of the database file.
+     * @param journalMode The journal mode to open the database with.
+     */
+    public DatabaseHelper(final Context context, final String name, final JournalMode journalMode) {
+        super(context, name, null, DATABASE_VERSION);
+        mJournalMode = journalMode;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(journalMode == JournalMode.WAL);
+        }
+    }
+
+    /**
+     * Gets the journal mode the database is opened with.
+     * @return The journal mode.
+     */
+    public JournalMode getJournalMode() {
+        return mJournalMode;
+    }
+
+    /**
+     * Configures the connection before it is created or upgraded.
+     */
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void onConfigure(final SQLiteDatabase db) {
+        super.onConfigure(db);
+        configure(db);
+    }
+
+    /**
+     * Configures the connection on versions without {@link #onConfigure(SQLiteDatabase)}.
+     */
+    @Override
+    public void onOpen(final SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            if (mJournalMode == JournalMode.WAL) {
+                db.enableWriteAheadLogging();
+            }
+            configure(db);
+        }
+    }
+
+    /**
+     * Applies the synchronous mode and page cache size matching {@link #mJournalMode}.
+     * @param db The database to configure.
+     */
+    private void configure(final SQLiteDatabase db) {
+        db.execSQL(String.format(REQ_SYNCHRONOUS, mJournalMode.mSynchronous));
+        db.execSQL(String.format(REQ_CACHE_SIZE, CACHE_SIZE_PAGES));
     }
 
     @Override
     public void onCreate(final SQLiteDatabase db) {
         final String reqPlants = String.format(REQ_CREATE_TABLE, PlantDB.TABLE_NAME, PlantDB.TABLE_FIELDS);
         db.execSQL(reqPlants);
+        for (final String req : PlantDB.REQ_CREATE_INDEXES) {
+            db.execSQL(req);
+        }
+        db.execSQL(PlantDB.REQ_CREATE_SEARCH);
+        for (final String req : WateringEventDB.REQ_CREATE_TABLES) {
+            db.execSQL(req);
+        }
+        db.execSQL(REQ_CREATE_METADATA);
+        // The marker is stored with the tables, so that it survives the death of the process
+        final ContentValues marker = new ContentValues();
+        marker.put("key", KEY_SEED_PENDING);
+        db.insert(METADATA_TABLE_NAME, null, marker);
+    }
+
+    /**
+     * Fills the database with the sample plants if it has not been seeded since its creation,
+     * i.e. on the first launch after the installation, whichever component created it. Nothing
+     * is inserted if plants were written meanwhile, e.g. through the provider. Does nothing on
+     * the next calls.
+     * @return The number of plants inserted.
+     */
+    public int seedIfCreated() {
+        // Opening the database creates it if needed
+        final SQLiteDatabase db = getWritableDatabase();
+        final String[] args = { KEY_SEED_PENDING };
+        if (DatabaseUtils.queryNumEntries(db, METADATA_TABLE_NAME, WHERE_KEY_IS, args) == 0) {
+            return 0;
+        }
+        int inserted = 0;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            if (db.delete(METADATA_TABLE_NAME, WHERE_KEY_IS, args) == 1
+                    && DatabaseUtils.queryNumEntries(db, PlantDB.TABLE_NAME) == 0) {
+                inserted = PlantDB.getInstance().fillWithValues(this);
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            AbstractDB.endTransaction(db, successful);
+        }
+        return inserted;
     }
 
+    /**
+     * Replaces all the plants and their watering history with the sample plants, atomically.
+     * @return The number of plants inserted.
+     */
+    public int resetSampleData() {
+        final SQLiteDatabase db = getWritableDatabase();
+        final int inserted;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            db.delete(METADATA_TABLE_NAME, WHERE_KEY_IS, new String[] { KEY_SEED_PENDING });
+            WateringEventDB.getInstance().cleanTable(this);
+            PlantDB.getInstance().cleanTable(this);
+            inserted = PlantDB.getInstance().fillWithValues(this);
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            // Publishes the changes of the whole reset at once
+            AbstractDB.endTransaction(db, successful);
+        }
+        return inserted;
+    }
+
+    /**
+     * Upgrades the database one version at a time, keeping the existing rows.
+     */
     @Override
-    public void onUpgrade(final SQLiteDatabase db, final int i, final int i1) {
-        final String reqPLants = String.format(REQ_DROP_TABLE, PlantDB.TABLE_NAME);
-        db.execSQL(reqPLants);
+    public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            PlantDB.upgrade(db, version);
+            WateringEventDB.upgrade(db, version);
+            if (version == 6) {
+                // The existing databases have been seeded already
+                db.execSQL(REQ_CREATE_METADATA);
+            }
+        }
+        PlantDB.getInstance().invalidateStatements();
+        WateringEventDB.getInstance().invalidateStatements();
+    }
 
-        onCreate(db);
+    /**
+     * Closes the database, and invalidates the statements compiled against it.
+     */
+    @Override
+    public synchronized void close() {
+        PlantDB.getInstance().invalidateStatements();
+        WateringEventDB.getInstance().invalidateStatements();
+        super.close();
     }
 }
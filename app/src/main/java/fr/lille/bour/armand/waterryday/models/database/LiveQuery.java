@@ -0,0 +1,161 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * A query kept up to date with the changes of a table.
+ * Each committed change that {@link #isAffectedBy(ChangeEvent) affects} the query has it evaluated
+ * again on a reader thread of the {@link DatabaseExecutor}, given the changes so that only the
+ * affected rows are read; the result is delivered on the main thread.
+ * The changes committed while an evaluation runs are merged, and evaluated together right after it.
+ *
+ * @param <T> The type of the result.
+ * @author Armand (Tydax) BOUR
+ */
+
+public abstract class LiveQuery<T> implements ChangeEvent.Listener {
+
+    private final DatabaseExecutor mExecutor;
+    private final AbstractDB<?> mTable;
+
+    /** The callback of the results, or <code>null</code> if the query is stopped. */
+    private volatile DatabaseExecutor.Callback<? super T> mCallback;
+
+    /** Guards the fields below, shared by the writer, the readers and the main thread. */
+    private final Object mLock = new Object();
+    /** The changes not evaluated yet, or <code>null</code> if there is none. */
+    private ChangeEvent.Builder mPendingChanges;
+    /** Whether a full evaluation was requested, see {@link #refresh()}. */
+    private boolean mPendingRefresh;
+    /** Whether an evaluation is queued or running. */
+    private boolean mEvaluating;
+
+    /**
+     * Creates a query on the changes of a table.
+     * @param executor The executor running the evaluations.
+     * @param table The table whose changes are observed.
+     */
+    protected LiveQuery(final DatabaseExecutor executor, final AbstractDB<?> table) {
+        mExecutor = executor;
+        mTable = table;
+    }
+
+    /**
+     * Evaluates the query on a reader thread.
+     * @param helper The database helper to use.
+     * @param changes The changes since the last evaluation, or <code>null</code> if the query must be
+     *                evaluated from scratch.
+     * @return The result, delivered on the main thread.
+     */
+    protected abstract T evaluate(SQLiteOpenHelper helper, ChangeEvent changes);
+
+    /**
+     * Tells whether a change can affect the result, on the thread that committed it.
+     * All the changes do by default.
+     * @param event The change.
+     * @return <code>true</code> if the query must be evaluated again, <code>false</code> otherwise.
+     */
+    protected boolean isAffectedBy(final ChangeEvent event) {
+        return true;
+    }
+
+    /**
+     * Starts delivering the results of the evaluations triggered by the next changes.
+     * Nothing is evaluated until a change happens, or {@link #refresh()} is called.
+     * @param callback The callback receiving the results on the main thread.
+     */
+    public void observe(final DatabaseExecutor.Callback<? super T> callback) {
+        mCallback = callback;
+        mTable.addChangeListener(this);
+    }
+
+    /**
+     * Stops delivering results: the evaluations in progress are dropped.
+     */
+    public void stop() {
+        mTable.removeChangeListener(this);
+        mCallback = null;
+        mExecutor.cancelAll(this);
+        synchronized (mLock) {
+            mPendingChanges = null;
+            mPendingRefresh = false;
+            mEvaluating = false;
+        }
+    }
+
+    /**
+     * Evaluates the query from scratch, e.g. to get its first result.
+     */
+    public void refresh() {
+        synchronized (mLock) {
+            mPendingRefresh = true;
+            scheduleLocked();
+        }
+    }
+
+    @Override
+    public void onChanged(final ChangeEvent event) {
+        if (mCallback == null || !isAffectedBy(event)) {
+            return;
+        }
+        synchronized (mLock) {
+            if (mPendingChanges == null) {
+                mPendingChanges = new ChangeEvent.Builder(mTable);
+            }
+            mPendingChanges.merge(event);
+            scheduleLocked();
+        }
+    }
+
+    /**
+     * Submits an evaluation, unless one is already queued or running.
+     */
+    private void scheduleLocked() {
+        if (mEvaluating) {
+            return;
+        }
+        mEvaluating = true;
+        mExecutor.read(this, new DatabaseExecutor.Operation<T>() {
+            @Override
+            public T execute(final SQLiteOpenHelper helper) {
+                final ChangeEvent changes;
+                synchronized (mLock) {
+                    changes = mPendingRefresh || mPendingChanges == null ? null : mPendingChanges.build();
+                    mPendingChanges = null;
+                    mPendingRefresh = false;
+                }
+                return evaluate(helper, changes);
+            }
+        }, new DatabaseExecutor.Callback<T>() {
+            @Override
+            public void onResult(final T result) {
+                final DatabaseExecutor.Callback<? super T> callback = mCallback;
+                if (callback != null) {
+                    callback.onResult(result);
+                }
+                evaluated();
+            }
+
+            @Override
+            public void onError(final Throwable error) {
+                final DatabaseExecutor.Callback<? super T> callback = mCallback;
+                if (callback != null) {
+                    callback.onError(error);
+                }
+                evaluated();
+            }
+        });
+    }
+
+    /**
+     * Submits the next evaluation if changes came during the last one.
+     */
+    private void evaluated() {
+        synchronized (mLock) {
+            mEvaluating = false;
+            if (mPendingRefresh || mPendingChanges != null) {
+                scheduleLocked();
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import fr.lille.bour.armand.waterryday.models.DBObject;
+
+/**
+ * Iterator over all the objects of a table, fetched one page at a time with keyset pagination
+ * on the id. Only the cursor of the current page is open; it is closed as soon as the page has
+ * been read, or when the iterator is closed.
+ * The objects already cached are returned as is, but the others are not cached, so that a full
+ * scan does not evict the objects in use.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class PageIterator<K extends DBObject> implements Iterator<K>, Closeable {
+
+    private static final String EXC_CAUSE_PAGE_SIZE = "The page size must be at least 1.";
+    private static final String EXC_CAUSE_NO_NEXT = "All the objects of the table have been read.";
+    private static final String EXC_CAUSE_READ_ONLY = "Objects cannot be removed through the iterator.";
+
+    private final AbstractDB<K> mTable;
+    private final SQLiteOpenHelper mHelper;
+    private final int mPageSize;
+
+    /** The cursor of the current page, or <code>null</code> once the last page has been read. */
+    private Cursor mCursor;
+    /** The number of rows read from the current page. */
+    private int mRowsRead;
+    /** The id of the last object returned. */
+    private long mLastId = -1;
+    /** The version of the cache when the current page was queried. */
+    private long mCacheVersion;
+
+    PageIterator(final AbstractDB<K> table, final SQLiteOpenHelper helper, final int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException(EXC_CAUSE_PAGE_SIZE);
+        }
+        mTable = table;
+        mHelper = helper;
+        mPageSize = pageSize;
+        queryNextPage();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mCursor == null) {
+            return false;
+        }
+        if (mCursor.getPosition() + 1 < mCursor.getCount()) {
+            return true;
+        }
+
+        // Current page is exhausted: a full page means there may be another one
+        final boolean fullPage = mRowsRead == mPageSize;
+        mCursor.close();
+        mCursor = null;
+        if (fullPage) {
+            queryNextPage();
+            mRowsRead = 0;
+            return hasNext();
+        }
+        return false;
+    }
+
+    @Override
+    public K next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException(EXC_CAUSE_NO_NEXT);
+        }
+        mCursor.moveToNext();
+        mRowsRead++;
+        final K object = mTable.share(mTable.convertCursorToObject(mCursor), mCacheVersion, false);
+        mLastId = object.getId();
+        return object;
+    }
+
+    /**
+     * Queries the page following the last object returned.
+     */
+    private void queryNextPage() {
+        mCacheVersion = mTable.beginRead(mHelper.getReadableDatabase());
+        mCursor = mTable.queryPage(mHelper, mLastId, mPageSize);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException(EXC_CAUSE_READ_ONLY);
+    }
+
+    /**
+     * Closes the cursor of the current page, if any.
+     */
+    @Override
+    public void close() {
+        if (mCursor != null) {
+            mCursor.close();
+            mCursor = null;
+        }
+    }
+}
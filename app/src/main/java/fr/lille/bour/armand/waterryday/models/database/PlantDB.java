@@ -2,15 +2,26 @@ package fr.lille.bour.armand.waterryday.models.database;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
 
-import org.joda.time.LocalDate;
-import org.joda.time.format.DateTimeFormat;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import fr.lille.bour.armand.waterryday.models.EpochDay;
 import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.SearchText;
+import fr.lille.bour.armand.waterryday.models.WateringEvent;
+import fr.lille.bour.armand.waterryday.models.WateringForecast;
 
 /**
  * Single class to access the {@link Plant} table.
@@ -18,7 +29,7 @@ import fr.lille.bour.armand.waterryday.models.Plant;
  * @author Armand (Tydax) BOUR
  */
 
-public class PlantDB extends AbstractDB<Plant> {
+public class PlantDB extends AbstractMutableDB<Plant> {
 
     /** The fields of the table. */
     protected static class PlantFields implements BaseColumns {
@@ -27,7 +38,15 @@ public class PlantDB extends AbstractDB<Plant> {
         public static final String FIELD_SPECIE = "specie";
         public static final String FIELD_LOCATION = "location";
         public static final String FIELD_WATERINGFREQUENCY = "wateringFrequency";
-        public static final String FIELD_LASTWATEREDDATE = "lastWateredData";
+        public static final String FIELD_LASTWATEREDDAY = "lastWateredDay";
+        public static final String FIELD_NEXTWATERINGDAY = "nextWateringDay";
+
+        public static final int INDEX_NAME = 1;
+        public static final int INDEX_SPECIE = 2;
+        public static final int INDEX_LOCATION = 3;
+        public static final int INDEX_WATERINGFREQUENCY = 4;
+        public static final int INDEX_LASTWATEREDDAY = 5;
+        public static final int INDEX_NEXTWATERINGDAY = 6;
 
         public static final String[] ALL = {
                 _ID,
@@ -35,7 +54,8 @@ public class PlantDB extends AbstractDB<Plant> {
                 FIELD_SPECIE,
                 FIELD_LOCATION,
                 FIELD_WATERINGFREQUENCY,
-                FIELD_LASTWATEREDDATE
+                FIELD_LASTWATEREDDAY,
+                FIELD_NEXTWATERINGDAY
         };
     }
 
@@ -43,14 +63,121 @@ public class PlantDB extends AbstractDB<Plant> {
     /** The name of the table in the database. */
     public static final String TABLE_NAME = "plants";
     /** The query to insert for the field. */
-    public static final String TABLE_FIELDS = String.format(", %s VARCHAR(100), %s VARCHAR(500), %s VARCHAR(200), %s INTEGER, %s VARCHAR(12)",
+    public static final String TABLE_FIELDS = String.format(", %s VARCHAR(100), %s VARCHAR(500), %s VARCHAR(200), %s INTEGER, %s INTEGER, %s INTEGER",
             PlantFields.FIELD_NAME,
             PlantFields.FIELD_SPECIE,
             PlantFields.FIELD_LOCATION,
             PlantFields.FIELD_WATERINGFREQUENCY,
-            PlantFields.FIELD_LASTWATEREDDATE);
+            PlantFields.FIELD_LASTWATEREDDAY,
+            PlantFields.FIELD_NEXTWATERINGDAY);
+    /** The queries creating the indexes of the table. */
+    public static final String[] REQ_CREATE_INDEXES = {
+            "CREATE INDEX IF NOT EXISTS plants_nextWateringDay ON plants (nextWateringDay)"
+    };
+
+    /**
+     * The name of the full-text table holding the name, specie and location of each plant, folded
+     * by {@link SearchText#fold(String)}, with the id of the plant as docid.
+     * The texts are folded before being written since the accent-insensitive tokenizer of SQLite
+     * is not available on all the supported versions.
+     */
+    public static final String SEARCH_TABLE_NAME = "plants_search";
+    /** The query creating the full-text table. */
+    public static final String REQ_CREATE_SEARCH = "CREATE VIRTUAL TABLE plants_search USING fts4(name, specie, location)";
+
+    /**
+     * Version 2 stores the last watered date as an epoch day instead of a "yyyy/MM/dd" string.
+     * The table is rebuilt and the dates are converted by SQLite itself.
+     */
+    private static final String[] REQ_UPGRADE_V2 = {
+            "CREATE TABLE plants_v2 (_id INTEGER PRIMARY KEY, name VARCHAR(100), specie VARCHAR(500), "
+                    + "location VARCHAR(200), wateringFrequency INTEGER, lastWateredDay INTEGER)",
+            "INSERT INTO plants_v2 (_id, name, specie, location, wateringFrequency, lastWateredDay) "
+                    + "SELECT _id, name, specie, location, wateringFrequency, "
+                    + "CAST(julianday(replace(lastWateredData, '/', '-')) - julianday('1970-01-01') AS INTEGER) "
+                    + "FROM plants",
+            "DROP TABLE plants",
+            "ALTER TABLE plants_v2 RENAME TO plants"
+    };
+    /** Version 3 adds the indexed next watering day, derived from the last watered day. */
+    private static final String[] REQ_UPGRADE_V3 = {
+            "ALTER TABLE plants ADD COLUMN nextWateringDay INTEGER",
+            "UPDATE plants SET nextWateringDay = lastWateredDay + wateringFrequency",
+            "CREATE INDEX IF NOT EXISTS plants_nextWateringDay ON plants (nextWateringDay)"
+    };
+    /** Version 4 adds the full-text table, filled by {@link #rebuildSearchIndex(SQLiteDatabase)}. */
+    private static final String[] REQ_UPGRADE_V4 = {
+            REQ_CREATE_SEARCH
+    };
+
+    /** The parameters of the queries writing the full-text table: name, specie, location, then id. */
+    private static final String REQ_SEARCH_INSERT = "INSERT INTO plants_search (name, specie, location, docid) VALUES (?, ?, ?, ?)";
+    private static final String REQ_SEARCH_UPDATE = "UPDATE plants_search SET name = ?, specie = ?, location = ? WHERE docid = ?";
+    private static final String REQ_SEARCH_DELETE = "DELETE FROM plants_search WHERE docid = ?";
+    /** The columns of the table mirrored in the full-text table. */
+    private static final int SEARCH_COLUMNS = 1 << PlantFields.INDEX_NAME | 1 << PlantFields.INDEX_SPECIE
+            | 1 << PlantFields.INDEX_LOCATION;
+    /**
+     * Finds the plants matching the full-text query <code>?1</code>. Plants whose name starts with
+     * the pattern <code>?2</code> come first, then those with a word of their name matching
+     * <code>?3</code>, then those whose specie starts with <code>?2</code>; ties are ordered by name.
+     * At most <code>?4</code> plants are returned.
+     */
+    private static final String REQ_SEARCH = "SELECT plants._id, plants.name, plants.specie, plants.location, "
+            + "plants.wateringFrequency, plants.lastWateredDay, plants.nextWateringDay "
+            + "FROM plants_search JOIN plants ON plants._id = plants_search.docid "
+            + "WHERE plants_search MATCH ?1 "
+            + "ORDER BY CASE WHEN plants_search.name LIKE ?2 THEN 0 WHEN plants_search.name LIKE ?3 THEN 1 "
+            + "WHEN plants_search.specie LIKE ?2 THEN 2 ELSE 3 END, plants_search.name "
+            + "LIMIT ?4";
+    private static final String[] SEARCH_SOURCE_FIELDS = {
+            PlantFields._ID,
+            PlantFields.FIELD_NAME,
+            PlantFields.FIELD_SPECIE,
+            PlantFields.FIELD_LOCATION
+    };
+
+    /**
+     * Waters the plants matching a condition on the day bound as first parameter; plants already
+     * watered that day are left untouched. The parameters of the condition follow.
+     */
+    private static final String REQ_WATER = String.format("UPDATE %s SET %s = ?1, %s = ?1 + %s WHERE %s <> ?1 AND (%%s)",
+            TABLE_NAME, PlantFields.FIELD_LASTWATEREDDAY, PlantFields.FIELD_NEXTWATERINGDAY,
+            PlantFields.FIELD_WATERINGFREQUENCY, PlantFields.FIELD_LASTWATEREDDAY);
+    /**
+     * Appends to the watering history the plants that {@link #REQ_WATER} waters, with the same
+     * parameters. Must run before it, as the plants already watered that day are skipped.
+     */
+    private static final String REQ_LOG_WATER = String.format("INSERT INTO %s (plantId, day, location) SELECT %s, ?1, %s FROM %s WHERE %s <> ?1 AND (%%s)",
+            WateringEventDB.TABLE_NAME, PlantFields._ID, PlantFields.FIELD_LOCATION, TABLE_NAME,
+            PlantFields.FIELD_LASTWATEREDDAY);
+    private static final String WHERE_LOCATION_IS = String.format("%s IS ?", PlantFields.FIELD_LOCATION);
+    private static final String WHERE_SPECIE_IS = String.format("%s IS ?", PlantFields.FIELD_SPECIE);
+    private static final String WHERE_ID_IN = String.format("%s IN (%%s)", PlantFields._ID);
+    private static final String WHERE_ID_BETWEEN = String.format("%s > ? AND %s <= ?", PlantFields._ID, PlantFields._ID);
+    /** The maximum number of ids bound to one statement, below the SQLite limit of 999 parameters. */
+    private static final int MAX_IDS_PER_STATEMENT = 500;
+    /** The number of plants read at once when building a forecast. */
+    private static final int FORECAST_PAGE_SIZE = 500;
+
+    private static final String WHERE_DUE_BY = String.format("%s <= ?", PlantFields.FIELD_NEXTWATERINGDAY);
+    private static final String REQ_COUNT_THIRSTY = String.format("SELECT COUNT(*) FROM %s WHERE %s < ?",
+            TABLE_NAME, PlantFields.FIELD_NEXTWATERINGDAY);
+    private static final String REQ_COUNT_OKAY = String.format("SELECT COUNT(*) FROM %s WHERE %s BETWEEN ? AND ? AND %s <> ?",
+            TABLE_NAME, PlantFields.FIELD_NEXTWATERINGDAY, PlantFields.FIELD_LASTWATEREDDAY);
 
-    public static final String DATE_PATTERN = "yyyy/MM/dd";
+    /** The columns readable by {@link #query(SQLiteOpenHelper, String[], String, String[], String, long, int)}. */
+    private static final Map<String, String> PROJECTION_MAP = new HashMap<>();
+    static {
+        for (final String field : PlantFields.ALL) {
+            PROJECTION_MAP.put(field, field);
+        }
+    }
+
+    private static final String EXC_CAUSE_UNKNOWN_FIELD = "Unknown field index: %d";
+    private static final String EXC_CAUSE_UNKNOWN_COLUMN = "Unknown column: %s";
+    private static final String EXC_CAUSE_READ_ONLY_COLUMN = "Read-only column: %s";
+    private static final String EXC_CAUSE_MISSING_COLUMN = "Missing column: %s";
 
     private static final PlantDB INSTANCE = new PlantDB();
     public static final String WHERE_CLAUSE = "%s = ?";
@@ -64,6 +191,39 @@ public class PlantDB extends AbstractDB<Plant> {
         return INSTANCE;
     }
 
+    /**
+     * Gets the queries upgrading the table to the specified database version.
+     * @param version The version to upgrade to, from the previous one.
+     * @return The queries to execute in order.
+     */
+    public static String[] getUpgradeQueries(final int version) {
+        switch (version) {
+            case 2:
+                return REQ_UPGRADE_V2;
+            case 3:
+                return REQ_UPGRADE_V3;
+            case 4:
+                return REQ_UPGRADE_V4;
+            default:
+                return new String[0];
+        }
+    }
+
+    /**
+     * Upgrades the table to the specified database version: executes the queries of
+     * {@link #getUpgradeQueries(int)}, then fills the new tables that SQLite cannot fill by itself.
+     * @param db The database being upgraded.
+     * @param version The version to upgrade to, from the previous one.
+     */
+    public static void upgrade(final SQLiteDatabase db, final int version) {
+        for (final String req : getUpgradeQueries(version)) {
+            db.execSQL(req);
+        }
+        if (version == 4) {
+            INSTANCE.rebuildSearchIndex(db);
+        }
+    }
+
     /**
      * Gets the table name associated with that class.
      *
@@ -103,13 +263,13 @@ public class PlantDB extends AbstractDB<Plant> {
      */
     @Override
     protected ContentValues convertObjectToContentValues(final Plant plant) {
-        final String lastWateredDateStr = plant.getLastWateredDate().toString(DateTimeFormat.forPattern(DATE_PATTERN));
         final ContentValues values = new ContentValues();
         values.put(PlantFields.FIELD_NAME, plant.getName());
         values.put(PlantFields.FIELD_SPECIE, plant.getSpecie());
         values.put(PlantFields.FIELD_LOCATION, plant.getLocation());
         values.put(PlantFields.FIELD_WATERINGFREQUENCY, plant.getWateringFrequency());
-        values.put(PlantFields.FIELD_LASTWATEREDDATE, lastWateredDateStr);
+        values.put(PlantFields.FIELD_LASTWATEREDDAY, plant.getLastWateredDay());
+        values.put(PlantFields.FIELD_NEXTWATERINGDAY, plant.getNextWateringDay());
         return values;
     }
 
@@ -121,33 +281,653 @@ public class PlantDB extends AbstractDB<Plant> {
      */
     @Override
     protected Plant convertCursorToObject(Cursor cursor) {
-        final int id = cursor.getInt(0);
+        final long id = cursor.getLong(0);
         final String name = cursor.getString(1);
         final String specie = cursor.getString(2);
         final String location = cursor.getString(3);
         final int wateringFrequency = cursor.getInt(4);
-        final String lastWateredDateStr = cursor.getString(5);
+        final int lastWateredDay = cursor.getInt(5);
 
-        // Convert date
-        final String[] fields = lastWateredDateStr.split("/");
-        final int year = Integer.parseInt(fields[0]);
-        final int month = Integer.parseInt(fields[1]);
-        final int day = Integer.parseInt(fields[2]);
-        final LocalDate lastWateredDate = new LocalDate(year, month, day);
+        final Plant plant = new Plant(id, name, specie, location, wateringFrequency, lastWateredDay);
+        plant.clearDirtyFields();
+        return plant;
+    }
 
-        final Plant plant = new Plant(id, name, specie, location, wateringFrequency, lastWateredDate);
+    /**
+     * Binds the value of one field of the plant to a compiled statement.
+     *
+     * @param statement The statement to bind the value to.
+     * @param index The 1-based index of the parameter in the statement.
+     * @param plant The plant holding the value.
+     * @param field The index of the field in {@link PlantFields#ALL}.
+     */
+    @Override
+    protected void bindField(final SQLiteStatement statement, final int index,
+                             final Plant plant, final int field) {
+        switch (field) {
+            case PlantFields.INDEX_NAME:
+                bindString(statement, index, plant.getName());
+                break;
+            case PlantFields.INDEX_SPECIE:
+                bindString(statement, index, plant.getSpecie());
+                break;
+            case PlantFields.INDEX_LOCATION:
+                bindString(statement, index, plant.getLocation());
+                break;
+            case PlantFields.INDEX_WATERINGFREQUENCY:
+                statement.bindLong(index, plant.getWateringFrequency());
+                break;
+            case PlantFields.INDEX_LASTWATEREDDAY:
+                statement.bindLong(index, plant.getLastWateredDay());
+                break;
+            case PlantFields.INDEX_NEXTWATERINGDAY:
+                statement.bindLong(index, plant.getNextWateringDay());
+                break;
+            default:
+                throw new IllegalArgumentException(String.format(EXC_CAUSE_UNKNOWN_FIELD, field));
+        }
+    }
+
+    /**
+     * Gets the columns to write to save the modifications of the plant: the columns of its dirty
+     * fields, plus the next watering day when it derives from one of them.
+     *
+     * @param plant The plant to save.
+     * @return A bit mask of the columns, bit <em>i</em> standing for {@link PlantFields#ALL}[i].
+     */
+    @Override
+    protected int getDirtyColumns(final Plant plant) {
+        final int dirtyFields = plant.getDirtyFields();
+        int columns = 0;
+        if ((dirtyFields & Plant.FIELD_NAME) != 0) {
+            columns |= 1 << PlantFields.INDEX_NAME;
+        }
+        if ((dirtyFields & Plant.FIELD_SPECIE) != 0) {
+            columns |= 1 << PlantFields.INDEX_SPECIE;
+        }
+        if ((dirtyFields & Plant.FIELD_LOCATION) != 0) {
+            columns |= 1 << PlantFields.INDEX_LOCATION;
+        }
+        if ((dirtyFields & Plant.FIELD_WATERINGFREQUENCY) != 0) {
+            columns |= 1 << PlantFields.INDEX_WATERINGFREQUENCY | 1 << PlantFields.INDEX_NEXTWATERINGDAY;
+        }
+        if ((dirtyFields & Plant.FIELD_LASTWATEREDDATE) != 0) {
+            columns |= 1 << PlantFields.INDEX_LASTWATEREDDAY | 1 << PlantFields.INDEX_NEXTWATERINGDAY;
+        }
+        return columns;
+    }
+
+    /**
+     * Adds the plant to the full-text table.
+     */
+    @Override
+    protected void onInserted(final StatementCache statements, final Plant plant) {
+        final SQLiteStatement insert = statements.get(REQ_SEARCH_INSERT);
+        bindSearchRow(insert, plant.getId(), plant.getName(), plant.getSpecie(), plant.getLocation());
+        insert.executeInsert();
+    }
+
+    /**
+     * Updates the plant in the full-text table if one of the mirrored columns was written.
+     * Writing the last watered day, e.g. to correct it, appends nothing to the watering history:
+     * only {@link #water(SQLiteOpenHelper, Plant)} and the bulk waterings do.
+     */
+    @Override
+    protected void onUpdated(final StatementCache statements, final Plant plant, final int columns) {
+        if ((columns & SEARCH_COLUMNS) != 0) {
+            final SQLiteStatement update = statements.get(REQ_SEARCH_UPDATE);
+            bindSearchRow(update, plant.getId(), plant.getName(), plant.getSpecie(), plant.getLocation());
+            update.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Removes the plant from the full-text table.
+     */
+    @Override
+    protected void onDeleted(final StatementCache statements, final long id) {
+        final SQLiteStatement delete = statements.get(REQ_SEARCH_DELETE);
+        delete.bindLong(1, id);
+        delete.executeUpdateDelete();
+    }
+
+    /**
+     * Empties the full-text table.
+     */
+    @Override
+    protected void onCleaned(final SQLiteDatabase db) {
+        db.delete(SEARCH_TABLE_NAME, null, null);
+    }
+
+    /**
+     * Binds the folded texts of a plant, then its id, to a statement writing the full-text table.
+     */
+    private static void bindSearchRow(final SQLiteStatement statement, final long id, final String name,
+                                      final String specie, final String location) {
+        statement.clearBindings();
+        bindString(statement, 1, SearchText.fold(name));
+        bindString(statement, 2, SearchText.fold(specie));
+        bindString(statement, 3, SearchText.fold(location));
+        statement.bindLong(4, id);
+    }
+
+    /**
+     * Binds a string that may be <code>null</code> to a compiled statement.
+     */
+    private static void bindString(final SQLiteStatement statement, final int index, final String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Appends the page of plants following the specified id to a row buffer, without creating
+     * any {@link Plant} object. The rows are copies of the values, so they bypass the cache of
+     * objects; the list follows the writes through the {@link ChangeEvent}s instead.
+     *
+     * @param helper The database helper to use.
+     * @param afterId The id after which the page starts, or <code>-1</code> for the first page.
+     * @param pageSize The maximum number of plants in the page.
+     * @param rows The buffer to append the plants to.
+     * @return The number of plants appended; the page is the last one if it is less than
+     *         <code>pageSize</code>.
+     */
+    public int appendPage(final SQLiteOpenHelper helper, final long afterId, final int pageSize,
+                          final PlantRowBuffer rows) {
+        final Cursor cursor = queryPage(helper, afterId, pageSize);
+        try {
+            return rows.append(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Appends the page of plants following the specified id to a row buffer, stopping at another
+     * id: e.g. to read the loaded plants again while the next page is being loaded.
+     *
+     * @param helper The database helper to use.
+     * @param afterId The id after which the page starts, or <code>-1</code> for the first page.
+     * @param lastId The id of the last plant to read.
+     * @param pageSize The maximum number of plants in the page.
+     * @param rows The buffer to append the plants to.
+     * @return The number of plants appended; the page is the last one if it is less than
+     *         <code>pageSize</code>.
+     */
+    public int appendPage(final SQLiteOpenHelper helper, final long afterId, final long lastId,
+                          final int pageSize, final PlantRowBuffer rows) {
+        final String[] selectArgs = { String.valueOf(afterId), String.valueOf(lastId) };
+        final Cursor cursor = helper.getReadableDatabase().query(TABLE_NAME, PlantFields.ALL, WHERE_ID_BETWEEN,
+                selectArgs, null, null, PlantFields._ID, String.valueOf(pageSize));
+        try {
+            return rows.append(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Gets the plants with the specified ids, ordered by id. The ids are looked up through the
+     * primary key, by batches of at most {@value #MAX_IDS_PER_STATEMENT}.
+     *
+     * @param helper The database helper to use.
+     * @param ids The ids of the plants.
+     * @return The plants found, missing ids being ignored.
+     */
+    public List<Plant> getByIds(final SQLiteOpenHelper helper, final Collection<Long> ids) {
+        final SQLiteDatabase db = helper.getReadableDatabase();
+        final long[] sortedIds = new long[ids.size()];
+        int i = 0;
+        for (final Long id : ids) {
+            sortedIds[i++] = id;
+        }
+        Arrays.sort(sortedIds);
+        final String[] allIds = new String[sortedIds.length];
+        for (i = 0; i < sortedIds.length; i++) {
+            allIds[i] = String.valueOf(sortedIds[i]);
+        }
+
+        final List<Plant> plants = new ArrayList<>(allIds.length);
+        for (int start = 0; start < allIds.length; start += MAX_IDS_PER_STATEMENT) {
+            final int count = Math.min(MAX_IDS_PER_STATEMENT, allIds.length - start);
+            final StringBuilder params = new StringBuilder();
+            for (int j = 0; j < count; j++) {
+                params.append(j == 0 ? "?" : ", ?");
+            }
+            final String[] selectArgs = Arrays.copyOfRange(allIds, start, start + count);
+            final Cursor cursor = db.query(TABLE_NAME, PlantFields.ALL, String.format(WHERE_ID_IN, params),
+                    selectArgs, null, null, PlantFields._ID);
+            plants.addAll(readAll(db, cursor));
+        }
+        return plants;
+    }
+
+    /**
+     * Queries the table on behalf of an external caller. The columns, condition and order come
+     * from the caller and are checked by a strict {@link SQLiteQueryBuilder}: only the columns of
+     * the table can be read.
+     *
+     * @param helper The database helper to use.
+     * @param projection The columns to read, or <code>null</code> for all of them.
+     * @param selection The condition, or <code>null</code> for all the plants.
+     * @param selectionArgs The parameters of the condition.
+     * @param sortOrder The order of the rows, or <code>null</code> to order them by id.
+     * @param afterId Only the plants with a greater id are read, or <code>-1</code> for all of them;
+     *                pages are only consistent when ordered by id.
+     * @param limit The maximum number of rows, or <code>0</code> for no limit.
+     * @return The cursor over the rows, to be closed by the caller.
+     */
+    public Cursor query(final SQLiteOpenHelper helper, final String[] projection, final String selection,
+                        final String[] selectionArgs, final String sortOrder, final long afterId,
+                        final int limit) {
+        final SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(TABLE_NAME);
+        builder.setProjectionMap(PROJECTION_MAP);
+        builder.setStrict(true);
+        if (afterId >= 0) {
+            // A number, nothing to escape
+            builder.appendWhere(PlantFields._ID + " > " + afterId);
+        }
+        return builder.query(helper.getReadableDatabase(), projection == null ? PlantFields.ALL : projection,
+                selection, selectionArgs, null, null, sortOrder == null ? PlantFields._ID : sortOrder,
+                limit > 0 ? String.valueOf(limit) : null);
+    }
+
+    /**
+     * Gets the ids of the plants matching a condition given by an external caller.
+     *
+     * @param helper The database helper to use.
+     * @param selection The condition, or <code>null</code> for all the plants.
+     * @param selectionArgs The parameters of the condition.
+     * @return The ids, in ascending order.
+     */
+    public List<Long> getIds(final SQLiteOpenHelper helper, final String selection,
+                             final String[] selectionArgs) {
+        final Cursor cursor = query(helper, new String[] { PlantFields._ID }, selection, selectionArgs,
+                null, -1, 0);
+        try {
+            final List<Long> ids = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Creates a plant from the values of a row given by an external caller. The last watered day
+     * is today if it is missing.
+     *
+     * @param values The values, by column name.
+     * @return The plant, without id.
+     * @throws IllegalArgumentException If a column is unknown or read-only, or if the watering
+     *                                  frequency is missing or invalid.
+     */
+    public Plant convertContentValuesToObject(final ContentValues values) {
+        if (!values.containsKey(PlantFields.FIELD_WATERINGFREQUENCY)) {
+            throw new IllegalArgumentException(String.format(EXC_CAUSE_MISSING_COLUMN,
+                    PlantFields.FIELD_WATERINGFREQUENCY));
+        }
+        final Plant plant = new Plant(-1, null, null, null, 1, Plant.getCurrentEpochDay());
+        applyContentValues(plant, values);
         return plant;
     }
 
+    /**
+     * Sets the values of a row given by an external caller to a plant, marking the fields dirty.
+     * The id and the next watering day cannot be written, the latter being derived.
+     *
+     * @param plant The plant to modify.
+     * @param values The values, by column name.
+     * @throws IllegalArgumentException If a column is unknown or read-only, or if a value is invalid.
+     */
+    public void applyContentValues(final Plant plant, final ContentValues values) {
+        for (final String column : values.keySet()) {
+            switch (column) {
+                case PlantFields.FIELD_NAME:
+                    plant.setName(values.getAsString(column));
+                    break;
+
+                case PlantFields.FIELD_SPECIE:
+                    plant.setSpecie(values.getAsString(column));
+                    break;
+
+                case PlantFields.FIELD_LOCATION:
+                    plant.setLocation(values.getAsString(column));
+                    break;
+
+                case PlantFields.FIELD_WATERINGFREQUENCY:
+                    plant.setWateringFrequency(getRequiredInt(values, column));
+                    break;
+
+                case PlantFields.FIELD_LASTWATEREDDAY:
+                    plant.setLastWateredDay(getRequiredInt(values, column));
+                    break;
+
+                case PlantFields.FIELD_ID:
+                case PlantFields.FIELD_NEXTWATERINGDAY:
+                    throw new IllegalArgumentException(String.format(EXC_CAUSE_READ_ONLY_COLUMN, column));
+
+                default:
+                    throw new IllegalArgumentException(String.format(EXC_CAUSE_UNKNOWN_COLUMN, column));
+            }
+        }
+    }
+
+    /**
+     * Gets an integer value that cannot be null.
+     * @throws IllegalArgumentException If the value is null or not a number.
+     */
+    private static int getRequiredInt(final ContentValues values, final String column) {
+        final Integer value = values.getAsInteger(column);
+        if (value == null) {
+            throw new IllegalArgumentException(String.format(EXC_CAUSE_MISSING_COLUMN, column));
+        }
+        return value;
+    }
+
+    /**
+     * Finds the plants whose name, specie or location has a word starting with each word of the
+     * query, ignoring case and accents: "dros" finds "Droséra". Runs on the full-text table, so
+     * its cost depends on the number of matches rather than on the size of the table.
+     *
+     * @param helper The database helper to use.
+     * @param query The query as typed by the user.
+     * @param limit The maximum number of plants returned.
+     * @return The best matching plants first, see {@link #REQ_SEARCH}; empty if the query has no word.
+     */
+    public List<Plant> search(final SQLiteOpenHelper helper, final String query, final int limit) {
+        final List<String> tokens = SearchText.tokenize(query);
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+        final SQLiteDatabase db = helper.getReadableDatabase();
+        final String first = tokens.get(0);
+        final String[] selectArgs = {
+                SearchText.toPrefixQuery(tokens),
+                first + "%",
+                "% " + first + "%",
+                String.valueOf(limit)
+        };
+        return readAll(db, db.rawQuery(REQ_SEARCH, selectArgs));
+    }
+
+    /**
+     * Fills the full-text table again from the whole table, e.g. when it is created on upgrade.
+     *
+     * @param db The database to use.
+     */
+    public void rebuildSearchIndex(final SQLiteDatabase db) {
+        final SQLiteStatement insert = db.compileStatement(REQ_SEARCH_INSERT);
+        db.beginTransaction();
+        try {
+            db.delete(SEARCH_TABLE_NAME, null, null);
+            final Cursor cursor = db.query(TABLE_NAME, SEARCH_SOURCE_FIELDS, null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    bindSearchRow(insert, cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                            cursor.getString(3));
+                    insert.executeInsert();
+                }
+            } finally {
+                cursor.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * Gets the plants that need to be watered on or before the specified day, the most urgent first.
+     * Runs as a range scan on the next watering day index.
+     *
+     * @param helper The database helper to use.
+     * @param day The epoch day (see {@link EpochDay}).
+     * @return The plants due by that day.
+     */
+    public List<Plant> getDueBy(final SQLiteOpenHelper helper, final int day) {
+        final SQLiteDatabase db = helper.getReadableDatabase();
+        final String[] selectArgs = { String.valueOf(day) };
+        final Cursor cursor = db.query(TABLE_NAME, PlantFields.ALL, WHERE_DUE_BY, selectArgs,
+                null, null, PlantFields.FIELD_NEXTWATERINGDAY);
+        return readAll(db, cursor);
+    }
+
+    /**
+     * Builds the watering forecast of all the plants over a period, reading the table one page
+     * at a time.
+     *
+     * @param helper The database helper to use.
+     * @param startDay The first day of the period, as an epoch day (see {@link EpochDay}).
+     * @param days The number of days of the period.
+     * @return The forecast, to be kept up to date by the caller when plants change.
+     */
+    public WateringForecast getForecast(final SQLiteOpenHelper helper, final int startDay, final int days) {
+        final WateringForecast forecast = new WateringForecast(startDay, days);
+        final PageIterator<Plant> plants = iterate(helper, FORECAST_PAGE_SIZE);
+        try {
+            forecast.putAll(plants);
+        } finally {
+            plants.close();
+        }
+        return forecast;
+    }
+
+    /**
+     * Counts the plants in each {@link Plant.WateringState} today, as given by
+     * {@link Plant#getClock()}.
+     *
+     * @param helper The database helper to use.
+     * @return The number of plants for each watering state.
+     */
+    public Map<Plant.WateringState, Integer> countByState(final SQLiteOpenHelper helper) {
+        return countByState(helper, Plant.getCurrentEpochDay());
+    }
+
+    /**
+     * Counts the plants in each {@link Plant.WateringState} on the specified day, matching
+     * {@link Plant#getWateringState()}. Only the thirsty and okay plants are counted through the
+     * next watering day index; hydrated plants are the remaining ones.
+     *
+     * @param helper The database helper to use.
+     * @param day The epoch day (see {@link EpochDay}).
+     * @return The number of plants for each watering state.
+     */
+    public Map<Plant.WateringState, Integer> countByState(final SQLiteOpenHelper helper, final int day) {
+        final SQLiteDatabase db = helper.getReadableDatabase();
+        final String dayStr = String.valueOf(day);
+        final long total = DatabaseUtils.queryNumEntries(db, TABLE_NAME);
+        final long thirsty = DatabaseUtils.longForQuery(db, REQ_COUNT_THIRSTY, new String[] { dayStr });
+        final long okay = DatabaseUtils.longForQuery(db, REQ_COUNT_OKAY,
+                new String[] { dayStr, String.valueOf(day + 1), dayStr });
+
+        final Map<Plant.WateringState, Integer> counts = new EnumMap<>(Plant.WateringState.class);
+        counts.put(Plant.WateringState.HYDRATED, (int) (total - thirsty - okay));
+        counts.put(Plant.WateringState.OKAY, (int) okay);
+        counts.put(Plant.WateringState.THIRSTY, (int) thirsty);
+        return counts;
+    }
+
+    /**
+     * Waters the plant today, as given by {@link Plant#getClock()}, saves it and appends the
+     * watering to the history, in a single transaction. The other modified fields are saved too.
+     * Nothing is appended if the plant was already watered today.
+     *
+     * @param helper The database helper to use.
+     * @param plant The plant to water.
+     * @return <code>true</code> if the plant was saved.
+     */
+    public boolean water(final SQLiteOpenHelper helper, final Plant plant) {
+        plant.water();
+        final boolean watered = (plant.getDirtyFields() & Plant.FIELD_LASTWATEREDDATE) != 0;
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        final boolean updated;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            updated = update(helper, plant);
+            if (updated && watered) {
+                WateringEventDB.getInstance().append(db, WateringEvent.of(plant));
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endTransaction(db, successful);
+        }
+        return updated;
+    }
+
+    /**
+     * Waters all the plants at the specified location with a single statement.
+     *
+     * @param helper The database helper to use.
+     * @param location The location of the plants.
+     * @param day The watering day, as an epoch day (see {@link EpochDay}).
+     * @return The number of plants watered, not counting those already watered that day.
+     */
+    public int waterByLocation(final SQLiteOpenHelper helper, final String location, final int day) {
+        return water(helper, WHERE_LOCATION_IS, day, location);
+    }
+
+    /**
+     * Waters all the plants of the specified specie with a single statement.
+     *
+     * @param helper The database helper to use.
+     * @param specie The specie of the plants.
+     * @param day The watering day, as an epoch day (see {@link EpochDay}).
+     * @return The number of plants watered, not counting those already watered that day.
+     */
+    public int waterBySpecie(final SQLiteOpenHelper helper, final String specie, final int day) {
+        return water(helper, WHERE_SPECIE_IS, day, specie);
+    }
+
+    /**
+     * Waters all the plants due today, as given by {@link Plant#getClock()}, with a single statement.
+     *
+     * @param helper The database helper to use.
+     * @return The number of plants watered.
+     */
+    public int waterAllDue(final SQLiteOpenHelper helper) {
+        return waterAllDue(helper, Plant.getCurrentEpochDay());
+    }
+
+    /**
+     * Waters all the plants due on or before the specified day with a single statement.
+     *
+     * @param helper The database helper to use.
+     * @param day The watering day, as an epoch day (see {@link EpochDay}).
+     * @return The number of plants watered.
+     */
+    public int waterAllDue(final SQLiteOpenHelper helper, final int day) {
+        return water(helper, WHERE_DUE_BY, day, (long) day);
+    }
+
+    /**
+     * Waters all the plants with the specified ids in a single transaction, with one statement per
+     * {@link #MAX_IDS_PER_STATEMENT} ids.
+     *
+     * @param helper The database helper to use.
+     * @param ids The ids of the plants.
+     * @param day The watering day, as an epoch day (see {@link EpochDay}).
+     * @return The number of plants watered, not counting those already watered that day.
+     */
+    public int waterByIds(final SQLiteOpenHelper helper, final Collection<Long> ids, final int day) {
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        final Long[] allIds = ids.toArray(new Long[ids.size()]);
+        int watered = 0;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            for (int start = 0; start < allIds.length; start += MAX_IDS_PER_STATEMENT) {
+                final int count = Math.min(MAX_IDS_PER_STATEMENT, allIds.length - start);
+                // The ids are padded to a power of two, so that few statements stay compiled
+                int size = 1;
+                while (size < count) {
+                    size <<= 1;
+                }
+                size = Math.min(size, MAX_IDS_PER_STATEMENT);
+                final StringBuilder params = new StringBuilder();
+                for (int i = 0; i < size; i++) {
+                    params.append(i == 0 ? "?" : ", ?");
+                }
+                final Object[] args = new Object[size];
+                System.arraycopy(allIds, start, args, 0, count);
+                Arrays.fill(args, count, size, allIds[start + count - 1]);
+                watered += water(helper, String.format(WHERE_ID_IN, params), day, args);
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endTransaction(db, successful);
+        }
+        return watered;
+    }
+
+    /**
+     * Waters the plants matching the specified condition in a single transaction, appending their
+     * waterings to the history. The watered plants are recorded as updated, so that they are
+     * dropped from the cache once the outermost transaction is committed. The statements stay
+     * compiled for each condition, see {@link StatementCache#get(String)}.
+     *
+     * @param helper The database helper to use.
+     * @param where The condition, with its parameters as <code>?</code>: one of a few constants.
+     * @param day The watering day, as an epoch day (see {@link EpochDay}).
+     * @param args The values of the parameters of the condition: strings, longs or <code>null</code>.
+     * @return The number of plants watered.
+     */
+    private int water(final SQLiteOpenHelper helper, final String where, final int day, final Object... args) {
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        final WateringEventDB events = WateringEventDB.getInstance();
+        final StatementCache statements = getStatements(db);
+        final SQLiteStatement log = statements.get(String.format(REQ_LOG_WATER, where));
+        final SQLiteStatement statement = statements.get(String.format(REQ_WATER, where));
+        int watered;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            final long lastEventId = events.getLastId(db);
+            bindWater(log, day, args);
+            log.executeUpdateDelete();
+            bindWater(statement, day, args);
+            watered = statement.executeUpdateDelete();
+            events.rollUpAfter(db, lastEventId);
+            events.recordAppendedAfter(db, lastEventId);
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endTransaction(db, successful);
+        }
+        return watered;
+    }
+
+    /**
+     * Binds the day then the parameters of the condition to a watering statement.
+     */
+    private static void bindWater(final SQLiteStatement statement, final int day, final Object... args) {
+        statement.bindLong(1, day);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Long) {
+                statement.bindLong(i + 2, (Long) args[i]);
+            } else {
+                bindString(statement, i + 2, (String) args[i]);
+            }
+        }
+    }
+
     /**
      * Fills the <code>Plants</code> table with predefined values
      * @param helper The database helper to use.
+     * @return The number of plants inserted.
      */
-    public void fillWithValues(final SQLiteOpenHelper helper) {
+    public int fillWithValues(final SQLiteOpenHelper helper) {
         final List<Plant> plants = Plant.generatePlants();
-        for (final Plant plant : plants) {
-            insert(helper, plant);
-        }
+        return insertAll(helper, plants);
     }
 
 }
@@ -0,0 +1,348 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.PlantIndex;
+import fr.lille.bour.armand.waterryday.models.WateringForecast;
+import fr.lille.bour.armand.waterryday.models.WateringScheduler;
+
+/**
+ * Access to the plants through {@link PlantDB}, keeping a {@link PlantIndex} of the table by
+ * location, specie and watering state, so filtered lists and counts do not scan the table, and a
+ * {@link WateringScheduler} answering which plants are due. The {@link WateringForecast} of the
+ * next days is built on first use, then follows the same changes.
+ * The index is loaded on first use, then follows the {@link ChangeEvent}s of the table, whoever
+ * wrote it: only the changed plants are read again. A bulk change has it loaded again on next use.
+ * The repository must be closed once it is not used any more.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class PlantRepository implements ChangeEvent.Listener {
+
+    /** The number of days of the forecast, see {@link #getForecast()}. */
+    public static final int FORECAST_DAYS = 7;
+
+    /** The number of plants read at once when loading the index. */
+    private static final int LOAD_PAGE_SIZE = 500;
+
+    private final SQLiteOpenHelper mHelper;
+    private final PlantDB mPlantDB;
+    private final PlantIndex mIndex = new PlantIndex();
+    private final WateringScheduler mScheduler = new WateringScheduler();
+    /** The forecast from today, or <code>null</code> until it is first used. */
+    private WateringForecast mForecast;
+    /** Whether the index holds the table, see {@link #checkLoaded()}. */
+    private boolean mLoaded;
+
+    /**
+     * Creates a repository over the {@link PlantDB} instance, following its changes. The index is
+     * loaded on first use.
+     * Listeners of the table registered later are called once the index is up to date.
+     * @param helper The database helper to use.
+     */
+    public PlantRepository(final SQLiteOpenHelper helper) {
+        mHelper = helper;
+        mPlantDB = PlantDB.getInstance();
+        mPlantDB.addChangeListener(this);
+    }
+
+    /**
+     * Stops following the changes of the table.
+     */
+    public void close() {
+        mPlantDB.removeChangeListener(this);
+    }
+
+    /**
+     * Builds the index from the whole table, one page at a time.
+     */
+    public synchronized void load() {
+        mIndex.clear();
+        mScheduler.clear();
+        final PlantRowBuffer rows = new PlantRowBuffer();
+        long lastId = -1;
+        int read;
+        do {
+            rows.clear();
+            read = mPlantDB.appendPage(mHelper, lastId, LOAD_PAGE_SIZE, rows);
+            for (int i = 0; i < read; i++) {
+                mIndex.put(rows.getId(i), rows.getLocation(i), rows.getSpecie(i),
+                        rows.getWateringFrequency(i), rows.getLastWateredDay(i));
+                mScheduler.add(rows.getId(i), rows.getWateringFrequency(i), rows.getNextWateringDay(i));
+            }
+            if (read > 0) {
+                lastId = rows.getId(read - 1);
+            }
+        } while (read == LOAD_PAGE_SIZE);
+        mLoaded = true;
+    }
+
+    /**
+     * Loads the index if it does not hold the table.
+     */
+    private void checkLoaded() {
+        if (!mLoaded) {
+            load();
+        }
+    }
+
+    /**
+     * Updates the index and the forecast with the changes of the table, on the thread that
+     * committed them.
+     */
+    @Override
+    public synchronized void onChanged(final ChangeEvent event) {
+        if (event.isBulk()) {
+            // Any plant may have changed: both are built again on next use
+            mLoaded = false;
+            mForecast = null;
+            return;
+        }
+        if (!mLoaded && mForecast == null) {
+            return;
+        }
+        for (final long id : event.getDeletedIds()) {
+            if (mLoaded) {
+                mIndex.remove(id);
+                mScheduler.remove(id);
+            }
+            if (mForecast != null) {
+                mForecast.remove(id);
+            }
+        }
+        final List<Long> ids = new ArrayList<>(event.getInsertedIds().length + event.getUpdatedIds().length);
+        for (final long id : event.getInsertedIds()) {
+            ids.add(id);
+        }
+        for (final long id : event.getUpdatedIds()) {
+            ids.add(id);
+        }
+        if (!ids.isEmpty()) {
+            for (final Plant plant : mPlantDB.getByIds(mHelper, ids)) {
+                if (mLoaded) {
+                    mIndex.put(plant);
+                    mScheduler.add(plant);
+                }
+                if (mForecast != null) {
+                    mForecast.put(plant);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts a plant.
+     * @param plant The plant to insert.
+     * @return The id of the plant, or <code>-1</code> if it could not be inserted.
+     */
+    public long insert(final Plant plant) {
+        return mPlantDB.insert(mHelper, plant);
+    }
+
+    /**
+     * Updates a plant.
+     * @param plant The plant to update.
+     * @return <code>true</code> if the plant was updated.
+     */
+    public boolean update(final Plant plant) {
+        return mPlantDB.update(mHelper, plant);
+    }
+
+    /**
+     * Deletes a plant.
+     * @param id The id of the plant.
+     * @return <code>true</code> if the plant was deleted.
+     */
+    public boolean delete(final long id) {
+        return mPlantDB.delete(mHelper, id);
+    }
+
+    /**
+     * Waters a plant today and saves it.
+     * @param plant The plant to water.
+     * @return <code>true</code> if the plant was saved.
+     */
+    public boolean water(final Plant plant) {
+        return mPlantDB.water(mHelper, plant);
+    }
+
+    /**
+     * Waters all the plants at a location, see {@link PlantDB#waterByLocation}.
+     * @param location The location.
+     * @param day The watering day, as an epoch day.
+     * @return The number of plants watered.
+     */
+    public int waterByLocation(final String location, final int day) {
+        return mPlantDB.waterByLocation(mHelper, location, day);
+    }
+
+    /**
+     * Waters all the plants of a specie, see {@link PlantDB#waterBySpecie}.
+     * @param specie The specie.
+     * @param day The watering day, as an epoch day.
+     * @return The number of plants watered.
+     */
+    public int waterBySpecie(final String specie, final int day) {
+        return mPlantDB.waterBySpecie(mHelper, specie, day);
+    }
+
+    /**
+     * Waters all the plants due on or before the specified day, see {@link PlantDB#waterAllDue}.
+     * @param day The watering day, as an epoch day.
+     * @return The number of plants watered.
+     */
+    public int waterAllDue(final int day) {
+        return mPlantDB.waterAllDue(mHelper, day);
+    }
+
+    /**
+     * Gets the plants at the specified location.
+     * @param location The location.
+     * @return The plants, ordered by id.
+     */
+    public List<Plant> getByLocation(final String location) {
+        return mPlantDB.getByIds(mHelper, getIdsByLocation(location));
+    }
+
+    /**
+     * Gets the plants of the specified specie.
+     * @param specie The specie.
+     * @return The plants, ordered by id.
+     */
+    public List<Plant> getBySpecie(final String specie) {
+        return mPlantDB.getByIds(mHelper, getIdsBySpecie(specie));
+    }
+
+    /**
+     * Gets the plants in the specified watering state today.
+     * @param state The watering state.
+     * @return The plants, ordered by id.
+     */
+    public List<Plant> getByState(final Plant.WateringState state) {
+        return mPlantDB.getByIds(mHelper, getIdsByState(state));
+    }
+
+    /**
+     * Gets the ids of the plants at the specified location.
+     * @param location The location.
+     * @return A copy of the ids.
+     */
+    public synchronized List<Long> getIdsByLocation(final String location) {
+        checkLoaded();
+        return new ArrayList<>(mIndex.getIdsByLocation(location));
+    }
+
+    /**
+     * Gets the ids of the plants of the specified specie.
+     * @param specie The specie.
+     * @return A copy of the ids.
+     */
+    public synchronized List<Long> getIdsBySpecie(final String specie) {
+        checkLoaded();
+        return new ArrayList<>(mIndex.getIdsBySpecie(specie));
+    }
+
+    /**
+     * Gets the ids of the plants in the specified watering state today.
+     * @param state The watering state.
+     * @return A copy of the ids.
+     */
+    public synchronized List<Long> getIdsByState(final Plant.WateringState state) {
+        checkLoaded();
+        return new ArrayList<>(mIndex.getIdsByState(state));
+    }
+
+    /**
+     * Counts the plants at the specified location.
+     * @param location The location.
+     * @return The number of plants.
+     */
+    public synchronized int countByLocation(final String location) {
+        checkLoaded();
+        return mIndex.countByLocation(location);
+    }
+
+    /**
+     * Counts the plants of the specified specie.
+     * @param specie The specie.
+     * @return The number of plants.
+     */
+    public synchronized int countBySpecie(final String specie) {
+        checkLoaded();
+        return mIndex.countBySpecie(specie);
+    }
+
+    /**
+     * Counts the plants in the specified watering state today.
+     * @param state The watering state.
+     * @return The number of plants.
+     */
+    public synchronized int countByState(final Plant.WateringState state) {
+        checkLoaded();
+        return mIndex.countByState(state, Plant.getCurrentEpochDay());
+    }
+
+    /**
+     * Gets the locations having at least one plant.
+     * @return A copy of the locations.
+     */
+    public synchronized Set<String> getLocations() {
+        checkLoaded();
+        return new LinkedHashSet<>(mIndex.getLocations());
+    }
+
+    /**
+     * Gets the species having at least one plant.
+     * @return A copy of the species.
+     */
+    public synchronized Set<String> getSpecies() {
+        checkLoaded();
+        return new LinkedHashSet<>(mIndex.getSpecies());
+    }
+
+    /**
+     * Counts the plants due today, see {@link WateringScheduler#countDueToday()}.
+     * @return The number of due plants.
+     */
+    public synchronized int countDueToday() {
+        checkLoaded();
+        return mScheduler.countDueToday();
+    }
+
+    /**
+     * Gets the earliest next watering day of the plants.
+     * @return The day as an epoch day, or {@link WateringScheduler#NONE} if there is no plant.
+     */
+    public synchronized int getNextDueDay() {
+        checkLoaded();
+        return mScheduler.getNextDueDay();
+    }
+
+    /**
+     * Gets the number of plants to water at each location on each of the next
+     * {@link #FORECAST_DAYS} days, see {@link WateringForecast}.
+     * @return A copy of the due counts by location, each array starting today.
+     */
+    public synchronized Map<String, int[]> getForecast() {
+        final int today = Plant.getCurrentEpochDay();
+        if (mForecast == null) {
+            mForecast = mPlantDB.getForecast(mHelper, today, FORECAST_DAYS);
+        } else {
+            mForecast.setStartDay(today);
+        }
+        final Map<String, int[]> forecast = new LinkedHashMap<>();
+        for (final String location : mForecast.getLocations()) {
+            forecast.put(location, mForecast.getDueCounts(location));
+        }
+        return forecast;
+    }
+}
@@ -0,0 +1,411 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.database.Cursor;
+
+import java.util.Arrays;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.PlantView;
+
+/**
+ * List of plants stored column by column, filled straight from cursors.
+ * No {@link Plant} nor date object is created per row: the rows are read through a reusable
+ * {@link Row} flyweight, and a {@link Plant} is only built on demand with {@link #toPlant(int)}.
+ * The rows usually come ordered by id, as pages are: while they are, the position of an id is
+ * found by binary search on the ids themselves, without any map to keep up to date.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class PlantRowBuffer {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] mIds = new long[INITIAL_CAPACITY];
+    private String[] mNames = new String[INITIAL_CAPACITY];
+    private String[] mSpecies = new String[INITIAL_CAPACITY];
+    private String[] mLocations = new String[INITIAL_CAPACITY];
+    private int[] mWateringFrequencies = new int[INITIAL_CAPACITY];
+    private int[] mLastWateredDays = new int[INITIAL_CAPACITY];
+    private int mSize;
+    /** Whether the ids are in strictly ascending order, see {@link #indexOfId(long)}. */
+    private boolean mSortedById = true;
+    /** Incremented on each modification, see {@link #getModCount()}. */
+    private int mModCount;
+
+    /**
+     * Creates an empty buffer.
+     */
+    public PlantRowBuffer() {
+    }
+
+    /**
+     * Creates a buffer holding a copy of the rows of another one, e.g. as a snapshot to compare
+     * on another thread.
+     * @param rows The buffer to copy.
+     */
+    public PlantRowBuffer(final PlantRowBuffer rows) {
+        addAll(rows);
+    }
+
+    /**
+     * Gets the number of rows.
+     * @return The number of rows.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Gets the number of modifications of the buffer, to tell whether it changed since a snapshot.
+     * @return The modification count.
+     */
+    public int getModCount() {
+        return mModCount;
+    }
+
+    /**
+     * Tells whether the buffer holds no row.
+     * @return <code>true</code> if there is no row.
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Gets the id of the row at the specified position.
+     */
+    public long getId(final int position) {
+        return mIds[position];
+    }
+
+    /**
+     * Gets the name of the row at the specified position.
+     */
+    public String getName(final int position) {
+        return mNames[position];
+    }
+
+    /**
+     * Gets the specie of the row at the specified position.
+     */
+    public String getSpecie(final int position) {
+        return mSpecies[position];
+    }
+
+    /**
+     * Gets the location of the row at the specified position.
+     */
+    public String getLocation(final int position) {
+        return mLocations[position];
+    }
+
+    /**
+     * Gets the watering frequency, in days, of the row at the specified position.
+     */
+    public int getWateringFrequency(final int position) {
+        return mWateringFrequencies[position];
+    }
+
+    /**
+     * Gets the last watered day, as an epoch day, of the row at the specified position.
+     */
+    public int getLastWateredDay(final int position) {
+        return mLastWateredDays[position];
+    }
+
+    /**
+     * Gets the next watering day, as an epoch day, of the row at the specified position.
+     */
+    public int getNextWateringDay(final int position) {
+        return mLastWateredDays[position] + mWateringFrequencies[position];
+    }
+
+    /**
+     * Finds the position of the row with the specified id, in O(log n) while the rows are ordered
+     * by id and in O(n) otherwise.
+     * @param id The id of the plant.
+     * @return The position of the row, or <code>-1</code> if there is none.
+     */
+    public int indexOfId(final long id) {
+        if (mSortedById) {
+            final int position = Arrays.binarySearch(mIds, 0, mSize, id);
+            return position < 0 ? -1 : position;
+        }
+        for (int i = 0; i < mSize; i++) {
+            if (mIds[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the fields that differ between a row of this buffer and a row of another one.
+     * @param position The position of the row in this buffer.
+     * @param other The other buffer.
+     * @param otherPosition The position of the row in the other buffer.
+     * @return The differing fields, as a mask of {@link Plant#FIELD_NAME} and the like;
+     *         <code>0</code> if the rows hold the same values.
+     */
+    public int getChangedFields(final int position, final PlantRowBuffer other, final int otherPosition) {
+        return getChangedFields(position, other.mNames[otherPosition], other.mSpecies[otherPosition],
+                other.mLocations[otherPosition], other.mWateringFrequencies[otherPosition],
+                other.mLastWateredDays[otherPosition]);
+    }
+
+    private int getChangedFields(final int position, final String name, final String specie,
+                                 final String location, final int wateringFrequency, final int lastWateredDay) {
+        int fields = 0;
+        if (!areEqual(mNames[position], name)) {
+            fields |= Plant.FIELD_NAME;
+        }
+        if (!areEqual(mSpecies[position], specie)) {
+            fields |= Plant.FIELD_SPECIE;
+        }
+        if (!areEqual(mLocations[position], location)) {
+            fields |= Plant.FIELD_LOCATION;
+        }
+        if (mWateringFrequencies[position] != wateringFrequency) {
+            fields |= Plant.FIELD_WATERINGFREQUENCY;
+        }
+        if (mLastWateredDays[position] != lastWateredDay) {
+            fields |= Plant.FIELD_LASTWATEREDDATE;
+        }
+        return fields;
+    }
+
+    private static boolean areEqual(final String value1, final String value2) {
+        return value1 == null ? value2 == null : value1.equals(value2);
+    }
+
+    /**
+     * Removes all the rows, keeping the allocated capacity.
+     */
+    public void clear() {
+        Arrays.fill(mNames, 0, mSize, null);
+        Arrays.fill(mSpecies, 0, mSize, null);
+        Arrays.fill(mLocations, 0, mSize, null);
+        mSize = 0;
+        mSortedById = true;
+        mModCount++;
+    }
+
+    /**
+     * Appends all the rows of the cursor, reading each column by its index.
+     * The cursor must hold the columns of {@link PlantDB.PlantFields#ALL}; it is not closed.
+     * @param cursor The cursor to read.
+     * @return The number of rows appended.
+     */
+    public int append(final Cursor cursor) {
+        final int idColumn = cursor.getColumnIndexOrThrow(PlantDB.PlantFields._ID);
+        final int nameColumn = cursor.getColumnIndexOrThrow(PlantDB.PlantFields.FIELD_NAME);
+        final int specieColumn = cursor.getColumnIndexOrThrow(PlantDB.PlantFields.FIELD_SPECIE);
+        final int locationColumn = cursor.getColumnIndexOrThrow(PlantDB.PlantFields.FIELD_LOCATION);
+        final int frequencyColumn = cursor.getColumnIndexOrThrow(PlantDB.PlantFields.FIELD_WATERINGFREQUENCY);
+        final int lastWateredColumn = cursor.getColumnIndexOrThrow(PlantDB.PlantFields.FIELD_LASTWATEREDDAY);
+
+        ensureCapacity(mSize + cursor.getCount());
+        final int start = mSize;
+        while (cursor.moveToNext()) {
+            mIds[mSize] = cursor.getLong(idColumn);
+            mNames[mSize] = cursor.getString(nameColumn);
+            mSpecies[mSize] = cursor.getString(specieColumn);
+            mLocations[mSize] = cursor.getString(locationColumn);
+            mWateringFrequencies[mSize] = cursor.getInt(frequencyColumn);
+            mLastWateredDays[mSize] = cursor.getInt(lastWateredColumn);
+            checkOrder(mSize++);
+        }
+        mModCount++;
+        return mSize - start;
+    }
+
+    /**
+     * Appends the values of the specified plant.
+     * @param plant The plant to append.
+     */
+    public void add(final Plant plant) {
+        ensureCapacity(mSize + 1);
+        set(mSize++, plant);
+    }
+
+    /**
+     * Clears {@link #mSortedById} if the row at the specified position breaks the order of the ids.
+     */
+    private void checkOrder(final int position) {
+        if (position > 0 && mIds[position - 1] >= mIds[position]
+                || position < mSize - 1 && mIds[position] >= mIds[position + 1]) {
+            mSortedById = false;
+        }
+    }
+
+    /**
+     * Appends all the rows of another buffer.
+     * @param rows The buffer holding the rows to append.
+     */
+    public void addAll(final PlantRowBuffer rows) {
+        ensureCapacity(mSize + rows.mSize);
+        System.arraycopy(rows.mIds, 0, mIds, mSize, rows.mSize);
+        System.arraycopy(rows.mNames, 0, mNames, mSize, rows.mSize);
+        System.arraycopy(rows.mSpecies, 0, mSpecies, mSize, rows.mSize);
+        System.arraycopy(rows.mLocations, 0, mLocations, mSize, rows.mSize);
+        System.arraycopy(rows.mWateringFrequencies, 0, mWateringFrequencies, mSize, rows.mSize);
+        System.arraycopy(rows.mLastWateredDays, 0, mLastWateredDays, mSize, rows.mSize);
+        final int start = mSize;
+        mSize += rows.mSize;
+        if (!rows.mSortedById) {
+            mSortedById = false;
+        } else if (rows.mSize > 0) {
+            checkOrder(start);
+        }
+        mModCount++;
+    }
+
+    /**
+     * Replaces the values of the row at the specified position with those of the plant.
+     * @param position The position of the row.
+     * @param plant The plant holding the new values.
+     * @return The fields that changed, see {@link #getChangedFields(int, PlantRowBuffer, int)}.
+     */
+    public int set(final int position, final Plant plant) {
+        final int changed = getChangedFields(position, plant.getName(), plant.getSpecie(),
+                plant.getLocation(), plant.getWateringFrequency(), plant.getLastWateredDay());
+        mIds[position] = plant.getId();
+        mNames[position] = plant.getName();
+        mSpecies[position] = plant.getSpecie();
+        mLocations[position] = plant.getLocation();
+        mWateringFrequencies[position] = plant.getWateringFrequency();
+        mLastWateredDays[position] = plant.getLastWateredDay();
+        checkOrder(position);
+        mModCount++;
+        return changed;
+    }
+
+    /**
+     * Removes the row at the specified position, shifting the following rows.
+     * @param position The position of the row.
+     */
+    public void remove(final int position) {
+        final int moved = mSize - position - 1;
+        System.arraycopy(mIds, position + 1, mIds, position, moved);
+        System.arraycopy(mNames, position + 1, mNames, position, moved);
+        System.arraycopy(mSpecies, position + 1, mSpecies, position, moved);
+        System.arraycopy(mLocations, position + 1, mLocations, position, moved);
+        System.arraycopy(mWateringFrequencies, position + 1, mWateringFrequencies, position, moved);
+        System.arraycopy(mLastWateredDays, position + 1, mLastWateredDays, position, moved);
+        mSize--;
+        mNames[mSize] = null;
+        mSpecies[mSize] = null;
+        mLocations[mSize] = null;
+        mModCount++;
+    }
+
+    /**
+     * Marks the plant at the specified position as watered on the specified day.
+     * @param position The position of the row.
+     * @param day The watering day, as an epoch day.
+     */
+    public void water(final int position, final int day) {
+        mLastWateredDays[position] = day;
+        mModCount++;
+    }
+
+    /**
+     * Builds a {@link Plant} holding the values of the row at the specified position.
+     * @param position The position of the row.
+     * @return A new plant, with no dirty field.
+     */
+    public Plant toPlant(final int position) {
+        final Plant plant = new Plant(mIds[position], mNames[position], mSpecies[position],
+                mLocations[position], mWateringFrequencies[position], mLastWateredDays[position]);
+        plant.clearDirtyFields();
+        return plant;
+    }
+
+    /**
+     * Creates a flyweight reading the rows of this buffer.
+     * One instance can be kept per view and moved from row to row.
+     * @return A new row view, positioned on the first row.
+     */
+    public Row newRow() {
+        return new Row();
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity <= mIds.length) {
+            return;
+        }
+        final int newCapacity = Math.max(capacity, mIds.length * 2);
+        mIds = Arrays.copyOf(mIds, newCapacity);
+        mNames = Arrays.copyOf(mNames, newCapacity);
+        mSpecies = Arrays.copyOf(mSpecies, newCapacity);
+        mLocations = Arrays.copyOf(mLocations, newCapacity);
+        mWateringFrequencies = Arrays.copyOf(mWateringFrequencies, newCapacity);
+        mLastWateredDays = Arrays.copyOf(mLastWateredDays, newCapacity);
+    }
+
+    /**
+     * Read-only view of one row of the buffer. Moving it to another row does not allocate.
+     */
+    public class Row implements PlantView {
+
+        private int mPosition;
+
+        private Row() {
+        }
+
+        /**
+         * Moves the view to the row at the specified position.
+         * @param position The position of the row.
+         * @return This view.
+         */
+        public Row moveTo(final int position) {
+            mPosition = position;
+            return this;
+        }
+
+        /**
+         * Gets the position of the row the view is on.
+         * @return The position.
+         */
+        public int getPosition() {
+            return mPosition;
+        }
+
+        @Override
+        public long getId() {
+            return mIds[mPosition];
+        }
+
+        @Override
+        public String getName() {
+            return mNames[mPosition];
+        }
+
+        @Override
+        public String getSpecie() {
+            return mSpecies[mPosition];
+        }
+
+        @Override
+        public String getLocation() {
+            return mLocations[mPosition];
+        }
+
+        @Override
+        public int getWateringFrequency() {
+            return mWateringFrequencies[mPosition];
+        }
+
+        @Override
+        public int getNextWateringDay() {
+            return mLastWateredDays[mPosition] + mWateringFrequencies[mPosition];
+        }
+
+        @Override
+        public Plant.WateringState getWateringState() {
+            return Plant.getWateringState(mLastWateredDays[mPosition], mWateringFrequencies[mPosition],
+                    Plant.getCurrentEpochDay());
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package fr.lille.bour.armand.waterryday.models.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.lille.bour.armand.waterryday.models.EpochDay;
+import fr.lille.bour.armand.waterryday.models.WateringEvent;
+
+/**
+ * Single class to access the {@link WateringEvent} table, the append-only history of the waterings.
+ * <p>
+ * Events are indexed by day and by plant, and the number of waterings per day and location is
+ * kept up to date in a rollup table as events are appended, so that reports read one row per day
+ * and location instead of the raw events. The history lives in its own tables: its size does not
+ * affect the queries on the plants.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class WateringEventDB extends AbstractDB<WateringEvent> {
+
+    /** The fields of the table. */
+    protected static class EventFields implements BaseColumns {
+        public static final String FIELD_PLANTID = "plantId";
+        public static final String FIELD_DAY = "day";
+        public static final String FIELD_LOCATION = "location";
+
+        public static final int INDEX_PLANTID = 1;
+        public static final int INDEX_DAY = 2;
+        public static final int INDEX_LOCATION = 3;
+
+        public static final String[] ALL = {
+                _ID,
+                FIELD_PLANTID,
+                FIELD_DAY,
+                FIELD_LOCATION
+        };
+    }
+
+
+    /** The name of the table in the database. */
+    public static final String TABLE_NAME = "watering_events";
+    /** The query to insert for the field. */
+    public static final String TABLE_FIELDS = String.format(", %s INTEGER, %s INTEGER, %s VARCHAR(200)",
+            EventFields.FIELD_PLANTID,
+            EventFields.FIELD_DAY,
+            EventFields.FIELD_LOCATION);
+    /**
+     * The name of the table holding the number of waterings per day and location. Plants without
+     * location are counted under an empty location, as <code>NULL</code> values are never equal in
+     * a primary key.
+     */
+    public static final String ROLLUP_TABLE_NAME = "watering_rollups";
+    /** The queries creating the tables and indexes of the history, also used for version 5. */
+    public static final String[] REQ_CREATE_TABLES = {
+            "CREATE TABLE IF NOT EXISTS watering_events (_id INTEGER PRIMARY KEY" + TABLE_FIELDS + ")",
+            "CREATE INDEX IF NOT EXISTS watering_events_day ON watering_events (day)",
+            "CREATE INDEX IF NOT EXISTS watering_events_plantId ON watering_events (plantId, day)",
+            "CREATE TABLE IF NOT EXISTS watering_rollups (day INTEGER NOT NULL, "
+                    + "location VARCHAR(200) NOT NULL, count INTEGER NOT NULL, PRIMARY KEY (day, location))"
+    };
+
+    /**
+     * Counts one more watering for the day and location bound as parameters: the row is created
+     * first if needed, as SQLite has no upsert on the supported versions.
+     */
+    private static final String REQ_ROLLUP_ADD_ROW = "INSERT OR IGNORE INTO watering_rollups (day, location, count) VALUES (?, ?, 0)";
+    private static final String REQ_ROLLUP_INCREMENT = "UPDATE watering_rollups SET count = count + 1 WHERE day = ? AND location = ?";
+    /** Counts all the events with an id greater than <code>?1</code>, appended by a single statement. */
+    private static final String REQ_ROLLUP_ADD_ROWS_AFTER = "INSERT OR IGNORE INTO watering_rollups (day, location, count) "
+            + "SELECT DISTINCT day, IFNULL(location, ''), 0 FROM watering_events WHERE _id > ?1";
+    private static final String REQ_ROLLUP_INCREMENT_AFTER = "UPDATE watering_rollups SET count = count + "
+            + "(SELECT COUNT(*) FROM watering_events e WHERE e._id > ?1 AND e.day = watering_rollups.day "
+            + "AND IFNULL(e.location, '') = watering_rollups.location) "
+            + "WHERE day IN (SELECT day FROM watering_events WHERE _id > ?1)";
+    private static final String REQ_LAST_ID = "SELECT IFNULL(MAX(_id), 0) FROM watering_events";
+    /** The events appended after an id, with their plants. */
+    private static final String REQ_APPENDED_AFTER = "SELECT _id, plantId FROM watering_events WHERE _id > ?";
+    private static final String REQ_SELECT_ROLLUPS = "SELECT day, location, count FROM watering_rollups "
+            + "WHERE day BETWEEN ? AND ? ORDER BY location, day";
+    private static final String REQ_SUM_ROLLUPS = "SELECT IFNULL(SUM(count), 0) FROM watering_rollups WHERE day BETWEEN ? AND ?";
+
+    private static final String WHERE_PLANT = String.format("%s = ?", EventFields.FIELD_PLANTID);
+    private static final String WHERE_BETWEEN = String.format("%s BETWEEN ? AND ?", EventFields.FIELD_DAY);
+    private static final String WHERE_BEFORE = String.format("%s < ?", EventFields.FIELD_DAY);
+    private static final String ORDER_BY_DAY_DESC = String.format("%s DESC", EventFields.FIELD_DAY);
+
+    private static final String EXC_CAUSE_UNKNOWN_FIELD = "Unknown field index: %d";
+
+    private static final WateringEventDB INSTANCE = new WateringEventDB();
+
+
+    /**
+     * Gets the instance of the singleton.
+     * @return The instance of the singleton.
+     */
+    public static WateringEventDB getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Upgrades the history tables to the specified database version.
+     * @param db The database being upgraded.
+     * @param version The version to upgrade to, from the previous one.
+     */
+    public static void upgrade(final SQLiteDatabase db, final int version) {
+        if (version == 5) {
+            for (final String req : REQ_CREATE_TABLES) {
+                db.execSQL(req);
+            }
+        }
+    }
+
+    /**
+     * Gets the table name associated with that class.
+     *
+     * @return The table name.
+     */
+    @Override
+    public String getTableName() {
+        return TABLE_NAME;
+    }
+
+    /**
+     * Gets the list of fields used to initialise the table.
+     *
+     * @return A String containing the fields and the type for table creation.
+     */
+    @Override
+    public String getTableFieldsAndTypes() {
+        return TABLE_FIELDS;
+    }
+
+    /**
+     * Gets the list of table field names of the table.
+     *
+     * @return The list of table field names.
+     */
+    @Override
+    public String[] getAllTableFields() {
+        return EventFields.ALL;
+    }
+
+    @Override
+    protected ContentValues convertObjectToContentValues(final WateringEvent event) {
+        final ContentValues values = new ContentValues();
+        values.put(EventFields.FIELD_PLANTID, event.getPlantId());
+        values.put(EventFields.FIELD_DAY, event.getDay());
+        values.put(EventFields.FIELD_LOCATION, event.getLocation());
+        return values;
+    }
+
+    @Override
+    protected WateringEvent convertCursorToObject(final Cursor cursor) {
+        return new WateringEvent(cursor.getLong(0), cursor.getLong(1), cursor.getInt(2), cursor.getString(3));
+    }
+
+    @Override
+    protected void bindField(final SQLiteStatement statement, final int index,
+                             final WateringEvent event, final int field) {
+        switch (field) {
+            case EventFields.INDEX_PLANTID:
+                statement.bindLong(index, event.getPlantId());
+                break;
+            case EventFields.INDEX_DAY:
+                statement.bindLong(index, event.getDay());
+                break;
+            case EventFields.INDEX_LOCATION:
+                if (event.getLocation() == null) {
+                    statement.bindNull(index);
+                } else {
+                    statement.bindString(index, event.getLocation());
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(String.format(EXC_CAUSE_UNKNOWN_FIELD, field));
+        }
+    }
+
+    /**
+     * Counts the event in the rollup table.
+     */
+    @Override
+    protected void onInserted(final StatementCache statements, final WateringEvent event) {
+        final String location = event.getLocation() == null ? "" : event.getLocation();
+        for (final String req : new String[] { REQ_ROLLUP_ADD_ROW, REQ_ROLLUP_INCREMENT }) {
+            final SQLiteStatement statement = statements.get(req);
+            statement.bindLong(1, event.getDay());
+            statement.bindString(2, location);
+            statement.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Empties the rollup table.
+     */
+    @Override
+    protected void onCleaned(final SQLiteDatabase db) {
+        db.delete(ROLLUP_TABLE_NAME, null, null);
+    }
+
+    /**
+     * Appends an event in the current transaction of the specified database, e.g. while a plant
+     * is being watered.
+     *
+     * @param db The database, in a transaction.
+     * @param event The event to append.
+     */
+    void append(final SQLiteDatabase db, final WateringEvent event) {
+        final StatementCache statements = getStatements(db);
+        final SQLiteStatement insert = statements.getInsert();
+        insert.clearBindings();
+        bindAllFields(insert, event);
+        recordWrite(event);
+        event.setId(insert.executeInsert());
+        onInserted(statements, event);
+        recordChange(ChangeEvent.INSERTED, event.getId());
+    }
+
+    /**
+     * Gets the id of the last appended event, so that the events appended next by a single
+     * statement can be counted with {@link #rollUpAfter(SQLiteDatabase, long)}.
+     *
+     * @param db The database.
+     * @return The id of the last event, <code>0</code> if there is none.
+     */
+    long getLastId(final SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, REQ_LAST_ID, null);
+    }
+
+    /**
+     * Counts in the rollup table all the events appended after the specified one.
+     *
+     * @param db The database, in the transaction that appended the events.
+     * @param lastId The id returned by {@link #getLastId(SQLiteDatabase)} before the events were appended.
+     */
+    void rollUpAfter(final SQLiteDatabase db, final long lastId) {
+        final StatementCache statements = getStatements(db);
+        for (final String req : new String[] { REQ_ROLLUP_ADD_ROWS_AFTER, REQ_ROLLUP_INCREMENT_AFTER }) {
+            final SQLiteStatement statement = statements.get(req);
+            statement.bindLong(1, lastId);
+            statement.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Records the events appended after the specified one as inserted, and their plants as updated,
+     * so that the listeners know exactly which plants a single watering statement changed.
+     *
+     * @param db The database, in the transaction that appended the events.
+     * @param lastId The id returned by {@link #getLastId(SQLiteDatabase)} before the events were appended.
+     */
+    void recordAppendedAfter(final SQLiteDatabase db, final long lastId) {
+        final PlantDB plants = PlantDB.getInstance();
+        final Cursor cursor = db.rawQuery(REQ_APPENDED_AFTER, new String[] { String.valueOf(lastId) });
+        try {
+            while (cursor.moveToNext()) {
+                recordChange(ChangeEvent.INSERTED, cursor.getLong(0));
+                plants.recordChange(ChangeEvent.UPDATED, cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Gets the waterings of a plant, the most recent first. Runs on the plant index.
+     *
+     * @param helper The database helper to use.
+     * @param plantId The id of the plant.
+     * @return The events of the plant.
+     */
+    public List<WateringEvent> getByPlant(final SQLiteOpenHelper helper, final long plantId) {
+        final SQLiteDatabase db = helper.getReadableDatabase();
+        final String[] selectArgs = { String.valueOf(plantId) };
+        final Cursor cursor = db.query(TABLE_NAME, EventFields.ALL, WHERE_PLANT, selectArgs,
+                null, null, ORDER_BY_DAY_DESC);
+        return readAll(db, cursor);
+    }
+
+    /**
+     * Gets the waterings of a period, ordered by day. Runs as a range scan on the day index.
+     *
+     * @param helper The database helper to use.
+     * @param fromDay The first day of the period, as an epoch day (see {@link EpochDay}).
+     * @param toDay The last day of the period, included.
+     * @return The events of the period.
+     */
+    public List<WateringEvent> getBetween(final SQLiteOpenHelper helper, final int fromDay, final int toDay) {
+        final SQLiteDatabase db = helper.getReadableDatabase();
+        final String[] selectArgs = { String.valueOf(fromDay), String.valueOf(toDay) };
+        final Cursor cursor = db.query(TABLE_NAME, EventFields.ALL, WHERE_BETWEEN, selectArgs,
+                null, null, EventFields.FIELD_DAY);
+        return readAll(db, cursor);
+    }
+
+    /**
+     * Gets the number of waterings on each day of a period, by location, from the rollup table.
+     *
+     * @param helper The database helper to use.
+     * @param fromDay The first day of the period, as an epoch day (see {@link EpochDay}).
+     * @param toDay The last day of the period, included.
+     * @return For each location having waterings in the period, the number of waterings on each
+     *         day from the first one; plants without location are under <code>null</code>.
+     */
+    public Map<String, int[]> getDailyCounts(final SQLiteOpenHelper helper, final int fromDay, final int toDay) {
+        final SQLiteDatabase db = helper.getReadableDatabase();
+        final String[] selectArgs = { String.valueOf(fromDay), String.valueOf(toDay) };
+        final Map<String, int[]> counts = new LinkedHashMap<>();
+        final Cursor cursor = db.rawQuery(REQ_SELECT_ROLLUPS, selectArgs);
+        try {
+            while (cursor.moveToNext()) {
+                final String location = cursor.getString(1);
+                final String key = location.isEmpty() ? null : location;
+                int[] days = counts.get(key);
+                if (days == null) {
+                    days = new int[toDay - fromDay + 1];
+                    counts.put(key, days);
+                }
+                days[cursor.getInt(0) - fromDay] = cursor.getInt(2);
+            }
+        } finally {
+            cursor.close();
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the waterings of a period, from the rollup table.
+     *
+     * @param helper The database helper to use.
+     * @param fromDay The first day of the period, as an epoch day (see {@link EpochDay}).
+     * @param toDay The last day of the period, included.
+     * @return The number of waterings.
+     */
+    public long countBetween(final SQLiteOpenHelper helper, final int fromDay, final int toDay) {
+        final String[] selectArgs = { String.valueOf(fromDay), String.valueOf(toDay) };
+        return DatabaseUtils.longForQuery(helper.getReadableDatabase(), REQ_SUM_ROLLUPS, selectArgs);
+    }
+
+    /**
+     * Deletes the events older than the specified day, keeping their counts in the rollup table.
+     * Runs as a range scan on the day index.
+     *
+     * @param helper The database helper to use.
+     * @param day The first day to keep, as an epoch day (see {@link EpochDay}).
+     * @return The number of events deleted.
+     */
+    public int pruneBefore(final SQLiteOpenHelper helper, final int day) {
+        final String[] whereArgs = { String.valueOf(day) };
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        final int deleted;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            deleted = db.delete(TABLE_NAME, WHERE_BEFORE, whereArgs);
+            if (deleted > 0) {
+                recordBulkChange();
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endTransaction(db, successful);
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,81 @@
+package fr.lille.bour.armand.waterryday.provider;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.provider.BaseColumns;
+
+/**
+ * The URIs, columns and types of the {@link PlantProvider}, for the external tools.
+ * Only the applications signed with the same key as this one can use it, see {@link #PERMISSION}.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public final class PlantContract {
+
+    /** The authority of the provider. */
+    public static final String AUTHORITY = "fr.lille.bour.armand.waterryday.plants";
+    /** The URI of the provider. */
+    public static final Uri AUTHORITY_URI = Uri.parse("content://" + AUTHORITY);
+    /** The permission needed to read and write the provider, granted to the same signature only. */
+    public static final String PERMISSION = "fr.lille.bour.armand.waterryday.permission.ACCESS_PLANTS";
+
+    private PlantContract() {
+    }
+
+    /**
+     * The plants, as rows of the <code>plants</code> table.
+     * <p>
+     * Large writes should go through {@link ContentResolver#bulkInsert(Uri, android.content.ContentValues[])}
+     * or {@link ContentResolver#applyBatch(String, java.util.ArrayList)}: each call runs in a
+     * single transaction, instead of one transaction and one call per row.
+     */
+    public static final class Plants implements BaseColumns {
+
+        /** The path of the plants. */
+        public static final String PATH = "plants";
+        /** The URI of all the plants; the URI of one plant has its id appended. */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(AUTHORITY_URI, PATH);
+        /** The MIME type of a list of plants. */
+        public static final String CONTENT_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/vnd.waterryday.plant";
+        /** The MIME type of one plant. */
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE + "/vnd.waterryday.plant";
+
+        /** The name, may be null. */
+        public static final String NAME = "name";
+        /** The specie, may be null. */
+        public static final String SPECIE = "specie";
+        /** The location, may be null. */
+        public static final String LOCATION = "location";
+        /** The number of days between two waterings, greater than zero. Required to insert. */
+        public static final String WATERING_FREQUENCY = "wateringFrequency";
+        /** The epoch day the plant was last watered on. Today if missing when inserted. */
+        public static final String LAST_WATERED_DAY = "lastWateredDay";
+        /** The epoch day the plant must be watered on. Read-only, derived from the two above. */
+        public static final String NEXT_WATERING_DAY = "nextWateringDay";
+
+        /**
+         * The query parameter of the id after which a page starts: only the plants with a greater
+         * id are read. Pages are only consistent with the default order, by id.
+         */
+        public static final String PARAM_AFTER_ID = "afterId";
+        /** The query parameter of the maximum number of plants read. */
+        public static final String PARAM_LIMIT = "limit";
+
+        private Plants() {
+        }
+
+        /**
+         * Builds the URI of a page of plants, ordered by id.
+         * @param afterId The id of the last plant of the previous page, or <code>-1</code> for the first page.
+         * @param limit The maximum number of plants in the page.
+         * @return The URI of the page.
+         */
+        public static Uri buildPageUri(final long afterId, final int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(PARAM_AFTER_ID, String.valueOf(afterId))
+                    .appendQueryParameter(PARAM_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+    }
+}
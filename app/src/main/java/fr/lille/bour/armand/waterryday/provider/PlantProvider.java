@@ -0,0 +1,276 @@
+package fr.lille.bour.armand.waterryday.provider;
+
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.database.AbstractDB;
+import fr.lille.bour.armand.waterryday.models.database.ChangeEvent;
+import fr.lille.bour.armand.waterryday.models.database.DatabaseHelper;
+import fr.lille.bour.armand.waterryday.models.database.PlantDB;
+
+/**
+ * Exposes the plants to the external tools, see {@link PlantContract}.
+ * <p>
+ * The calls come on binder threads and write through {@link PlantDB} directly, rather than through
+ * the {@link fr.lille.bour.armand.waterryday.models.database.DatabaseExecutor}: a batch must hold
+ * its transaction while {@link ContentProvider#applyBatch(ArrayList)} calls back each operation on
+ * the same thread. SQLite serializes them with the writes of the application.
+ * <p>
+ * The changes of the plants are notified once their transaction is committed, whoever wrote them:
+ * one URI per plant, or the URI of all the plants when too many of them changed.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class PlantProvider extends ContentProvider {
+
+    /** Above that many changed plants, only the URI of all the plants is notified. */
+    private static final int MAX_ITEM_NOTIFICATIONS = 50;
+
+    private static final int MATCH_PLANTS = 1;
+    private static final int MATCH_PLANT_ID = 2;
+
+    private static final String WHERE_ID_IS = PlantContract.Plants._ID + " = ?";
+
+    private static final String EXC_CAUSE_UNKNOWN_URI = "Unknown URI: %s";
+    private static final String EXC_CAUSE_INVALID_PARAM = "Invalid %s: %s";
+
+    private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+    static {
+        sUriMatcher.addURI(PlantContract.AUTHORITY, PlantContract.Plants.PATH, MATCH_PLANTS);
+        sUriMatcher.addURI(PlantContract.AUTHORITY, PlantContract.Plants.PATH + "/#", MATCH_PLANT_ID);
+    }
+
+    private final PlantDB mPlantDB = PlantDB.getInstance();
+    private DatabaseHelper mHelper;
+
+    /** Notifies the committed changes of the plants to the observers of the provider. */
+    private final ChangeEvent.Listener mChangeListener = new ChangeEvent.Listener() {
+        @Override
+        public void onChanged(final ChangeEvent event) {
+            notifyChanges(event);
+        }
+    };
+
+    public PlantProvider() {
+    }
+
+    /**
+     * Creates a provider on a database other than the application one, e.g. for tests.
+     * @param helper The helper of the database.
+     */
+    PlantProvider(final DatabaseHelper helper) {
+        mHelper = helper;
+    }
+
+    @Override
+    public boolean onCreate() {
+        // Runs on the main thread before the application is created: the database is only
+        // opened by the first call
+        if (mHelper == null) {
+            mHelper = DatabaseHelper.getInstance(getContext());
+        }
+        mPlantDB.addChangeListener(mChangeListener);
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        mPlantDB.removeChangeListener(mChangeListener);
+        super.shutdown();
+    }
+
+    @Override
+    public String getType(final Uri uri) {
+        switch (match(uri)) {
+            case MATCH_PLANT_ID:
+                return PlantContract.Plants.CONTENT_ITEM_TYPE;
+
+            default:
+                return PlantContract.Plants.CONTENT_TYPE;
+        }
+    }
+
+    @Override
+    public Cursor query(final Uri uri, final String[] projection, final String selection,
+                        final String[] selectionArgs, final String sortOrder) {
+        final boolean item = match(uri) == MATCH_PLANT_ID;
+        final long afterId = getLongParameter(uri, PlantContract.Plants.PARAM_AFTER_ID, -1);
+        final int limit = (int) getLongParameter(uri, PlantContract.Plants.PARAM_LIMIT, 0);
+        final Cursor cursor = mPlantDB.query(mHelper, projection, whereItem(item, selection),
+                whereItemArgs(uri, item, selectionArgs), sortOrder, afterId, limit);
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        return cursor;
+    }
+
+    @Override
+    public Uri insert(final Uri uri, final ContentValues values) {
+        if (match(uri) != MATCH_PLANTS) {
+            throw new IllegalArgumentException(String.format(EXC_CAUSE_UNKNOWN_URI, uri));
+        }
+        final long id = mPlantDB.insert(mHelper, mPlantDB.convertContentValuesToObject(values));
+        return id == -1 ? null : ContentUris.withAppendedId(PlantContract.Plants.CONTENT_URI, id);
+    }
+
+    /**
+     * Inserts all the plants in a single transaction. All the values are checked before any of
+     * them is written.
+     * @return The number of plants inserted.
+     * @throws IllegalArgumentException If any of the values is invalid, see
+     *                                  {@link PlantDB#convertContentValuesToObject(ContentValues)}.
+     */
+    @Override
+    public int bulkInsert(final Uri uri, final ContentValues[] values) {
+        if (match(uri) != MATCH_PLANTS) {
+            throw new IllegalArgumentException(String.format(EXC_CAUSE_UNKNOWN_URI, uri));
+        }
+        final List<Plant> plants = new ArrayList<>(values.length);
+        for (final ContentValues plantValues : values) {
+            plants.add(mPlantDB.convertContentValuesToObject(plantValues));
+        }
+        return mPlantDB.insertAll(mHelper, plants);
+    }
+
+    @Override
+    public int update(final Uri uri, final ContentValues values, final String selection,
+                      final String[] selectionArgs) {
+        final boolean item = match(uri) == MATCH_PLANT_ID;
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        final int updated;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            final List<Long> ids = mPlantDB.getIds(mHelper, whereItem(item, selection),
+                    whereItemArgs(uri, item, selectionArgs));
+            final List<Plant> plants = mPlantDB.getByIds(mHelper, ids);
+            for (final Plant plant : plants) {
+                mPlantDB.applyContentValues(plant, values);
+            }
+            updated = mPlantDB.updateAll(mHelper, plants);
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            AbstractDB.endTransaction(db, successful);
+        }
+        return updated;
+    }
+
+    @Override
+    public int delete(final Uri uri, final String selection, final String[] selectionArgs) {
+        final boolean item = match(uri) == MATCH_PLANT_ID;
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        final int deleted;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            final List<Long> ids = mPlantDB.getIds(mHelper, whereItem(item, selection),
+                    whereItemArgs(uri, item, selectionArgs));
+            deleted = mPlantDB.deleteAll(mHelper, ids);
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            AbstractDB.endTransaction(db, successful);
+        }
+        return deleted;
+    }
+
+    /**
+     * Applies all the operations in a single transaction: none of them is kept if one fails, and
+     * their changes are notified once, after the commit.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(final ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        final ContentProviderResult[] results;
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            AbstractDB.endTransaction(db, successful);
+        }
+        return results;
+    }
+
+    /**
+     * Notifies the changes of a transaction, on the thread that committed it.
+     * @param event The changes.
+     */
+    private void notifyChanges(final ChangeEvent event) {
+        final ContentResolver resolver = getContext().getContentResolver();
+        final long[][] ids = { event.getInsertedIds(), event.getUpdatedIds(), event.getDeletedIds() };
+        if (event.isBulk() || ids[0].length + ids[1].length + ids[2].length > MAX_ITEM_NOTIFICATIONS) {
+            // Also notifies the observers of each plant, as they observe the descendants
+            resolver.notifyChange(PlantContract.Plants.CONTENT_URI, null, false);
+            return;
+        }
+        for (final long[] kindIds : ids) {
+            for (final long id : kindIds) {
+                resolver.notifyChange(ContentUris.withAppendedId(PlantContract.Plants.CONTENT_URI, id),
+                        null, false);
+            }
+        }
+    }
+
+    /**
+     * Matches a URI of the provider.
+     * @throws IllegalArgumentException If the URI is not one of the provider.
+     */
+    private static int match(final Uri uri) {
+        final int match = sUriMatcher.match(uri);
+        if (match == UriMatcher.NO_MATCH) {
+            throw new IllegalArgumentException(String.format(EXC_CAUSE_UNKNOWN_URI, uri));
+        }
+        return match;
+    }
+
+    /**
+     * Restricts a condition to the plant of a URI.
+     */
+    private static String whereItem(final boolean item, final String selection) {
+        return item ? DatabaseUtils.concatenateWhere(WHERE_ID_IS, selection) : selection;
+    }
+
+    /**
+     * Adds the id of the plant of a URI to the parameters of {@link #whereItem(boolean, String)}.
+     */
+    private static String[] whereItemArgs(final Uri uri, final boolean item, final String[] selectionArgs) {
+        if (!item) {
+            return selectionArgs;
+        }
+        return DatabaseUtils.appendSelectionArgs(new String[] { uri.getLastPathSegment() }, selectionArgs);
+    }
+
+    /**
+     * Gets a numeric query parameter of a URI.
+     * @throws IllegalArgumentException If the parameter is not a number.
+     */
+    private static long getLongParameter(final Uri uri, final String name, final long defaultValue) {
+        final String value = uri.getQueryParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (final NumberFormatException exc) {
+            throw new IllegalArgumentException(String.format(EXC_CAUSE_INVALID_PARAM, name, value), exc);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package fr.lille.bour.armand.waterryday;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.lille.bour.armand.waterryday.models.database.ChangeEvent;
+import fr.lille.bour.armand.waterryday.models.database.PlantDB;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * ChangeEvent test.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class ChangeEventTest {
+
+    private ChangeEvent.Builder changes;
+
+    @Before
+    public void setUp() {
+        this.changes = new ChangeEvent.Builder(PlantDB.getInstance());
+    }
+
+    @Test
+    public void idsAreSortedByKind() {
+        final ChangeEvent event = this.changes
+                .record(ChangeEvent.UPDATED, 7)
+                .record(ChangeEvent.INSERTED, 12)
+                .record(ChangeEvent.UPDATED, 3)
+                .record(ChangeEvent.DELETED, 5)
+                .build();
+
+        assertArrayEquals(new long[] { 12 }, event.getInsertedIds());
+        assertArrayEquals(new long[] { 3, 7 }, event.getUpdatedIds());
+        assertArrayEquals(new long[] { 5 }, event.getDeletedIds());
+        assertEquals(ChangeEvent.UPDATED, event.getChange(7));
+        assertEquals(0, event.getChange(8));
+        assertTrue(event.affects(5));
+        assertFalse(event.affects(6));
+        assertFalse(event.isBulk());
+    }
+
+    @Test
+    public void lastStateOfEachRowIsKept() {
+        final ChangeEvent event = this.changes
+                // Inserted then updated: inserted
+                .record(ChangeEvent.INSERTED, 1)
+                .record(ChangeEvent.UPDATED, 1)
+                // Inserted then deleted: nothing
+                .record(ChangeEvent.INSERTED, 2)
+                .record(ChangeEvent.DELETED, 2)
+                // Updated then deleted: deleted
+                .record(ChangeEvent.UPDATED, 3)
+                .record(ChangeEvent.DELETED, 3)
+                // Deleted then inserted again: updated
+                .record(ChangeEvent.DELETED, 4)
+                .record(ChangeEvent.INSERTED, 4)
+                .build();
+
+        assertArrayEquals(new long[] { 1 }, event.getInsertedIds());
+        assertArrayEquals(new long[] { 4 }, event.getUpdatedIds());
+        assertArrayEquals(new long[] { 3 }, event.getDeletedIds());
+        assertFalse(event.affects(2));
+    }
+
+    @Test
+    public void mergeCoalescesEvents() {
+        final ChangeEvent first = new ChangeEvent.Builder(PlantDB.getInstance())
+                .record(ChangeEvent.INSERTED, 1)
+                .record(ChangeEvent.UPDATED, 2)
+                .build();
+        final ChangeEvent second = new ChangeEvent.Builder(PlantDB.getInstance())
+                .record(ChangeEvent.UPDATED, 1)
+                .record(ChangeEvent.DELETED, 2)
+                .recordBulk()
+                .build();
+
+        final ChangeEvent event = this.changes.merge(first).merge(second).build();
+        assertArrayEquals(new long[] { 1 }, event.getInsertedIds());
+        assertArrayEquals(new long[0], event.getUpdatedIds());
+        assertArrayEquals(new long[] { 2 }, event.getDeletedIds());
+        assertTrue(event.isBulk());
+        assertTrue(event.affects(42));
+    }
+
+    @Test
+    public void emptyBuilder() {
+        assertTrue(this.changes.isEmpty());
+        assertTrue(this.changes.build().isEmpty());
+        assertFalse(this.changes.recordBulk().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownKindIsRejected() {
+        this.changes.record(0, 1);
+    }
+}
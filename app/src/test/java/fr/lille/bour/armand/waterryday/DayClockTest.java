@@ -0,0 +1,53 @@
+package fr.lille.bour.armand.waterryday;
+
+
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Test;
+
+import fr.lille.bour.armand.waterryday.models.DayClock;
+import fr.lille.bour.armand.waterryday.models.EpochDay;
+import fr.lille.bour.armand.waterryday.models.Plant;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * DayClock test.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class DayClockTest {
+
+    @After
+    public void restoreClock() {
+        Plant.setClock(DayClock.system());
+    }
+
+    @Test
+    public void systemClockIsToday() {
+        final DayClock clock = DayClock.system();
+        final int today = EpochDay.of(new LocalDate());
+        assertEquals(today, clock.today());
+        // Cached value
+        assertEquals(today, clock.today());
+    }
+
+    @Test
+    public void fixedClock() {
+        assertEquals(42, DayClock.fixed(42).today());
+        assertEquals(EpochDay.of(2016, 11, 20), DayClock.fixed(new LocalDate(2016, 11, 20)).today());
+    }
+
+    @Test
+    public void setCurrentDateFixesClock() {
+        Plant.setCurrentDate(new LocalDate(2016, 11, 20));
+        assertEquals(EpochDay.of(2016, 11, 20), Plant.getCurrentEpochDay());
+        assertEquals(new LocalDate(2016, 11, 20), Plant.getCurrentDate());
+
+        final Plant plant = new Plant(1, "", "", "", 2, EpochDay.of(2016, 11, 17));
+        assertEquals(Plant.WateringState.THIRSTY, plant.getWateringState());
+        Plant.setClock(DayClock.fixed(EpochDay.of(2016, 11, 18)));
+        assertEquals(Plant.WateringState.OKAY, plant.getWateringState());
+    }
+}
@@ -0,0 +1,46 @@
+package fr.lille.bour.armand.waterryday;
+
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+import fr.lille.bour.armand.waterryday.models.EpochDay;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * EpochDay test.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class EpochDayTest {
+
+    private static final LocalDate EPOCH = new LocalDate(1970, 1, 1);
+
+    @Test
+    public void epochIsDayZero() {
+        assertEquals(0, EpochDay.of(EPOCH));
+        assertEquals(EPOCH, EpochDay.toLocalDate(0));
+    }
+
+    @Test
+    public void leapDays() {
+        assertEquals(11016, EpochDay.of(2000, 2, 29));
+        assertEquals(new LocalDate(2016, 2, 29), EpochDay.toLocalDate(EpochDay.of(2016, 2, 29)));
+        assertEquals(EpochDay.of(2100, 2, 28) + 1, EpochDay.of(2100, 3, 1));
+    }
+
+    @Test
+    public void matchesJodaTimeBothWays() {
+        LocalDate date = new LocalDate(1900, 1, 1);
+        final LocalDate end = new LocalDate(2100, 12, 31);
+        while (!date.isAfter(end)) {
+            final int expected = Days.daysBetween(EPOCH, date).getDays();
+            assertEquals(expected, EpochDay.of(date));
+            assertEquals(date, EpochDay.toLocalDate(expected));
+            date = date.plusDays(1);
+        }
+    }
+}
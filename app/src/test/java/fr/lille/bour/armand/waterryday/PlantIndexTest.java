@@ -0,0 +1,121 @@
+package fr.lille.bour.armand.waterryday;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.Plant.WateringState;
+import fr.lille.bour.armand.waterryday.models.PlantIndex;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * PlantIndex test.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class PlantIndexTest {
+
+    private static final int TODAY = 17000;
+    private static final String[] LOCATIONS = { "Cuisine", "Salon", "Vestibule", null };
+    private static final String[] SPECIES = { "Basilic", "Droséra", "Sarracenia", "" };
+
+    private PlantIndex index;
+
+    @Before
+    public void initialiseIndex() {
+        this.index = new PlantIndex();
+    }
+
+    private static Set<Long> expectedIds(final Map<Long, Plant> plants, final String location,
+                                         final String specie, final WateringState state, final int today) {
+        final Set<Long> ids = new HashSet<>();
+        for (final Plant plant : plants.values()) {
+            if (location != null && !location.equals(plant.getLocation())) {
+                continue;
+            }
+            if (specie != null && !specie.equals(plant.getSpecie())) {
+                continue;
+            }
+            if (state != null && Plant.getWateringState(plant.getLastWateredDay(),
+                    plant.getWateringFrequency(), today) != state) {
+                continue;
+            }
+            ids.add(plant.getId());
+        }
+        return ids;
+    }
+
+    private void assertConsistent(final Map<Long, Plant> plants, final int today) {
+        assertEquals(plants.size(), this.index.size());
+        for (final String location : LOCATIONS) {
+            if (location != null) {
+                assertEquals(expectedIds(plants, location, null, null, today),
+                        new HashSet<>(this.index.getIdsByLocation(location)));
+            }
+        }
+        for (final String specie : SPECIES) {
+            assertEquals(expectedIds(plants, null, specie, null, today),
+                    new HashSet<>(this.index.getIdsBySpecie(specie)));
+            assertEquals(this.index.getIdsBySpecie(specie).size(), this.index.countBySpecie(specie));
+        }
+        for (final WateringState state : WateringState.values()) {
+            assertEquals(expectedIds(plants, null, null, state, today),
+                    new HashSet<>(this.index.getIdsByState(state, today)));
+        }
+    }
+
+    @Test
+    public void consistentAfterRandomOperations() {
+        final Random random = new Random(42);
+        final Map<Long, Plant> plants = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            final long id = random.nextInt(300);
+            final int operation = random.nextInt(3);
+            if (operation == 0) {
+                final Plant plant = new Plant(id, "", SPECIES[random.nextInt(SPECIES.length)],
+                        LOCATIONS[random.nextInt(LOCATIONS.length)], 1 + random.nextInt(7),
+                        TODAY - random.nextInt(10));
+                plants.put(id, plant);
+                this.index.put(plant);
+            } else if (operation == 1) {
+                final Plant plant = plants.get(id);
+                assertEquals(plant != null, this.index.water(id, TODAY));
+                if (plant != null) {
+                    plant.setLastWateredDay(TODAY);
+                }
+            } else {
+                assertEquals(plants.remove(id) != null, this.index.remove(id));
+            }
+        }
+        assertConsistent(plants, TODAY);
+        // The states are computed again for another day
+        assertConsistent(plants, TODAY + 3);
+    }
+
+    @Test
+    public void emptyKeysAreDropped() {
+        this.index.put(1, "Cuisine", "Basilic", 3, TODAY);
+        assertTrue(this.index.getLocations().contains("Cuisine"));
+        this.index.put(1, "Salon", "Basilic", 3, TODAY);
+        assertFalse(this.index.getLocations().contains("Cuisine"));
+        assertEquals(0, this.index.countByLocation("Cuisine"));
+        assertEquals(1, this.index.countByLocation("Salon"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void idsAreReadOnly() throws Exception {
+        this.index.put(1, "Cuisine", "Basilic", 3, TODAY);
+        this.index.getIdsByLocation("Cuisine").clear();
+    }
+}
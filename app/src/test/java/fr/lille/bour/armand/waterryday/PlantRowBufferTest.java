@@ -0,0 +1,93 @@
+package fr.lille.bour.armand.waterryday;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.database.PlantRowBuffer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * PlantRowBuffer test.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class PlantRowBufferTest {
+
+    private static final int TODAY = 17000;
+
+    private PlantRowBuffer rows;
+
+    @Before
+    public void initialiseRows() {
+        this.rows = new PlantRowBuffer();
+        for (int i = 1; i <= 100; i++) {
+            this.rows.add(plant(i * 2, "Plant " + i));
+        }
+    }
+
+    private static Plant plant(final long id, final String name) {
+        return new Plant(id, name, "Specie", "Location", 3, TODAY);
+    }
+
+    @Test
+    public void indexOfIdWhileSorted() {
+        assertEquals(0, this.rows.indexOfId(2));
+        assertEquals(49, this.rows.indexOfId(100));
+        assertEquals(99, this.rows.indexOfId(200));
+        assertEquals(-1, this.rows.indexOfId(3));
+        assertEquals(-1, this.rows.indexOfId(201));
+
+        this.rows.remove(10);
+        assertEquals(-1, this.rows.indexOfId(22));
+        assertEquals(10, this.rows.indexOfId(24));
+    }
+
+    @Test
+    public void indexOfIdOnceUnsorted() {
+        this.rows.add(plant(1, "Out of order"));
+        assertEquals(100, this.rows.indexOfId(1));
+        assertEquals(49, this.rows.indexOfId(100));
+        assertEquals(-1, this.rows.indexOfId(3));
+
+        // Back in order
+        this.rows.clear();
+        this.rows.add(plant(5, "Plant"));
+        this.rows.add(plant(7, "Plant"));
+        assertEquals(1, this.rows.indexOfId(7));
+    }
+
+    @Test
+    public void changedFields() {
+        final PlantRowBuffer copy = new PlantRowBuffer(this.rows);
+        assertEquals(0, this.rows.getChangedFields(5, copy, 5));
+
+        final Plant plant = this.rows.toPlant(5);
+        plant.setName("Renamed");
+        plant.setLastWateredDay(TODAY + 1);
+        final int changed = this.rows.set(5, plant);
+        assertEquals(Plant.FIELD_NAME | Plant.FIELD_LASTWATEREDDATE, changed);
+        assertEquals(changed, copy.getChangedFields(5, this.rows, 5));
+        assertEquals(0, this.rows.set(5, plant));
+    }
+
+    @Test
+    public void modCountFollowsModifications() {
+        int modCount = this.rows.getModCount();
+        this.rows.water(0, TODAY + 1);
+        assertTrue(this.rows.getModCount() != modCount);
+        modCount = this.rows.getModCount();
+        this.rows.remove(0);
+        assertTrue(this.rows.getModCount() != modCount);
+        modCount = this.rows.getModCount();
+        this.rows.addAll(new PlantRowBuffer(this.rows));
+        assertTrue(this.rows.getModCount() != modCount);
+        assertEquals(198, this.rows.size());
+        // The ids are repeated, the first row is found
+        assertEquals(0, this.rows.indexOfId(4));
+    }
+}
@@ -152,4 +152,40 @@ public class PlantTest {
         this.plant3.water();
         assertEquals(WateringState.HYDRATED, this.plant3.getWateringState());
     }
+
+    @Test
+    public void constructorAllFieldsDirty() {
+        assertEquals(Plant.FIELD_ALL, this.plant1.getDirtyFields());
+    }
+
+    @Test
+    public void settersMarkOnlyModifiedFieldsDirty() {
+        this.plant1.clearDirtyFields();
+        this.plant1.setName("");
+        this.plant1.setWateringFrequency(1);
+        assertEquals(0, this.plant1.getDirtyFields());
+
+        this.plant1.setName("Germaine");
+        this.plant1.setWateringFrequency(2);
+        assertEquals(Plant.FIELD_NAME | Plant.FIELD_WATERINGFREQUENCY, this.plant1.getDirtyFields());
+    }
+
+    @Test
+    public void wateringMarksDateDirtyOnlyOnNewDay() {
+        this.plant1.clearDirtyFields();
+        this.plant1.water();
+        assertEquals(0, this.plant1.getDirtyFields());
+
+        Plant.setCurrentDate(wasteOneDay());
+        this.plant1.water();
+        assertEquals(Plant.FIELD_LASTWATEREDDATE, this.plant1.getDirtyFields());
+    }
+
+    @Test
+    public void restoredFieldsKeepLaterModifications() {
+        this.plant1.clearDirtyFields();
+        this.plant1.setName("Germaine");
+        this.plant1.restoreDirtyFields(Plant.FIELD_LOCATION);
+        assertEquals(Plant.FIELD_NAME | Plant.FIELD_LOCATION, this.plant1.getDirtyFields());
+    }
 }
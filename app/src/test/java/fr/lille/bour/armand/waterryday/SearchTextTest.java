@@ -0,0 +1,45 @@
+package fr.lille.bour.armand.waterryday;
+
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import fr.lille.bour.armand.waterryday.models.SearchText;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * SearchText test.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class SearchTextTest {
+
+    @Test
+    public void foldIgnoresCaseAndAccents() {
+        assertEquals("geranium", SearchText.fold("Géranium"));
+        assertEquals("drosera", SearchText.fold("DROSÉRA"));
+        assertEquals("cote ouest", SearchText.fold("Côte Ouest"));
+        assertNull(SearchText.fold(null));
+    }
+
+    @Test
+    public void tokenizeSplitsOnPunctuation() {
+        assertEquals(Arrays.asList("ger", "salon"), SearchText.tokenize("  Gér, (salon)"));
+        assertEquals(Arrays.asList("cactus", "2"), SearchText.tokenize("cactus-2"));
+        assertEquals(Collections.<String>emptyList(), SearchText.tokenize(" * \"- "));
+        assertEquals(Collections.<String>emptyList(), SearchText.tokenize(null));
+    }
+
+    @Test
+    public void prefixQuery() {
+        assertEquals("ger* ros*", SearchText.toPrefixQuery(SearchText.tokenize("Gér ros")));
+        // Operators typed by the user are folded to plain words
+        assertEquals("a* or* b*", SearchText.toPrefixQuery(SearchText.tokenize("a OR b")));
+        assertEquals("", SearchText.toPrefixQuery(SearchText.tokenize("")));
+    }
+}
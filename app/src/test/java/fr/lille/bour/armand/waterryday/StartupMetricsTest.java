@@ -0,0 +1,94 @@
+package fr.lille.bour.armand.waterryday;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import fr.lille.bour.armand.waterryday.metrics.MetricsLog;
+import fr.lille.bour.armand.waterryday.metrics.StartupMetrics;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * StartupMetrics and MetricsLog test.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class StartupMetricsTest {
+
+    private StartupMetrics metrics;
+
+    @Before
+    public void setUp() {
+        this.metrics = new StartupMetrics();
+    }
+
+    @Test
+    public void marksAreRecordedOnce() {
+        assertTrue(this.metrics.mark(StartupMetrics.MARK_PROCESS_START, 1000));
+        assertTrue(this.metrics.mark(StartupMetrics.MARK_FIRST_FRAME, 1400));
+        // Recreating the activity does not move the first frame
+        assertFalse(this.metrics.mark(StartupMetrics.MARK_FIRST_FRAME, 9000));
+
+        assertEquals(400, this.metrics.getElapsed(StartupMetrics.MARK_FIRST_FRAME));
+        assertEquals(-1, this.metrics.getElapsed(StartupMetrics.MARK_LIST_POPULATED));
+        assertFalse(this.metrics.isComplete());
+    }
+
+    @Test
+    public void reportIsTakenOnceComplete() {
+        final TimeZone timeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        try {
+            this.metrics.mark(StartupMetrics.MARK_PROCESS_START, 1000);
+            this.metrics.mark(StartupMetrics.MARK_LIST_POPULATED, 1650);
+            assertNull(this.metrics.takeReport(0));
+
+            this.metrics.mark(StartupMetrics.MARK_FIRST_FRAME, 1400);
+            assertTrue(this.metrics.isComplete());
+            assertEquals("1970-01-01 00:00:00 firstFrame=400ms listPopulated=650ms", this.metrics.takeReport(0));
+            assertNull(this.metrics.takeReport(0));
+        } finally {
+            TimeZone.setDefault(timeZone);
+        }
+    }
+
+    @Test
+    public void discardedStartIsNotReported() {
+        this.metrics.mark(StartupMetrics.MARK_PROCESS_START, 1000);
+        this.metrics.discard();
+        this.metrics.mark(StartupMetrics.MARK_FIRST_FRAME, 60000);
+        this.metrics.mark(StartupMetrics.MARK_LIST_POPULATED, 60200);
+        assertTrue(this.metrics.isComplete());
+        assertNull(this.metrics.takeReport(0));
+    }
+
+    @Test
+    public void unknownMarkIsRejected() {
+        try {
+            this.metrics.mark(3, 0);
+            fail("The mark should have been rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void logKeepsLastLines() {
+        String lines = MetricsLog.append(null, "a", 3);
+        assertEquals("a", lines);
+        lines = MetricsLog.append(lines, "b", 3);
+        lines = MetricsLog.append(lines, "c", 3);
+        assertEquals("a\nb\nc", lines);
+        lines = MetricsLog.append(lines, "d", 3);
+        assertEquals("b\nc\nd", lines);
+        assertEquals("e", MetricsLog.append(lines, "e", 1));
+    }
+}
@@ -0,0 +1,138 @@
+package fr.lille.bour.armand.waterryday;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.WateringForecast;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * WateringForecast test.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class WateringForecastTest {
+
+    private static final int START = 17000;
+    private static final int DAYS = 60;
+    private static final String[] LOCATIONS = { "Cuisine", "Salon", "Vestibule", null };
+
+    private List<Plant> plants;
+
+    @Before
+    public void initialisePlants() {
+        final Random random = new Random(42);
+        this.plants = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            this.plants.add(new Plant(i, "", "", LOCATIONS[random.nextInt(LOCATIONS.length)],
+                    1 + random.nextInt(30), START - random.nextInt(40)));
+        }
+    }
+
+    /**
+     * Simulates the plants day by day.
+     */
+    private static int simulate(final List<Plant> plants, final String location, final int day) {
+        int due = 0;
+        for (final Plant plant : plants) {
+            if (location == null ? plant.getLocation() != null : !location.equals(plant.getLocation())) {
+                continue;
+            }
+            int next = Math.max(START, plant.getNextWateringDay());
+            while (next < day) {
+                next += plant.getWateringFrequency();
+            }
+            if (next == day) {
+                due++;
+            }
+        }
+        return due;
+    }
+
+    private void assertMatchesSimulation(final WateringForecast forecast) {
+        for (final String location : LOCATIONS) {
+            for (int day = START; day < START + DAYS; day++) {
+                assertEquals(simulate(this.plants, location, day), forecast.getDueCount(location, day));
+            }
+        }
+    }
+
+    @Test
+    public void bulkMatchesSimulation() {
+        final WateringForecast forecast = new WateringForecast(START, DAYS);
+        forecast.putAll(this.plants.iterator());
+        assertEquals(this.plants.size(), forecast.size());
+        assertMatchesSimulation(forecast);
+    }
+
+    @Test
+    public void incrementalMatchesSimulation() {
+        final WateringForecast forecast = new WateringForecast(START, DAYS);
+        for (final Plant plant : this.plants) {
+            forecast.put(plant);
+        }
+        assertMatchesSimulation(forecast);
+
+        final Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            final Plant plant = this.plants.get(random.nextInt(this.plants.size()));
+            if (i % 2 == 0) {
+                plant.setLastWateredDay(START + random.nextInt(10));
+                forecast.water(plant.getId(), plant.getLastWateredDay());
+            } else {
+                plant.setWateringFrequency(1 + random.nextInt(30));
+                plant.setLocation(LOCATIONS[random.nextInt(LOCATIONS.length)]);
+                forecast.put(plant);
+            }
+        }
+        final Plant removed = this.plants.remove(0);
+        forecast.remove(removed.getId());
+        assertFalse(forecast.remove(removed.getId()));
+        assertMatchesSimulation(forecast);
+    }
+
+    @Test
+    public void totalsAndOutOfPeriod() {
+        final WateringForecast forecast = new WateringForecast(START, DAYS);
+        forecast.putAll(this.plants.iterator());
+        final int[] totals = forecast.getTotalDueCounts();
+        int sum = 0;
+        for (final String location : LOCATIONS) {
+            sum += forecast.getDueCounts(location)[5];
+        }
+        assertEquals(sum, totals[5]);
+        assertEquals(0, forecast.getDueCount("Cuisine", START - 1));
+        assertEquals(0, forecast.getDueCount("Cuisine", START + DAYS));
+    }
+
+    @Test
+    public void moveStartDay() {
+        final WateringForecast moved = new WateringForecast(START - 3, DAYS);
+        moved.putAll(this.plants.iterator());
+        moved.setStartDay(START);
+        assertMatchesSimulation(moved);
+    }
+
+    @Test
+    public void locationsFollowThePlants() {
+        final WateringForecast forecast = new WateringForecast(START, DAYS);
+        forecast.put(1, "Cuisine", 2, START);
+        forecast.put(2, "Salon", 2, START);
+        forecast.put(1, "Salon", 2, START);
+        assertFalse(forecast.getLocations().contains("Cuisine"));
+
+        forecast.remove(2);
+        forecast.remove(1);
+        assertTrue(forecast.getLocations().isEmpty());
+    }
+}
@@ -0,0 +1,148 @@
+package fr.lille.bour.armand.waterryday;
+
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.WateringScheduler;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * WateringScheduler test.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+public class WateringSchedulerTest {
+
+    private WateringScheduler scheduler;
+
+    @Before
+    public void initialiseScheduler() {
+        this.scheduler = new WateringScheduler();
+    }
+
+    @Test
+    public void emptySchedule() {
+        assertEquals(WateringScheduler.NONE, this.scheduler.getNextDueDay());
+        assertEquals(-1, this.scheduler.peek());
+        assertEquals(0, this.scheduler.countDueBy(Integer.MAX_VALUE));
+        assertEquals(0, this.scheduler.getMostUrgent(5).length);
+    }
+
+    @Test
+    public void addPlant() {
+        final Plant plant = new Plant(7, "", "", "", 3, new LocalDate());
+        this.scheduler.add(plant);
+        assertEquals(plant.getNextWateringDay(), this.scheduler.getNextDueDay());
+        assertEquals(7, this.scheduler.peek());
+    }
+
+    @Test
+    public void waterAndChangeFrequency() {
+        this.scheduler.add(1, 2, 10);
+        this.scheduler.add(2, 5, 12);
+        assertEquals(1, this.scheduler.peek());
+
+        this.scheduler.water(1, 11);
+        assertEquals(13, this.scheduler.getNextWateringDay(1));
+        assertEquals(2, this.scheduler.peek());
+
+        // Last watered on day 7
+        this.scheduler.setWateringFrequency(2, 7);
+        assertEquals(14, this.scheduler.getNextWateringDay(2));
+        assertEquals(1, this.scheduler.peek());
+    }
+
+    @Test
+    public void removePlant() {
+        this.scheduler.add(1, 1, 10);
+        this.scheduler.add(2, 1, 20);
+        assertTrue(this.scheduler.remove(1));
+        assertFalse(this.scheduler.remove(1));
+        assertFalse(this.scheduler.contains(1));
+        assertEquals(20, this.scheduler.getNextDueDay());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void waterExceptionWhenUnknownPlant() throws Exception {
+        this.scheduler.water(1, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setterExceptionWhenNullWateringFrequency() throws Exception {
+        this.scheduler.add(1, 1, 10);
+        this.scheduler.setWateringFrequency(1, 0);
+    }
+
+    @Test
+    public void matchesFullScanAfterRandomOperations() {
+        final Random random = new Random(42);
+        final Map<Long, int[]> plants = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            final long id = random.nextInt(500);
+            final int operation = random.nextInt(4);
+            if (operation == 0) {
+                final int frequency = 1 + random.nextInt(14);
+                final int day = random.nextInt(100);
+                this.scheduler.add(id, frequency, day);
+                plants.put(id, new int[] { frequency, day });
+            } else if (operation == 1 && plants.containsKey(id)) {
+                final int day = random.nextInt(100);
+                this.scheduler.water(id, day);
+                plants.get(id)[1] = day + plants.get(id)[0];
+            } else if (operation == 2 && plants.containsKey(id)) {
+                final int[] plant = plants.get(id);
+                final int frequency = 1 + random.nextInt(14);
+                this.scheduler.setWateringFrequency(id, frequency);
+                plant[1] += frequency - plant[0];
+                plant[0] = frequency;
+            } else if (operation == 3) {
+                assertEquals(plants.remove(id) != null, this.scheduler.remove(id));
+            }
+        }
+        assertEquals(plants.size(), this.scheduler.size());
+
+        final List<Map.Entry<Long, int[]>> sorted = new ArrayList<>(plants.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<Long, int[]>>() {
+            @Override
+            public int compare(final Map.Entry<Long, int[]> a, final Map.Entry<Long, int[]> b) {
+                final int byDay = Integer.compare(a.getValue()[1], b.getValue()[1]);
+                return byDay != 0 ? byDay : Long.compare(a.getKey(), b.getKey());
+            }
+        });
+
+        final long[] urgent = this.scheduler.getMostUrgent(50);
+        for (int i = 0; i < urgent.length; i++) {
+            assertEquals((long) sorted.get(i).getKey(), urgent[i]);
+        }
+        assertEquals(sorted.get(0).getValue()[1], this.scheduler.getNextDueDay());
+
+        final int day = 50;
+        final List<Long> due = new ArrayList<>();
+        final List<Long> expected = new ArrayList<>();
+        for (final Map.Entry<Long, int[]> plant : sorted) {
+            if (plant.getValue()[1] <= day) {
+                expected.add(plant.getKey());
+            }
+        }
+        assertEquals(expected.size(), this.scheduler.getDueBy(day, due));
+        assertEquals(expected.size(), this.scheduler.countDueBy(day));
+        Collections.sort(due);
+        Collections.sort(expected);
+        assertEquals(expected, due);
+    }
+}
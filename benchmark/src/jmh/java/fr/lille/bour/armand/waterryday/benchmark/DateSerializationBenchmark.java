@@ -0,0 +1,72 @@
+package fr.lille.bour.armand.waterryday.benchmark;
+
+import org.joda.time.LocalDate;
+import org.joda.time.format.DateTimeFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import fr.lille.bour.armand.waterryday.models.EpochDay;
+
+/**
+ * Serialization and parsing of the last watering date as stored by <code>PlantDB</code>: an epoch
+ * day since the version 2 schema, a "yyyy/MM/dd" string before. The legacy benchmarks run the code
+ * of <code>PlantDB</code> before the version 2 schema as it was.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DateSerializationBenchmark {
+
+    /** The pattern of the dates stored by <code>PlantDB</code> before the version 2 schema. */
+    private static final String DATE_PATTERN = "yyyy/MM/dd";
+
+    private LocalDate date;
+    private int epochDay;
+    private String legacy;
+
+    @Setup
+    public void createDate() {
+        date = new LocalDate(2016, 11, 20);
+        epochDay = EpochDay.of(date);
+        legacy = serializeLegacy();
+    }
+
+    @Benchmark
+    public int serializeEpochDay() {
+        return EpochDay.of(date);
+    }
+
+    @Benchmark
+    public String serializeLegacy() {
+        final String lastWateredDateStr = date.toString(DateTimeFormat.forPattern(DATE_PATTERN));
+        return lastWateredDateStr;
+    }
+
+    @Benchmark
+    public LocalDate parseEpochDay() {
+        return EpochDay.toLocalDate(epochDay);
+    }
+
+    @Benchmark
+    public LocalDate parseLegacy() {
+        final String lastWateredDateStr = legacy;
+
+        // Convert date
+        final String[] fields = lastWateredDateStr.split("/");
+        final int year = Integer.parseInt(fields[0]);
+        final int month = Integer.parseInt(fields[1]);
+        final int day = Integer.parseInt(fields[2]);
+        final LocalDate lastWateredDate = new LocalDate(year, month, day);
+        return lastWateredDate;
+    }
+}
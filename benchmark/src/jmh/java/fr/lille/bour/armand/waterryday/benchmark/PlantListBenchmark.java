@@ -0,0 +1,124 @@
+package fr.lille.bour.armand.waterryday.benchmark;
+
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import fr.lille.bour.armand.waterryday.models.DayClock;
+import fr.lille.bour.armand.waterryday.models.EpochDay;
+import fr.lille.bour.armand.waterryday.models.Plant;
+import fr.lille.bour.armand.waterryday.models.WateringScheduler;
+
+/**
+ * Construction, sorting and filtering of lists of plants.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlantListBenchmark {
+
+    private static final int TODAY = EpochDay.of(2016, 11, 20);
+    private static final int URGENT_COUNT = 20;
+
+    private static final Comparator<Plant> BY_NEXT_WATERING_DAY = new Comparator<Plant>() {
+        @Override
+        public int compare(final Plant plant1, final Plant plant2) {
+            return Integer.compare(plant1.getNextWateringDay(), plant2.getNextWateringDay());
+        }
+    };
+
+    @Param({ "1000", "100000" })
+    public int size;
+
+    private List<Plant> plants;
+    private WateringScheduler scheduler;
+
+    @Setup
+    public void createPlants() {
+        Plant.setClock(DayClock.fixed(TODAY));
+        plants = createWithEpochDays();
+        scheduler = new WateringScheduler();
+        for (final Plant plant : plants) {
+            scheduler.add(plant);
+        }
+    }
+
+    @Benchmark
+    public List<Plant> generatePlants() {
+        return Plant.generatePlants();
+    }
+
+    @Benchmark
+    public List<Plant> createWithLocalDates() {
+        final Random random = new Random(42);
+        final LocalDate today = EpochDay.toLocalDate(TODAY);
+        final List<Plant> plants = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            plants.add(new Plant(i, "Plant", "Specie", "Location", 1 + random.nextInt(14),
+                    today.minusDays(random.nextInt(20))));
+        }
+        return plants;
+    }
+
+    @Benchmark
+    public List<Plant> createWithEpochDays() {
+        final Random random = new Random(42);
+        final List<Plant> plants = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            plants.add(new Plant(i, "Plant", "Specie", "Location", 1 + random.nextInt(14),
+                    TODAY - random.nextInt(20)));
+        }
+        return plants;
+    }
+
+    @Benchmark
+    public List<Plant> sortByNextWateringDay() {
+        final List<Plant> sorted = new ArrayList<>(plants);
+        Collections.sort(sorted, BY_NEXT_WATERING_DAY);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<Plant> filterThirsty() {
+        final List<Plant> thirsty = new ArrayList<>();
+        for (final Plant plant : plants) {
+            if (plant.getWateringState() == Plant.WateringState.THIRSTY) {
+                thirsty.add(plant);
+            }
+        }
+        return thirsty;
+    }
+
+    @Benchmark
+    public List<Plant> mostUrgentBySorting() {
+        return sortByNextWateringDay().subList(0, URGENT_COUNT);
+    }
+
+    @Benchmark
+    public long[] mostUrgentWithScheduler() {
+        return scheduler.getMostUrgent(URGENT_COUNT);
+    }
+
+    @Benchmark
+    public List<Long> dueTodayWithScheduler() {
+        final List<Long> due = new ArrayList<>();
+        scheduler.getDueBy(TODAY, due);
+        return due;
+    }
+}
@@ -0,0 +1,59 @@
+package fr.lille.bour.armand.waterryday.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import fr.lille.bour.armand.waterryday.models.DayClock;
+import fr.lille.bour.armand.waterryday.models.EpochDay;
+import fr.lille.bour.armand.waterryday.models.Plant;
+
+/**
+ * Evaluation of the watering states, one plant at a time.
+ *
+ * @author Armand (Tydax) BOUR
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WateringStateBenchmark {
+
+    private static final int TODAY = EpochDay.of(2016, 11, 20);
+
+    @Param({ "1000", "100000" })
+    public int size;
+
+    private Plant[] plants;
+
+    @Setup
+    public void createPlants() {
+        Plant.setClock(DayClock.fixed(TODAY));
+        final Random random = new Random(42);
+        plants = new Plant[size];
+        for (int i = 0; i < size; i++) {
+            plants[i] = new Plant(i, "", "", "", 1 + random.nextInt(14), TODAY - random.nextInt(20));
+        }
+    }
+
+    @Benchmark
+    public Plant.WateringState getWateringState() {
+        return plants[size / 2].getWateringState();
+    }
+
+    @Benchmark
+    public void getWateringStateOfEachPlant(final Blackhole blackhole) {
+        for (final Plant plant : plants) {
+            blackhole.consume(plant.getWateringState());
+        }
+    }
+}